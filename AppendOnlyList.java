@@ -0,0 +1,157 @@
+/****************************************************************************************
+ * @file  AppendOnlyList.java
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/****************************************************************************************
+ * The AppendOnlyList class provides a list of tuples that many threads may append to
+ * while others read it, without a global lock.  Elements live in chunks that double in
+ * size and are never moved, so readers never see a copy in progress.  A writer reserves
+ * a slot with an atomic increment, stores its element, and then publishes it once all
+ * earlier slots are published, so size () always covers a fully written prefix.  Readers
+ * take no locks and never throw ConcurrentModificationException.
+ */
+public class AppendOnlyList
+       extends AbstractList <Comparable []>
+       implements RandomAccess
+{
+    /** Log base 2 of the size of the first chunk
+     */
+    private static final int LOG_BASE = 10;
+
+    /** The maximum number of chunks (chunk k holds 2^(LOG_BASE + k) elements)
+     */
+    private static final int MAX_CHUNKS = 31 - LOG_BASE;
+
+    /** The chunks holding the elements (allocated on demand)
+     */
+    private final AtomicReferenceArray <Comparable [][]> chunks = new AtomicReferenceArray <> (MAX_CHUNKS);
+
+    /** The number of slots reserved by writers
+     */
+    private final AtomicInteger reserved = new AtomicInteger ();
+
+    /** The number of slots written and visible to readers
+     */
+    private final AtomicInteger published = new AtomicInteger ();
+
+    /*************************************************************************************
+     * Append a tuple.  Safe to call from many threads at once.
+     * @param t  the tuple
+     * @return  true
+     */
+    public boolean add (Comparable [] t)
+    {
+        publish (reserve (), t);
+        return true;
+    } // add
+
+    /*************************************************************************************
+     * Reserve the next slot for a writer, which must then publish a tuple into it.
+     * Slots are reserved in the order the tuples become visible.
+     * @return  the position of the slot
+     */
+    public int reserve ()
+    {
+        int slot = reserved.getAndIncrement ();
+        if (slot < 0) throw new IllegalStateException ("AppendOnlyList is full");
+        return slot;
+    } // reserve
+
+    /*************************************************************************************
+     * Store a tuple in a reserved slot and make it visible once all earlier slots are.
+     * @param slot  the slot returned by reserve
+     * @param t     the tuple
+     */
+    public void publish (int slot, Comparable [] t)
+    {
+        int pos = slot + (1 << LOG_BASE);
+        int k = chunkOf (pos);
+        Comparable [][] chunk = chunks.get (k);
+        if (chunk == null) {
+            chunks.compareAndSet (k, null, new Comparable [1 << (LOG_BASE + k)][]);
+            chunk = chunks.get (k);
+        } // if
+        chunk [pos - (1 << (LOG_BASE + k))] = t;
+
+        for (int spins = 0; published.get () != slot; spins++) {   // wait for earlier writers
+            if (spins > 100) Thread.yield ();
+        } // for
+        published.set (slot + 1);
+    } // publish
+
+    /*************************************************************************************
+     * Return the i-th tuple.
+     * @param i  the position of the tuple
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= published.get ()) throw new IndexOutOfBoundsException ("index " + i);
+        int pos = i + (1 << LOG_BASE);
+        int k = chunkOf (pos);
+        return chunks.get (k) [pos - (1 << (LOG_BASE + k))];
+    } // get
+
+    /*************************************************************************************
+     * Return the number of published tuples.
+     * @return  the size of the list
+     */
+    public int size ()
+    {
+        return published.get ();
+    } // size
+
+    /*************************************************************************************
+     * Return a read-only view of the first n tuples.  Published tuples never change, so
+     * the view is stable while writers keep appending.
+     * @param n  the number of tuples in the view (at most size ())
+     * @return  the view
+     */
+    public List <Comparable []> prefix (final int n)
+    {
+        if (n > published.get ()) throw new IndexOutOfBoundsException ("prefix " + n);
+        return new Prefix (n);
+    } // prefix
+
+    /*************************************************************************************
+     * A read-only view of a published prefix of the list.
+     */
+    private class Prefix
+           extends AbstractList <Comparable []>
+           implements RandomAccess
+    {
+        private final int size;
+
+        Prefix (int _size)
+        {
+            size = _size;
+        } // constructor
+
+        public Comparable [] get (int i)
+        {
+            if (i >= size) throw new IndexOutOfBoundsException ("index " + i + ", size " + size);
+            return AppendOnlyList.this.get (i);
+        } // get
+
+        public int size ()
+        {
+            return size;
+        } // size
+    } // Prefix class
+
+    /*************************************************************************************
+     * Return the chunk holding the element at the given offset position.
+     * @param pos  the slot plus the size of the first chunk
+     * @return  the chunk number
+     */
+    private static int chunkOf (int pos)
+    {
+        return 31 - Integer.numberOfLeadingZeros (pos) - LOG_BASE;
+    } // chunkOf
+
+} // AppendOnlyList class
+
@@ -0,0 +1,96 @@
+/****************************************************************************************
+ * @file  BloomFilter.java
+ */
+
+/****************************************************************************************
+ * The BloomFilter class summarizes a set of key values (some columns of a set of tuples)
+ * in a bit array, so that a key can be tested for membership quickly and in little
+ * memory.  A negative answer is always right; a positive answer is wrong (a false
+ * positive) with about the false-positive rate the filter was sized for.  Hash joins use
+ * it to reject tuples of the larger input that cannot match the smaller one before
+ * building a key or probing a hash table.
+ *
+ * For n keys and false-positive rate p the filter has m = -n ln p / (ln 2)^2 bits and
+ * sets k = (m / n) ln 2 bits per key, derived from one 64-bit hash of the key by double
+ * hashing (bit i = h1 + i h2).  Keys hash as their values' hashCode, so values that are
+ * equal hash alike.
+ */
+public class BloomFilter
+{
+    /** The bits
+     */
+    private final long [] bits;
+
+    /** The number of bits and of bits set per key
+     */
+    private final long m;
+    private final int k;
+
+    /*************************************************************************************
+     * Construct an empty filter sized for the given number of keys.
+     * @param expected  the expected number of keys
+     * @param fpp       the false-positive rate wanted (between 0 and 1)
+     */
+    public BloomFilter (int expected, double fpp)
+    {
+        if (fpp <= 0 || fpp >= 1) throw new IllegalArgumentException ("false-positive rate must be in (0, 1)");
+        int n = Math.max (1, expected);
+        long words = Math.max (1, (long) Math.ceil (-n * Math.log (fpp) / (Math.log (2) * Math.log (2)) / 64));
+        bits = new long [(int) Math.min (words, Integer.MAX_VALUE - 8)];
+        m = 64L * bits.length;
+        k = Math.max (1, (int) Math.round ((double) m / n * Math.log (2)));
+    } // constructor
+
+    /*************************************************************************************
+     * Add the key formed by the given columns of a tuple.
+     * @param t     the tuple
+     * @param cols  the key columns
+     */
+    public void add (Comparable [] t, int [] cols)
+    {
+        long h = hash (t, cols);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < k; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % m;
+            bits [(int) (bit >>> 6)] |= 1L << bit;
+        } // for
+    } // add
+
+    /*************************************************************************************
+     * Return whether the key formed by the given columns of a tuple may have been added
+     * (false means it certainly was not).
+     * @param t     the tuple
+     * @param cols  the key columns
+     * @return  whether the key may be present
+     */
+    public boolean mightContain (Comparable [] t, int [] cols)
+    {
+        long h = hash (t, cols);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < k; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % m;
+            if ((bits [(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        } // for
+        return true;
+    } // mightContain
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Hash the key formed by the given columns of a tuple to 64 well-mixed bits.
+     */
+    private static long hash (Comparable [] t, int [] cols)
+    {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int c : cols) h = (h ^ t [c].hashCode ()) * 0x100000001B3L + 0x632BE59BD9B4E019L;
+        h ^= h >>> 33;                                          // MurmurHash3 finalizer
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    } // hash
+
+} // BloomFilter class
+
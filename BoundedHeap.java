@@ -0,0 +1,114 @@
+/****************************************************************************************
+ * @file  BoundedHeap.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The BoundedHeap class keeps the k first tuples, in a given order, of a stream of tuples
+ * without sorting (or keeping) the whole stream.  The k tuples kept form a binary heap
+ * whose root is the last of them, so each offered tuple costs one comparison with the
+ * root, plus O(log k) when it displaces the root.  Tuples that compare equal keep their
+ * stream order (the earlier one is first), so the result matches a stable sort followed
+ * by taking the first k.
+ */
+public class BoundedHeap
+{
+    /** The order deciding which tuples come first
+     */
+    private final Comparator <Comparable []> order;
+
+    /** The tuples kept, as a heap with the last of them at the root
+     */
+    private final Comparable [][] heap;
+
+    /** The stream position of each tuple kept (breaking ties)
+     */
+    private final long [] seq;
+
+    /** The number of tuples kept and offered
+     */
+    private int size = 0;
+    private long offered = 0;
+
+    /*************************************************************************************
+     * Construct a heap keeping the first k tuples in the given order.
+     * @param k       the number of tuples to keep
+     * @param _order  the order
+     */
+    public BoundedHeap (int k, Comparator <Comparable []> _order)
+    {
+        if (k < 0) throw new IllegalArgumentException ("negative k " + k);
+        order = _order;
+        heap  = new Comparable [k][];
+        seq   = new long [k];
+    } // constructor
+
+    /*************************************************************************************
+     * Offer the next tuple of the stream.
+     * @param t  the tuple
+     */
+    public void offer (Comparable [] t)
+    {
+        long s = offered++;
+        if (size < heap.length) {                              // sift up
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (compare (heap [parent], seq [parent], t, s) >= 0) break;
+                heap [i] = heap [parent];
+                seq [i]  = seq [parent];
+                i = parent;
+            } // while
+            heap [i] = t;
+            seq [i]  = s;
+        } else if (size > 0 && order.compare (t, heap [0]) < 0) {      // replace the root, sift down
+            int i = 0;
+            for ( ; ; ) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && compare (heap [child + 1], seq [child + 1], heap [child], seq [child]) > 0) child++;
+                if (compare (heap [child], seq [child], t, s) <= 0) break;
+                heap [i] = heap [child];
+                seq [i]  = seq [child];
+                i = child;
+            } // for
+            heap [i] = t;
+            seq [i]  = s;
+        } // if
+    } // offer
+
+    /*************************************************************************************
+     * Return the tuples kept, first to last.
+     * @return  the first k tuples (fewer if fewer were offered)
+     */
+    public List <Comparable []> sorted ()
+    {
+        Integer [] pos = new Integer [size];
+        for (int i = 0; i < size; i++) pos [i] = i;
+        Arrays.sort (pos, new Comparator <Integer> () {
+            public int compare (Integer i1, Integer i2)
+            {
+                return BoundedHeap.this.compare (heap [i1], seq [i1], heap [i2], seq [i2]);
+            } // compare
+        });
+        List <Comparable []> rows = new ArrayList <> (size);
+        for (Integer i : pos) rows.add (heap [i]);
+        return rows;
+    } // sorted
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Compare two tuples by the order, then by stream position.
+     */
+    private int compare (Comparable [] t1, long s1, Comparable [] t2, long s2)
+    {
+        int c = order.compare (t1, t2);
+        return (c != 0) ? c : Long.compare (s1, s2);
+    } // compare
+
+} // BoundedHeap class
+
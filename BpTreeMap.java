@@ -0,0 +1,604 @@
+/****************************************************************************************
+ * @file  BpTreeMap.java
+ *
+ * @see http://en.wikipedia.org/wiki/B%2B_tree
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The BpTreeMap class provides an in-memory B+Tree map.  All key-value pairs are kept in
+ * the leaves, which are linked left to right, so a range scan descends the tree once and
+ * then follows the leaf chain.  Sorted data may be bulk loaded bottom-up.  Removal is not
+ * supported.  This class is not thread-safe.
+ */
+public class BpTreeMap <K extends Comparable <K>, V>
+       extends AbstractMap <K, V>
+       implements SortedMap <K, V>
+{
+    /** The maximum number of keys in a node (a node is split when it exceeds this)
+     */
+    private static final int ORDER = 64;
+
+    /*************************************************************************************
+     * A node in the B+Tree.  A leaf holds nKeys keys with their values in ref; an internal
+     * node holds nKeys keys and nKeys + 1 children in ref, where child i holds the keys
+     * less than key [i] and child i + 1 holds those greater than or equal to it.  Arrays
+     * have one spare slot so a node may overflow before it is split.
+     */
+    private static class Node
+    {
+        final boolean isLeaf;
+        int nKeys;
+        final Comparable [] key;
+        final Object [] ref;
+        Node next;                                  // next leaf in key order
+
+        Node (boolean leaf)
+        {
+            isLeaf = leaf;
+            key    = new Comparable [ORDER + 1];
+            ref    = new Object [ORDER + 2];
+        } // constructor
+    } // Node class
+
+    /** The root of the B+Tree
+     */
+    private Node root = new Node (true);
+
+    /** The number of key-value pairs in the map
+     */
+    private int size = 0;
+
+    /** The separator key produced by the last node split (set by insert)
+     */
+    private Comparable splitKey;
+
+    /** The value replaced by the last insert (set by insert)
+     */
+    private Object oldValue;
+
+    /*************************************************************************************
+     * Return the value associated with the given key.
+     * @param k  the key
+     * @return  the associated value or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object k)
+    {
+        Node nd = root;
+        while (! nd.isLeaf) nd = (Node) nd.ref [childPos (nd, (Comparable) k)];
+        int i = search (nd, (Comparable) k);
+        return (i >= 0) ? (V) nd.ref [i] : null;
+    } // get
+
+    /*************************************************************************************
+     * Determine whether the map contains the given key.
+     * @param k  the key
+     * @return  whether the key is present
+     */
+    public boolean containsKey (Object k)
+    {
+        Node nd = root;
+        while (! nd.isLeaf) nd = (Node) nd.ref [childPos (nd, (Comparable) k)];
+        return search (nd, (Comparable) k) >= 0;
+    } // containsKey
+
+    /*************************************************************************************
+     * Put the key-value pair into the B+Tree, splitting nodes on the way back up as
+     * needed.
+     * @param k  the key
+     * @param v  the value
+     * @return  the value previously associated with the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K k, V v)
+    {
+        if (k == null) throw new NullPointerException ("BpTreeMap does not allow null keys");
+        oldValue = null;
+        Node sib = insert (root, k, v);
+        if (sib != null) {                          // root was split, grow the tree
+            Node newRoot = new Node (false);
+            newRoot.nKeys  = 1;
+            newRoot.key [0] = splitKey;
+            newRoot.ref [0] = root;
+            newRoot.ref [1] = sib;
+            root = newRoot;
+        } // if
+        return (V) oldValue;
+    } // put
+
+    /*************************************************************************************
+     * Load a sequence of key-value pairs in strictly ascending key order into this empty
+     * map, building the tree bottom-up one level at a time (O(n)).
+     * @param keys    the keys in ascending order
+     * @param values  the corresponding values
+     */
+    public void bulkLoad (List <K> keys, List <V> values)
+    {
+        if (size != 0) throw new IllegalStateException ("bulkLoad: map is not empty");
+        if (keys.size () != values.size ()) throw new IllegalArgumentException ("bulkLoad: size mismatch");
+        if (keys.isEmpty ()) return;
+
+        List <Node> level = new ArrayList <> ();
+        List <Comparable> mins = new ArrayList <> ();
+        Node leaf = null;
+        for (int i = 0; i < keys.size (); i++) {
+            K k = keys.get (i);
+            if (i > 0 && keys.get (i - 1).compareTo (k) >= 0) {
+                throw new IllegalArgumentException ("bulkLoad: keys not strictly ascending at " + i);
+            } // if
+            if (leaf == null || leaf.nKeys == ORDER) {
+                Node nd = new Node (true);
+                if (leaf != null) leaf.next = nd;
+                leaf = nd;
+                level.add (leaf);
+                mins.add (k);
+            } // if
+            leaf.key [leaf.nKeys]   = k;
+            leaf.ref [leaf.nKeys++] = values.get (i);
+        } // for
+        size = keys.size ();
+
+        while (level.size () > 1) {                 // build the next level up
+            List <Node> upper = new ArrayList <> ();
+            List <Comparable> upperMins = new ArrayList <> ();
+            for (int i = 0; i < level.size (); i += ORDER + 1) {
+                Node nd = new Node (false);
+                int end = Math.min (level.size (), i + ORDER + 1);
+                nd.ref [0] = level.get (i);
+                for (int j = i + 1; j < end; j++) {
+                    nd.key [nd.nKeys]   = mins.get (j);
+                    nd.ref [++nd.nKeys] = level.get (j);
+                } // for
+                upper.add (nd);
+                upperMins.add (mins.get (i));
+            } // for
+            level = upper;
+            mins  = upperMins;
+        } // while
+        root = level.get (0);
+    } // bulkLoad
+
+    /*************************************************************************************
+     * Return the number of key-value pairs in the map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /*************************************************************************************
+     * Return the set of entries in key order (read-only).
+     * @return  the entry set
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new RangeView (null, false, null, false).entrySet ();
+    } // entrySet
+
+    /*************************************************************************************
+     * Return null, since keys are compared using their natural ordering.
+     * @return  null
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /*************************************************************************************
+     * Return the first (smallest) key in the map.
+     * @return  the first key
+     */
+    @SuppressWarnings("unchecked")
+    public K firstKey ()
+    {
+        if (size == 0) throw new NoSuchElementException ();
+        Node nd = root;
+        while (! nd.isLeaf) nd = (Node) nd.ref [0];
+        return (K) nd.key [0];
+    } // firstKey
+
+    /*************************************************************************************
+     * Return the last (largest) key in the map.
+     * @return  the last key
+     */
+    @SuppressWarnings("unchecked")
+    public K lastKey ()
+    {
+        if (size == 0) throw new NoSuchElementException ();
+        Node nd = root;
+        while (! nd.isLeaf) nd = (Node) nd.ref [nd.nKeys];
+        return (K) nd.key [nd.nKeys - 1];
+    } // lastKey
+
+    /*************************************************************************************
+     * Return a view of the keys from (inclusive) up to to (exclusive).
+     * @param from  the low end of the range
+     * @param to    the high end of the range
+     * @return  the range view
+     */
+    public SortedMap <K, V> subMap (K from, K to)
+    {
+        return subMap (from, true, to, false);
+    } // subMap
+
+    /*************************************************************************************
+     * Return a view of the keys less than to.
+     * @param to  the high end of the range (exclusive)
+     * @return  the range view
+     */
+    public SortedMap <K, V> headMap (K to)
+    {
+        return headMap (to, false);
+    } // headMap
+
+    /*************************************************************************************
+     * Return a view of the keys greater than or equal to from.
+     * @param from  the low end of the range (inclusive)
+     * @return  the range view
+     */
+    public SortedMap <K, V> tailMap (K from)
+    {
+        return tailMap (from, true);
+    } // tailMap
+
+    /*************************************************************************************
+     * Return a view of the keys between from and to, each end open or closed.
+     * @param from      the low end of the range
+     * @param fromIncl  whether from is included
+     * @param to        the high end of the range
+     * @param toIncl    whether to is included
+     * @return  the range view
+     */
+    public SortedMap <K, V> subMap (K from, boolean fromIncl, K to, boolean toIncl)
+    {
+        if (from == null || to == null) throw new NullPointerException ();
+        return new RangeView (from, fromIncl, to, toIncl);
+    } // subMap
+
+    /*************************************************************************************
+     * Return a view of the keys less than (or equal to) to.
+     * @param to      the high end of the range
+     * @param toIncl  whether to is included
+     * @return  the range view
+     */
+    public SortedMap <K, V> headMap (K to, boolean toIncl)
+    {
+        if (to == null) throw new NullPointerException ();
+        return new RangeView (null, false, to, toIncl);
+    } // headMap
+
+    /*************************************************************************************
+     * Return a view of the keys greater than (or equal to) from.
+     * @param from      the low end of the range
+     * @param fromIncl  whether from is included
+     * @return  the range view
+     */
+    public SortedMap <K, V> tailMap (K from, boolean fromIncl)
+    {
+        if (from == null) throw new NullPointerException ();
+        return new RangeView (from, fromIncl, null, false);
+    } // tailMap
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Recursively insert the key-value pair into the subtree rooted at nd.  If nd
+     * overflows it is split and the new right sibling is returned (with its separator
+     * left in splitKey); otherwise null is returned.
+     * @param nd  the root of the subtree
+     * @param k   the key
+     * @param v   the value
+     * @return  the new right sibling or null
+     */
+    private Node insert (Node nd, K k, V v)
+    {
+        if (nd.isLeaf) {
+            int i = search (nd, k);
+            if (i >= 0) {                           // replace existing value
+                oldValue  = nd.ref [i];
+                nd.ref [i] = v;
+                return null;
+            } // if
+            i = -i - 1;
+            shift (nd.key, i, nd.nKeys);
+            shift (nd.ref, i, nd.nKeys);
+            nd.key [i] = k;
+            nd.ref [i] = v;
+            nd.nKeys++;
+            size++;
+            return (nd.nKeys > ORDER) ? splitLeaf (nd) : null;
+        } // if
+
+        int c = childPos (nd, k);
+        Node sib = insert ((Node) nd.ref [c], k, v);
+        if (sib == null) return null;
+        shift (nd.key, c, nd.nKeys);
+        shift (nd.ref, c + 1, nd.nKeys + 1);
+        nd.key [c]     = splitKey;
+        nd.ref [c + 1] = sib;
+        nd.nKeys++;
+        return (nd.nKeys > ORDER) ? splitInternal (nd) : null;
+    } // insert
+
+    /*************************************************************************************
+     * Split an overflowing leaf, moving its upper half into a new right sibling.
+     * @param nd  the leaf to split
+     * @return  the new right sibling
+     */
+    private Node splitLeaf (Node nd)
+    {
+        Node right = new Node (true);
+        int half = (nd.nKeys + 1) / 2;
+        right.nKeys = nd.nKeys - half;
+        System.arraycopy (nd.key, half, right.key, 0, right.nKeys);
+        System.arraycopy (nd.ref, half, right.ref, 0, right.nKeys);
+        Arrays.fill (nd.key, half, nd.nKeys, null);
+        Arrays.fill (nd.ref, half, nd.nKeys, null);
+        nd.nKeys   = half;
+        right.next = nd.next;
+        nd.next    = right;
+        splitKey   = right.key [0];
+        return right;
+    } // splitLeaf
+
+    /*************************************************************************************
+     * Split an overflowing internal node, promoting its middle key into splitKey.
+     * @param nd  the internal node to split
+     * @return  the new right sibling
+     */
+    private Node splitInternal (Node nd)
+    {
+        Node right = new Node (false);
+        int mid = nd.nKeys / 2;
+        splitKey    = nd.key [mid];
+        right.nKeys = nd.nKeys - mid - 1;
+        System.arraycopy (nd.key, mid + 1, right.key, 0, right.nKeys);
+        System.arraycopy (nd.ref, mid + 1, right.ref, 0, right.nKeys + 1);
+        Arrays.fill (nd.key, mid, nd.nKeys, null);
+        Arrays.fill (nd.ref, mid + 1, nd.nKeys + 1, null);
+        nd.nKeys = mid;
+        return right;
+    } // splitInternal
+
+    /*************************************************************************************
+     * Shift the elements of arr at positions i .. n-1 one position to the right.
+     * @param arr  the array
+     * @param i    the first position to shift
+     * @param n    the number of elements in use
+     */
+    private static void shift (Object [] arr, int i, int n)
+    {
+        if (i < n) System.arraycopy (arr, i, arr, i + 1, n - i);
+    } // shift
+
+    /*************************************************************************************
+     * Binary search the keys of node nd for k.
+     * @param nd  the node to search
+     * @param k   the key to find
+     * @return  the position of k, or (-(insertion point) - 1) if not found
+     */
+    @SuppressWarnings("unchecked")
+    private static int search (Node nd, Comparable k)
+    {
+        int lo = 0, hi = nd.nKeys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = nd.key [mid].compareTo (k);
+            if (c < 0)      lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else            return mid;
+        } // while
+        return -(lo + 1);
+    } // search
+
+    /*************************************************************************************
+     * Return the position of the child of internal node nd whose subtree may hold k.
+     * @param nd  the internal node
+     * @param k   the key
+     * @return  the child position
+     */
+    private static int childPos (Node nd, Comparable k)
+    {
+        int i = search (nd, k);
+        return (i >= 0) ? i + 1 : -i - 1;
+    } // childPos
+
+    /*************************************************************************************
+     * Compare two keys, used for checking range bounds.
+     */
+    @SuppressWarnings("unchecked")
+    private static int cmp (Comparable k1, Comparable k2)
+    {
+        return k1.compareTo (k2);
+    } // cmp
+
+    /*************************************************************************************
+     * A read-through view of the keys within a range (a null bound means unbounded).
+     * Iteration descends to the first leaf once and then follows the leaf chain.
+     */
+    private class RangeView
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        private final K lo, hi;
+        private final boolean loIncl, hiIncl;
+
+        RangeView (K _lo, boolean _loIncl, K _hi, boolean _hiIncl)
+        {
+            lo = _lo; loIncl = _loIncl;
+            hi = _hi; hiIncl = _hiIncl;
+        } // constructor
+
+        boolean aboveLo (Comparable k)
+        {
+            if (lo == null) return true;
+            int c = cmp (k, lo);
+            return c > 0 || (c == 0 && loIncl);
+        } // aboveLo
+
+        boolean belowHi (Comparable k)
+        {
+            if (hi == null) return true;
+            int c = cmp (k, hi);
+            return c < 0 || (c == 0 && hiIncl);
+        } // belowHi
+
+        boolean inRange (Object k)
+        {
+            return aboveLo ((Comparable) k) && belowHi ((Comparable) k);
+        } // inRange
+
+        public V get (Object k)
+        {
+            return inRange (k) ? BpTreeMap.this.get (k) : null;
+        } // get
+
+        public boolean containsKey (Object k)
+        {
+            return inRange (k) && BpTreeMap.this.containsKey (k);
+        } // containsKey
+
+        public V put (K k, V v)
+        {
+            if (! inRange (k)) throw new IllegalArgumentException ("key out of range");
+            return BpTreeMap.this.put (k, v);
+        } // put
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator () { return new LeafIterator (); }
+                public int size ()
+                {
+                    if (lo == null && hi == null) return size;
+                    int n = 0;
+                    for (Iterator <Map.Entry <K, V>> it = iterator (); it.hasNext (); it.next ()) n++;
+                    return n;
+                } // size
+                public boolean isEmpty () { return ! iterator ().hasNext (); }
+            };
+        } // entrySet
+
+        public Comparator <? super K> comparator () { return null; }
+
+        public K firstKey ()
+        {
+            Iterator <Map.Entry <K, V>> it = entrySet ().iterator ();
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            for (Map.Entry <K, V> e : entrySet ()) last = e.getKey ();
+            if (last == null) throw new NoSuchElementException ();
+            return last;
+        } // lastKey
+
+        public SortedMap <K, V> subMap (K from, K to)
+        {
+            checkBound (from); checkBound (to);
+            return new RangeView (from, true, to, false);
+        } // subMap
+
+        public SortedMap <K, V> headMap (K to)
+        {
+            checkBound (to);
+            return new RangeView (lo, loIncl, to, false);
+        } // headMap
+
+        public SortedMap <K, V> tailMap (K from)
+        {
+            checkBound (from);
+            return new RangeView (from, true, hi, hiIncl);
+        } // tailMap
+
+        private void checkBound (K k)
+        {
+            if ((lo != null && cmp (k, lo) < 0) || (hi != null && cmp (k, hi) > 0)) {
+                throw new IllegalArgumentException ("bound out of range");
+            } // if
+        } // checkBound
+
+        /*********************************************************************************
+         * Iterate over the entries of the range by following the leaf chain.
+         */
+        private class LeafIterator
+                implements Iterator <Map.Entry <K, V>>
+        {
+            private Node leaf;
+            private int pos;
+
+            LeafIterator ()
+            {
+                leaf = root;
+                if (lo == null) {
+                    while (! leaf.isLeaf) leaf = (Node) leaf.ref [0];
+                    pos = 0;
+                } else {
+                    while (! leaf.isLeaf) leaf = (Node) leaf.ref [childPos (leaf, lo)];
+                    int i = search (leaf, lo);
+                    pos = (i >= 0) ? (loIncl ? i : i + 1) : -i - 1;
+                } // if
+                advance ();
+            } // constructor
+
+            private void advance ()
+            {
+                while (leaf != null && pos >= leaf.nKeys) {
+                    leaf = leaf.next;
+                    pos  = 0;
+                } // while
+                if (leaf != null && ! belowHi (leaf.key [pos])) leaf = null;
+            } // advance
+
+            public boolean hasNext ()
+            {
+                return leaf != null;
+            } // hasNext
+
+            @SuppressWarnings("unchecked")
+            public Map.Entry <K, V> next ()
+            {
+                if (leaf == null) throw new NoSuchElementException ();
+                Map.Entry <K, V> e = new AbstractMap.SimpleImmutableEntry <> ((K) leaf.key [pos], (V) leaf.ref [pos]);
+                pos++;
+                advance ();
+                return e;
+            } // next
+        } // LeafIterator class
+
+    } // RangeView class
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        BpTreeMap <Integer, Integer> bpt = new BpTreeMap <> ();
+        int n = 10000;
+        for (int i = n; i > 0; i--) bpt.put (i * 2, i * i);
+        out.println ("size = " + bpt.size ());
+        out.println ("get (200) = " + bpt.get (200));
+        out.println ("get (201) = " + bpt.get (201));
+        out.println ("firstKey = " + bpt.firstKey () + ", lastKey = " + bpt.lastKey ());
+        out.println ("subMap [10, 20) = " + bpt.subMap (10, 20));
+        out.println ("subMap (10, 20] = " + bpt.subMap (10, false, 20, true));
+
+        BpTreeMap <Integer, Integer> bulk = new BpTreeMap <> ();
+        List <Integer> keys = new ArrayList <> (bpt.keySet ());
+        bulk.bulkLoad (keys, new ArrayList <> (bpt.values ()));
+        out.println ("bulk loaded equals = " + bulk.equals (bpt));
+    } // main
+
+} // BpTreeMap class
+
@@ -1,3 +1,11 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class CodeRunnerTableTest {
 
     public static void main(String[] args) {
@@ -38,6 +46,144 @@ public class CodeRunnerTableTest {
         } else {
             System.out.println("Your \"Natural Join\" method is incomplete or wrong.");
         }
+
+        if (tst.testHashJoin()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Hash Join\" method is incomplete or wrong.");
+        }
+
+        if (tst.testIndexJoin()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Index Join\" method is incomplete or wrong.");
+        }
+
+        if (tst.testMapTypes()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Map Types\" method is incomplete or wrong.");
+        }
+
+        if (tst.testRangeSelect()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Range Select\" method is incomplete or wrong.");
+        }
+
+        if (tst.testPredicateSelect()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Predicate Select\" method is incomplete or wrong.");
+        }
+
+        if (tst.testSecondaryIndex()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Secondary Index\" method is incomplete or wrong.");
+        }
+
+        if (tst.testColumnar()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Columnar\" method is incomplete or wrong.");
+        }
+
+        if (tst.testInsertAll()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Insert All\" method is incomplete or wrong.");
+        }
+
+        if (tst.testQuery()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Query\" method is incomplete or wrong.");
+        }
+
+        if (tst.testParallel()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Parallel\" method is incomplete or wrong.");
+        }
+
+        if (tst.testConcurrent()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Concurrent\" method is incomplete or wrong.");
+        }
+
+        if (tst.testSnapshot()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Snapshot\" method is incomplete or wrong.");
+        }
+
+        if (tst.testKeyTypes()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"KeyTypes\" method is incomplete or wrong.");
+        }
+
+        if (tst.testDictionary()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Dictionary\" method is incomplete or wrong.");
+        }
+
+        if (tst.testSaveOpen()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"SaveOpen\" method is incomplete or wrong.");
+        }
+
+        if (tst.testWriteAheadLog()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"WriteAheadLog\" method is incomplete or wrong.");
+        }
+
+        if (tst.testLoad()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Load\" method is incomplete or wrong.");
+        }
+
+        if (tst.testExport()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"Export\" method is incomplete or wrong.");
+        }
+
+        if (tst.testGroupBy()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"GroupBy\" method is incomplete or wrong.");
+        }
+
+        if (tst.testOrderBy()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"OrderBy\" method is incomplete or wrong.");
+        }
+
+        if (tst.testTopK()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"TopK\" method is incomplete or wrong.");
+        }
+
+        if (tst.testBloomFilter()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"BloomFilter\" method is incomplete or wrong.");
+        }
+
+        if (tst.testHybridHashJoin()) {
+            System.out.println("true");
+        } else {
+            System.out.println("Your \"HybridHashJoin\" method is incomplete or wrong.");
+        }
     }
 
     /**
@@ -125,7 +271,10 @@ public class CodeRunnerTableTest {
 
         Table proj2 = movie.project("studioName");
         System.out.println(proj2);
-        return true;
+
+        Table proj3 = movie.project("year title genre");
+        System.out.println(proj3);
+        return proj1.tuples.size() == 4 && proj2.tuples.size() == 2 && proj3.tuples.size() == 4;
     }
 
     /**
@@ -167,7 +316,10 @@ public class CodeRunnerTableTest {
         System.out.println("movie\n" + movie);
         System.out.println("union1\n" + union1);
 
-        return true;
+        Table union2 = movie.union(movie2.select(new KeyType("Rocky", 1985)), Table.SetOpType.SORT_MERGE);
+        Table union3 = movie.union(movie.minus(movie), Table.SetOpType.SORT_MERGE);
+
+        return union1.tuples.size() == 4 && union2.tuples.size() == 4 && union3.tuples.size() == 4;
     }
 
     /**
@@ -184,7 +336,11 @@ public class CodeRunnerTableTest {
         System.out.println("movie\n" + movie);
         System.out.println("minus1\n" + minus1);
 
-        return true;
+        Table minus2 = movie.minus(movie2.select(new KeyType("Rocky", 1985)), Table.SetOpType.SORT_MERGE);
+        System.out.println("minus2\n" + minus2);
+
+        return minus1.tuples.size() == 0 && minus2.tuples.size() == 3
+                && minus2.tuples.get(0)[0].equals("Rambo");
     }
 
     /**
@@ -209,4 +365,838 @@ public class CodeRunnerTableTest {
 
         return true;
     }
+
+    /**
+     * Tests that the hash join agrees with the nested loop join.
+     */
+    public boolean testHashJoin() {
+        System.out.println("\n\ntestHashJoin\n************************************************************************************************************************\n");
+        Table hJoin = this.createMovieTable().equiJoin("studioName", "name",
+                this.createStudioTable(), Table.JoinType.HASH);
+        Table nJoin = this.createMovieTable().equiJoin("studioName", "name",
+                this.createStudioTable(), Table.JoinType.NESTED_LOOP);
+
+        System.out.println(hJoin);
+
+        if (hJoin.tuples.size() != nJoin.tuples.size()) return false;
+        for (int i = 0; i < hJoin.tuples.size(); i++) {
+            if (!Arrays.deepEquals(hJoin.tuples.get(i), nJoin.tuples.get(i))) return false;
+        }
+        return hJoin.col("name2") == -1 && hJoin.col("name") != -1;
+    }
+
+    /**
+     * Tests that the index join (common attributes form the rhs key) and the hash join
+     * agree with the nested loop join.
+     */
+    public boolean testIndexJoin() {
+        System.out.println("\n\ntestIndexJoin\n************************************************************************************************************************\n");
+        Table movie = this.createMovieTable().project("title producerNo");
+        Table producer = this.createProducerTable();
+
+        Table iJoin = movie.naturalJoin(producer, Table.JoinType.INDEX);
+        Table hJoin = movie.naturalJoin(producer, Table.JoinType.HASH);
+        Table nJoin = movie.naturalJoin(producer, Table.JoinType.NESTED_LOOP);
+
+        System.out.println(iJoin);
+
+        if (iJoin.tuples.size() != 3 || hJoin.tuples.size() != 3 || nJoin.tuples.size() != 3) return false;
+        for (int i = 0; i < nJoin.tuples.size(); i++) {
+            if (!Arrays.deepEquals(iJoin.tuples.get(i), nJoin.tuples.get(i))) return false;
+            if (!Arrays.deepEquals(hJoin.tuples.get(i), nJoin.tuples.get(i))) return false;
+        }
+        return iJoin.col("producerName") == 3 && iJoin.col("year") == 2;
+    }
+
+    /**
+     * Tests that select finds the same tuples with every type of index map.
+     */
+    public boolean testMapTypes() {
+        System.out.println("\n\ntestMapTypes\n************************************************************************************************************************\n");
+        for (Table.MapType mType : Table.MapType.values()) {
+            Table t = new Table("numbers", "id square", "Integer Integer", "id", mType);
+            for (int i = 0; i < 5000; i++) t.insert(new Comparable[]{i, i * i});
+            for (int i = 0; i < 5000; i += 7) {
+                Table sel = t.select(new KeyType(i));
+                if (sel.tuples.size() != 1 || !sel.tuples.get(0)[1].equals(i * i)) return false;
+            }
+            if (t.select(new KeyType(5000)).tuples.size() != 0) return false;
+            System.out.println(mType + " ok");
+        }
+        return true;
+    }
+
+    /**
+     * Tests the range select method with open, closed and unbounded ends.
+     */
+    public boolean testRangeSelect() {
+        System.out.println("\n\ntestRangeSelect\n************************************************************************************************************************\n");
+        for (Table.MapType mType : Table.MapType.values()) {
+            Table t = new Table("years", "year title", "Integer String", "year", mType);
+            for (int y = 2000; y < 2020; y++) t.insert(new Comparable[]{y, "title_" + y});
+            KeyType y2005 = new KeyType(2005);
+            KeyType y2010 = new KeyType(2010);
+
+            Table closed = t.select(y2005, y2010);
+            System.out.println(mType + "\n" + closed);
+            if (closed.tuples.size() != 6 || !closed.tuples.get(0)[0].equals(2005)) return false;
+            if (t.select(y2005, false, y2010, false).tuples.size() != 4) return false;
+            if (t.select(null, false, y2005, true).tuples.size() != 6) return false;
+            if (t.select(y2010, false, null, false).tuples.size() != 9) return false;
+            if (t.select(y2010, y2005).tuples.size() != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests the predicate select method, sequential and parallel.
+     */
+    public boolean testPredicateSelect() {
+        System.out.println("\n\ntestPredicateSelect\n************************************************************************************************************************\n");
+        Table movie = this.createMovieTable();
+        Table action = movie.select(new PredicateMod<Comparable[]>() {
+            public boolean test(Comparable[] t) {
+                return t[movie.col("genre")].equals("action");
+            }
+        });
+        System.out.println(action);
+        if (action.tuples.size() != 2) return false;
+
+        Table numbers = new Table("numbers", "id", "Integer", "id");
+        for (int i = 0; i < 100000; i++) numbers.insert(new Comparable[]{i});
+        PredicateMod<Comparable[]> even = new PredicateMod<Comparable[]>() {
+            public boolean test(Comparable[] t) {
+                return (Integer) t[0] % 2 == 0;
+            }
+        };
+        Table seq = numbers.select(even, false);
+        Table par = numbers.select(even, true);
+        if (seq.tuples.size() != 50000 || par.tuples.size() != 50000) return false;
+        for (int i = 0; i < par.tuples.size(); i++) {
+            if (seq.tuples.get(i) != par.tuples.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests secondary indexes: creation, maintenance on insert, uniqueness, equality
+     * select and joins.
+     */
+    public boolean testSecondaryIndex() {
+        System.out.println("\n\ntestSecondaryIndex\n************************************************************************************************************************\n");
+        Table movie = this.createMovieTable();
+        Table studio = this.createStudioTable();
+        if (!movie.createIndex("studioName", false)) return false;
+        if (movie.createIndex("producerNo", true)) return false;    // 12345 occurs twice
+        if (!studio.createIndex("presNo", true)) return false;
+        if (studio.insert(new Comparable[]{"Pixar", "Emeryville", 7777})) return false;
+
+        movie.insert(new Comparable[]{"Toy_Story", 1995, 81, "family", "Universal", 11111});
+        Table universal = movie.select("studioName", "Universal");
+        System.out.println(universal);
+        if (universal.tuples.size() != 3) return false;
+        if (movie.select("title year", "Rocky", 1985).tuples.size() != 1) return false;
+        if (movie.select("genre", "action").tuples.size() != 2) return false;
+
+        Table iJoin = studio.equiJoin("name", "studioName", movie, Table.JoinType.INDEX);
+        Table nJoin = studio.equiJoin("name", "studioName", movie, Table.JoinType.NESTED_LOOP);
+        System.out.println(iJoin);
+        if (iJoin.tuples.size() != 5 || nJoin.tuples.size() != 5) return false;
+        for (int i = 0; i < iJoin.tuples.size(); i++) {
+            if (!Arrays.deepEquals(iJoin.tuples.get(i), nJoin.tuples.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests that a columnar table answers the same queries as a row table.
+     */
+    public boolean testColumnar() {
+        System.out.println("\n\ntestColumnar\n************************************************************************************************************************\n");
+        Table rowMovie = this.createMovieTable();
+        Table colMovie = new Table("movie", "title year length genre studioName producerNo",
+                "String Integer Integer String String Integer", "title year", Table.StorageType.COLUMNAR);
+        for (Comparable[] tup : rowMovie.tuples) colMovie.insert(tup);
+        if (colMovie.insert(new Comparable[]{"Bad", 1999L, 1, "x", "y", 1})) return false;   // Long year
+
+        System.out.println(colMovie);
+        for (int i = 0; i < rowMovie.tuples.size(); i++) {
+            if (!Arrays.deepEquals(rowMovie.tuples.get(i), colMovie.tuples.get(i))) return false;
+        }
+        Table sel = colMovie.select(new KeyType("Rocky", 1985));
+        if (sel.tuples.size() != 1 || !sel.tuples.get(0)[2].equals(200)) return false;
+        if (colMovie.select("studioName genre", "Fox", "sciFi").tuples.size() != 2) return false;
+        if (colMovie.select("studioName", "Paramount").tuples.size() != 0) return false;
+        if (colMovie.select(new KeyType("Rambo", 1978), false, null, false).tuples.size() != 3) return false;
+        if (colMovie.project("studioName").tuples.size() != 2) return false;
+        for (Table.JoinType type : Table.JoinType.values()) {                 // keys read from the columns
+            Table rowJoin = rowMovie.equiJoin("producerNo", "producerNo", this.createProducerTable(), type);
+            Table colJoin = colMovie.equiJoin("producerNo", "producerNo", this.createProducerTable(), type);
+            if (colJoin.tuples.size() != rowJoin.tuples.size()) return false;
+        }
+        return colMovie.naturalJoin(this.createProducerTable()).tuples.size() == 2;
+    }
+
+    /**
+     * Tests bulk insertion for each index type, including deferred index construction.
+     */
+    public boolean testInsertAll() {
+        System.out.println("\n\ntestInsertAll\n************************************************************************************************************************\n");
+        List<Comparable[]> rows = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) rows.add(new Comparable[]{(i * 7919) % 20000, "v" + i});
+        rows.add(new Comparable[]{1, 2});                     // wrong type, skipped
+        for (Table.MapType mType : Table.MapType.values()) {
+            Table t = new Table("bulk", "id val", "Integer String", "id", mType);
+            t.insert(new Comparable[]{-1, "first"});
+            if (t.insertAll(rows) != 20000 || t.tuples.size() != 20001) return false;
+            if (t.select(new KeyType(-1)).tuples.size() != 1) return false;
+            for (int i = 0; i < 20000; i += 97) {
+                if (t.select(new KeyType(i)).tuples.size() != 1) return false;
+            }
+            Table empty = new Table("bulk", "id val", "Integer String", "id", mType);
+            empty.insertAll(rows);
+            if (empty.select(new KeyType(100), new KeyType(199)).tuples.size() != 100) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests that pull-based queries produce the same tuples as the Table operators.
+     */
+    public boolean testQuery() {
+        System.out.println("\n\ntestQuery\n************************************************************************************************************************\n");
+        Table movie = this.createMovieTable();
+        Table producer = this.createProducerTable();
+        Table studio = this.createStudioTable();
+
+        Table q1 = movie.query().naturalJoin(producer).project("title producerName").toTable();
+        Table t1 = movie.naturalJoin(producer).project("title producerName");
+        System.out.println(q1);
+        if (!sameTuples(q1, t1)) return false;
+
+        Table q2 = movie.query().project("title producerNo").naturalJoin(producer).toTable();
+        if (!sameTuples(q2, movie.project("title producerNo").naturalJoin(producer))) return false;
+
+        Table q3 = movie.query().join("studioName", "name", studio).toTable();
+        if (q3.tuples.size() != 4 || q3.col("name") != 6) return false;
+
+        Table q4 = movie.query().where(new PredicateMod<Comparable[]>() {
+            public boolean test(Comparable[] t) {
+                return t[3].equals("action");
+            }
+        }).toTable();
+        Table q5 = movie.query().minus(q4.query()).union(q4.query()).toTable();
+        return q4.tuples.size() == 2 && q5.tuples.size() == 4 && sameTuples(movie.query().minus(q4.query()).toTable(),
+                movie.minus(q4));
+    }
+
+    /**
+     * Checks that two tables hold the same tuples in the same order.
+     */
+    private boolean sameTuples(Table t1, Table t2) {
+        if (t1.tuples.size() != t2.tuples.size()) return false;
+        for (int i = 0; i < t1.tuples.size(); i++) {
+            if (!Arrays.deepEquals(t1.tuples.get(i), t2.tuples.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests that the partitioned parallel operators produce the same tuples as the
+     * sequential ones (possibly in a different order).
+     */
+    public boolean testParallel() {
+        System.out.println("\n\ntestParallel\n************************************************************************************************************************\n");
+        Table orders = new Table("orders", "orderNo custNo amount", "Integer Integer Integer", "orderNo");
+        Table customer = new Table("customer", "custNo region", "Integer String", "custNo");
+        Table orders2 = new Table("orders", "orderNo custNo amount", "Integer Integer Integer", "orderNo");
+        for (int i = 0; i < 50000; i++) orders.insert(new Comparable[]{i, i % 3000, i % 17});
+        for (int i = 25000; i < 60000; i++) orders2.insert(new Comparable[]{i, i % 3000, i % 17});
+        for (int c = 0; c < 2000; c++) customer.insert(new Comparable[]{c, "region" + (c % 5)});
+
+        Table j1 = orders.naturalJoin(customer, Table.JoinType.HASH);
+        Table j2 = orders.naturalJoin(customer, Table.JoinType.PARALLEL_HASH);
+        Table p1 = orders.project("amount");
+        Table p2 = orders.project("amount", true);
+        Table u1 = orders.union(orders2);
+        Table u2 = orders.union(orders2, Table.SetOpType.PARALLEL_HASH);
+        Table m1 = orders.minus(orders2);
+        Table m2 = orders.minus(orders2, Table.SetOpType.PARALLEL_HASH);
+        System.out.println("join " + j2.tuples.size() + ", project " + p2.tuples.size()
+                + ", union " + u2.tuples.size() + ", minus " + m2.tuples.size());
+
+        return sameSet(j1, j2) && sameSet(p1, p2) && sameSet(u1, u2) && sameSet(m1, m2)
+                && j2.tuples.size() == 34000 && p2.tuples.size() == 17 && m2.tuples.size() == 25000 && u2.tuples.size() == 60000;
+    }
+
+    /**
+     * Checks that two compatible tables hold the same tuples, ignoring order.
+     */
+    private boolean sameSet(Table t1, Table t2) {
+        return t1.tuples.size() == t2.tuples.size() && t1.minus(t2).tuples.isEmpty();
+    }
+
+    /**
+     * Tests that a concurrent table keeps every tuple inserted by several threads.
+     */
+    public boolean testConcurrent() {
+        System.out.println("\n\ntestConcurrent\n************************************************************************************************************************\n");
+        final Table t = new Table("shared", "id val", "Integer Integer", "id", Table.StorageType.CONCURRENT);
+        Thread[] threads = new Thread[4];
+        for (int n = 0; n < threads.length; n++) {
+            final int base = n * 10000;
+            threads[n] = new Thread() {
+                public void run() {
+                    for (int i = base; i < base + 10000; i++) {
+                        t.insert(new Comparable[]{i, -i});
+                        t.select(new KeyType(i - 1));
+                    }
+                }
+            };
+            threads[n].start();
+        }
+        try {
+            for (Thread th : threads) th.join();
+        } catch (InterruptedException ex) {
+            return false;
+        }
+        if (t.tuples.size() != 40000) return false;
+        for (int i = 0; i < 40000; i += 13) {
+            if (t.select(new KeyType(i)).tuples.size() != 1) return false;
+        }
+        return t.select(new KeyType(100), new KeyType(199)).tuples.size() == 100
+                && t.naturalJoin(t.project("id")).tuples.size() == 40000;
+    }
+
+    /**
+     * Tests that a snapshot keeps seeing the table as it was while inserts continue,
+     * and that old versions are reclaimed once the snapshot is closed.
+     */
+    public boolean testSnapshot() {
+        System.out.println("\n\ntestSnapshot\n************************************************************************************************************************\n");
+        Table t = new Table("accounts", "id balance", "Integer Integer", "id", Table.StorageType.CONCURRENT);
+        for (int i = 0; i < 100; i++) t.insert(new Comparable[]{i, 0});
+        KeyType k = new KeyType(7);
+
+        Table.Snapshot s = t.snapshot();
+        t.insert(new Comparable[]{7, 500});                  // a newer version of key 7
+        for (int i = 100; i < 150; i++) t.insert(new Comparable[]{i, 0});
+        Table old = s.table();
+        boolean ok = old.tuples.size() == 100
+                && old.select(k).tuples.get(0)[1].equals(0)
+                && t.select(k).tuples.get(0)[1].equals(500)
+                && old.select(new KeyType(120)).tuples.isEmpty()
+                && old.select(new KeyType(90), new KeyType(130)).tuples.size() == 10
+                && old.naturalJoin(old.project("id")).tuples.size() == 100
+                && !old.insert(new Comparable[]{200, 0})
+                && old.insertAll(Arrays.asList(new Comparable[][]{{201, 0}})) == 0
+                && old.tuples.size() == 100
+                && t.versions(k) == 2;
+        s.close();
+        ok = ok && t.versions(k) == 1
+                && t.select(new KeyType(90), new KeyType(130)).tuples.size() == 41;
+        return ok && new Table("rows", "id", "Integer", "id").snapshot() == null;
+    }
+
+    /**
+     * Tests that specialized keys agree with general keys, and the primitive lookups.
+     */
+    public boolean testKeyTypes() {
+        System.out.println("\n\ntestKeyTypes\n************************************************************************************************************************\n");
+        KeyType[][] pairs = {
+                {KeyType.of(42), new KeyType(42)},
+                {KeyType.of(42L), new KeyType(42L)},
+                {KeyType.of("Fox"), new KeyType("Fox")},
+                {KeyType.of("Fox", 1977), new KeyType("Fox", 1977)}};
+        for (KeyType[] p : pairs) {
+            if (!p[0].equals(p[1]) || !p[1].equals(p[0]) || p[0].hashCode() != p[1].hashCode()
+                    || p[0].compareTo(p[1]) != 0 || p[1].compareTo(p[0]) != 0) return false;
+        }
+        if (!(KeyType.of(7) instanceof KeyType.IntKey) || KeyType.of(7).compareTo(KeyType.of(9)) >= 0
+                || KeyType.of("b").compareTo(new KeyType("a")) <= 0 || KeyType.of(7).equals(KeyType.of(7L))) return false;
+
+        boolean ok = true;
+        for (Table.MapType mType : Table.MapType.values()) {
+            Table t = new Table("customer", "id name", "Integer String", "id", mType);
+            Table s = new Table("studio", "name id", "String Long", "name", mType);
+            for (int i = 0; i < 500; i++) {
+                t.insert(new Comparable[]{i, "c" + i});
+                s.insert(new Comparable[]{"s" + i, (long) i});
+            }
+            ok = ok && t.get(42)[1].equals("c42") && t.get(42L)[1].equals("c42") && t.get(500) == null
+                    && t.get(1L << 40) == null && t.get("c42") == null
+                    && t.select(42).tuples.size() == 1 && t.select(new KeyType(42)).tuples.size() == 1
+                    && s.get("s7")[1].equals(7L) && s.get("t7") == null && s.get(7) == null;
+        }
+        Table c = new Table("columnar", "id name", "Long String", "id", Table.StorageType.COLUMNAR);
+        c.insert(new Comparable[]{5L, "x"});
+        return ok && c.get(5)[1].equals("x") && c.get(6) == null;
+    }
+
+    /**
+     * Tests that dictionary columns hold one instance per distinct value and that
+     * operators give the same results with and without dictionaries.
+     */
+    public boolean testDictionary() {
+        System.out.println("\n\ntestDictionary\n************************************************************************************************************************\n");
+        Table plain = createMovieTable();
+        Table movie = createMovieTable();
+        Table studio = new Table("studio", "name address presNo", "String String Integer", "name");
+        studio.insert(new Comparable[]{"Fox", "Los_Angeles", 7777});
+        studio.insert(new Comparable[]{"Universal", "Universal_City", 8888});
+
+        if (!studio.createDictionary("name") || !movie.createDictionary("genre")
+                || !movie.createDictionary("studioName", studio.dictionary("name"))) return false;
+        movie.insert(new Comparable[]{"Galaxy_Quest", 1999, 104, new String("comedy"), new String("Fox"), 99999});
+
+        Comparable[] galaxy = movie.select(new KeyType("Galaxy_Quest", 1999)).tuples.get(0);
+        Comparable[] starWars = movie.select(new KeyType("Star_Wars", 1977)).tuples.get(0);
+        Comparable[] fox = studio.select(new KeyType("Fox")).tuples.get(0);
+        boolean ok = galaxy[4] == starWars[4] && galaxy[4] == fox[0]
+                && studio.dictionary("name").size() == 2 && movie.dictionary("genre").size() == 3
+                && movie.dictionary("year") == null;
+
+        Table joined = movie.equiJoin("studioName", "name", studio);
+        ok = ok && joined.tuples.size() == 5
+                && plain.equiJoin("studioName", "name", studio).tuples.size() == 4
+                && movie.minus(plain).tuples.size() == 1 && movie.union(plain).tuples.size() == 5;
+
+        return ok && !movie.createDictionary("year")
+                && !new Table("c", "s", "String", "s", Table.StorageType.COLUMNAR).createDictionary("s");
+    }
+
+    /**
+     * Tests that a table saved to a file opens with the same tuples and a working index.
+     */
+    public boolean testSaveOpen() {
+        System.out.println("\n\ntestSaveOpen\n************************************************************************************************************************\n");
+        try {
+            Path dir = Files.createTempDirectory("tables");
+            Path file = dir.resolve("orders.tbl");
+            Table orders = new Table("orders", "id customer amount code", "Integer String Double Character", "id");
+            for (int i = 0; i < 5000; i++) {
+                orders.insert(new Comparable[]{i * 2, "customer_" + (i % 37) + "_\u00e9", i * 1.5, (char) ('a' + i % 26)});
+            }
+            orders.insert(new Comparable[]{4, "again", 0.0, 'z'});               // a repeated key
+            if (!orders.save(file)) return false;
+
+            Table opened = Table.open(file);
+            boolean ok = opened != null && opened.getName().equals("orders")
+                    && Arrays.equals(opened.getAttribute(), orders.getAttribute())
+                    && opened.tuples.size() == 5001 && sameSet(opened, orders)
+                    && opened.get(1000)[1].equals("customer_" + (500 % 37) + "_\u00e9")
+                    && opened.get(4)[1].equals("again") && opened.get(1001) == null
+                    && opened.select(new KeyType(100), new KeyType(200)).tuples.size() == 51
+                    && opened.select(new KeyType(9998), true, null, false).tuples.size() == 1
+                    && !opened.createDictionary("customer");
+
+            opened.insert(new Comparable[]{10001, "new", 1.0, 'n'});
+            opened.insert(new Comparable[]{6, "replaced", 1.0, 'n'});
+            ok = ok && opened.tuples.size() == 5003 && opened.get(10001)[1].equals("new")
+                    && opened.get(6)[1].equals("replaced")
+                    && opened.select(new KeyType(0), new KeyType(10)).tuples.size() == 6
+                    && opened.select(new KeyType(10000), null).tuples.size() == 1
+                    && opened.equiJoin("id", "id", orders).tuples.size() == 5004;
+
+            Path file2 = dir.resolve("orders2.tbl");                           // save an opened table
+            Table reopened = opened.save(file2) ? Table.open(file2) : null;
+            ok = ok && reopened != null && sameSet(reopened, opened)
+                    && reopened.get(6)[1].equals("replaced");
+
+            Table empty = new Table("empty", "a", "Integer", "a");
+            ok = ok && empty.save(dir.resolve("empty.tbl")) && Table.open(dir.resolve("empty.tbl")).tuples.isEmpty()
+                    && Table.open(dir.resolve("missing.tbl")) == null;
+
+            for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+            Files.delete(dir);
+            return ok;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Tests that inserts into an opened table survive a crash (the log is replayed), that
+     * a torn log record is ignored, and that a checkpoint never causes rows to replay twice.
+     */
+    public boolean testWriteAheadLog() {
+        System.out.println("\n\ntestWriteAheadLog\n************************************************************************************************************************\n");
+        try {
+            Path dir = Files.createTempDirectory("wal");
+            Path file = dir.resolve("events.tbl");
+            Path wal = dir.resolve("events.tbl.wal");
+            if (!new Table("events", "id kind", "Integer String", "id").save(file)) return false;
+
+            final Table t = Table.open(file);                          // 4 threads, group commit
+            Thread[] threads = new Thread[4];
+            for (int n = 0; n < threads.length; n++) {
+                final int base = n * 100;
+                threads[n] = new Thread() {
+                    public void run() {
+                        for (int i = base; i < base + 100; i++) t.insert(new Comparable[]{i, "click"});
+                    }
+                };
+                threads[n].start();
+            }
+            for (Thread th : threads) th.join();
+            List<Comparable[]> batch = new ArrayList<>();
+            for (int i = 400; i < 500; i++) batch.add(new Comparable[]{i, "view"});
+            boolean ok = t.insertAll(batch) == 100 && t.tuples.size() == 500;
+
+            Table crashed = Table.open(file);                         // t was never closed
+            ok = ok && crashed.tuples.size() == 500 && crashed.get(450)[1].equals("view")
+                    && crashed.get(123)[1].equals("click");
+            crashed.close();
+
+            Files.write(wal, new byte[]{0, 0, 0, 40, 1, 2}, java.nio.file.StandardOpenOption.APPEND);  // torn record
+            Table torn = Table.open(file);
+            ok = ok && torn.tuples.size() == 500 && torn.insert(new Comparable[]{500, "buy"});
+            byte[] oldLog = Files.readAllBytes(wal);
+            ok = ok && torn.checkpoint() && Files.size(wal) < oldLog.length;
+            ok = ok && torn.tuples.size() == 501 && torn.get(500) != null;       // now read from the file
+            ok = ok && torn.insert(new Comparable[]{501, "buy"}) && torn.tuples.size() == 502 && torn.get(501) != null;
+            torn.close();
+
+            Table reopened = Table.open(file);
+            ok = ok && reopened.tuples.size() == 502 && reopened.get(501) != null;
+            reopened.close();
+
+            Files.write(wal, oldLog);                                  // crash before the log was emptied
+            Table again = Table.open(file);
+            ok = ok && again.tuples.size() == 501 && again.get(500) != null;
+            again.close();
+            t.close();
+
+            Path typed = dir.resolve("typed.tbl");                     // a rejected insert loses nothing
+            ok = ok && new Table("typed", "id kind", "Integer String", "id").save(typed);
+            Table fresh = Table.open(typed);
+            List<Comparable[]> mixed = new ArrayList<>();
+            mixed.add(new Comparable[]{3, "ok"});
+            mixed.add(new Comparable[]{4L, "bad"});
+            ok = ok && !fresh.insert(new Comparable[]{1L, "bad"}) && fresh.insert(new Comparable[]{1, "ok"})
+                    && fresh.insert(new Comparable[]{2, "ok"}) && fresh.insertAll(mixed) == 1;
+            fresh.close();
+            Table reread = Table.open(typed);
+            ok = ok && reread.tuples.size() == 3 && reread.get(3) != null;
+            reread.close();
+
+            for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+            Files.delete(dir);
+            return ok && new Table("plain", "a", "Integer", "a").close() && !new Table("plain", "a", "Integer", "a").checkpoint();
+        } catch (IOException | InterruptedException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Tests loading delimited files: quoting, CRLF line ends, blank and malformed lines,
+     * and that a parallel load inserts the same tuples in the same order.
+     */
+    public boolean testLoad() {
+        System.out.println("\n\ntestLoad\n************************************************************************************************************************\n");
+        try {
+            Path dir = Files.createTempDirectory("load");
+            Path csv = dir.resolve("movie.csv");
+            Files.write(csv, ("title,year,length,genre,studioName,producerNo\r\n"
+                    + "Star_Wars,1977,124,sciFi,Fox,12345\r\n"
+                    + "\"Galaxy, the \"\"Quest\"\"\",1999,104,comedy,DreamWorks,67890\r\n"
+                    + "\r\n"
+                    + "Rocky,nineteen,119,drama,MGM,11111\r\n"
+                    + "Brazil,1985,132,\"sciFi\",Universal,-22222").getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            Table movie = new Table("movie", "title year length genre studioName producerNo",
+                    "String Integer Integer String String Integer", "title year");
+            boolean ok = movie.load(csv, ',', true) == 3 && movie.tuples.size() == 3
+                    && movie.select(new KeyType("Galaxy, the \"Quest\"", 1999)).tuples.size() == 1
+                    && movie.select(new KeyType("Brazil", 1985)).tuples.get(0)[5].equals(-22222)
+                    && movie.select(new KeyType("Star_Wars", 1977)).tuples.get(0)[3].equals("sciFi");
+
+            Path tsv = dir.resolve("orders.tsv");
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                sb.append(i).append('\t').append(i * 7L).append('\t').append(i / 8.0).append('\t')
+                  .append("c_").append(i % 101).append('\t').append((char) ('a' + i % 26)).append('\n');
+            }
+            Files.write(tsv, sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            Table seq = new Table("seq", "id total amount customer code", "Integer Long Double String Character", "id");
+            Table par = new Table("par", "id total amount customer code", "Integer Long Double String Character", "id");
+            ok = ok && seq.load(tsv, '\t', false) == 100000
+                    && new TableLoader(par, '\t', false).loadParallel(tsv, 4) == 100000;
+            for (int i = 0; ok && i < 100000; i += 997) {
+                ok = Arrays.equals(seq.tuples.get(i), par.tuples.get(i))
+                        && par.get(i)[2].equals(i / 8.0) && par.get(i)[1].equals(i * 7L);
+            }
+
+            ok = ok && new Table("t", "a", "Integer", "a").load(dir.resolve("missing.csv"), ',', false) == -1;
+            for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+            Files.delete(dir);
+            return ok && sameSet(seq, par);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Tests exporting pages of a table as CSV (read back with load) and as fixed-width text.
+     */
+    public boolean testExport() {
+        System.out.println("\n\ntestExport\n************************************************************************************************************************\n");
+        try {
+            Table movie = createMovieTable();
+            movie.insert(new Comparable[]{"Galaxy, \"Quest\"", 2000, 104, "comedy", "DreamWorks", 67890});
+            java.io.StringWriter csv = new java.io.StringWriter();
+            boolean ok = movie.export(csv, TableExporter.Format.CSV) == movie.tuples.size()
+                    && csv.toString().startsWith("title,year,length,genre,studioName,producerNo\n")
+                    && csv.toString().contains("\"Galaxy, \"\"Quest\"\"\",2000,");
+
+            Path dir = Files.createTempDirectory("export");
+            Path file = dir.resolve("movie.csv");
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(file,
+                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.WRITE)) {
+                ok = ok && movie.export(ch, TableExporter.Format.CSV, 0, Integer.MAX_VALUE) == movie.tuples.size();
+            }
+            Table copy = new Table("copy", "title year length genre studioName producerNo",
+                    "String Integer Integer String String Integer", "title year");
+            ok = ok && copy.load(file, ',', true) == movie.tuples.size() && sameSet(copy, movie);
+
+            java.io.StringWriter page = new java.io.StringWriter();
+            ok = ok && movie.export(page, TableExporter.Format.FIXED_WIDTH, 1, 2) == 2;
+            String[] lines = page.toString().split("\n");
+            ok = ok && lines.length == 3 && lines[0].length() == lines[1].length()
+                    && lines[1].length() == lines[2].length() && lines[1].startsWith(movie.tuples.get(1)[0].toString())
+                    && lines[2].endsWith(movie.tuples.get(2)[5].toString());
+
+            java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            ok = ok && movie.export(bytes, TableExporter.Format.CSV, 100, 10) == 0
+                    && bytes.toString("UTF-8").equals("title,year,length,genre,studioName,producerNo\n")
+                    && movie.export(bytes, TableExporter.Format.CSV, -1, 10) == -1;
+
+            for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+            Files.delete(dir);
+            return ok;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Tests grouping with each aggregate, on row and columnar tables, sequentially and in
+     * parallel.
+     */
+    public boolean testGroupBy() {
+        System.out.println("\n\ntestGroupBy\n************************************************************************************************************************\n");
+        Table movie = createMovieTable();
+        Table byStudio = movie.groupBy("studioName", "count(*)", "sum(length)", "avg(length)", "min(year)", "max(title)");
+        Comparable[] fox = byStudio.select("studioName", "Fox").tuples.get(0);
+        Comparable[] universal = byStudio.select("studioName", "Universal").tuples.get(0);
+        boolean ok = byStudio.tuples.size() == 2 && byStudio.col("avg(length)") == 3
+                && fox[1].equals(2L) && fox[2].equals(248L) && fox[3].equals(124.0) && fox[4].equals(1977)
+                && fox[5].equals("Star_Wars_2") && universal[3].equals(150.0) && universal[4].equals(1978);
+
+        Table all = movie.groupBy("", "count(*)", "max(length)");
+        ok = ok && all.tuples.size() == 1 && all.tuples.get(0)[0].equals(4L) && all.tuples.get(0)[1].equals(200)
+                && movie.groupBy("studioName", "median(length)") == null
+                && movie.groupBy("studioName", "sum(title)") == null
+                && movie.groupBy("nope", "count(*)") == null;
+
+        Table row = new Table("sales", "id region product qty price", "Integer String Integer Long Double", "id");
+        Table col = new Table("sales", "id region product qty price", "Integer String Integer Long Double", "id",
+                Table.StorageType.COLUMNAR);
+        for (int i = 0; i < 50000; i++) {
+            Comparable[] t = {i, "region_" + (i % 7), i % 13, (long) (i % 100), (i % 40) * 0.25};
+            row.insert(t);
+            col.insert(t);
+        }
+        String[] aggs = {"count(*)", "sum(qty)", "min(price)", "max(qty)", "avg(price)"};
+        Table seq = row.groupBy("region product", aggs);
+        Table par = row.groupBy("region product", true, aggs);
+        Table colSeq = col.groupBy("region product", aggs);
+        Table colPar = col.groupBy("region product", true, aggs);
+        ok = ok && seq.tuples.size() == 91 && sameSet(seq, par) && sameSet(seq, colSeq) && sameSet(seq, colPar);
+        long total = 0;
+        for (Comparable[] t : par.tuples) total += (Long) t[3];
+        Table byRegion = col.groupBy("region", true, "count(*)");
+        return ok && total == 50000L * 99 / 2 && byRegion.tuples.size() == 7
+                && byRegion.select("region", "region_0").tuples.get(0)[1].equals(7143L);
+    }
+
+    /**
+     * Tests sorting in memory and, with a small budget, by external merge sort (including
+     * an intermediate merge pass), in both directions and stably.
+     */
+    public boolean testOrderBy() {
+        System.out.println("\n\ntestOrderBy\n************************************************************************************************************************\n");
+        Table movie = createMovieTable();
+        Table byLength = movie.orderBy("length title", false);
+        boolean ok = byLength.tuples.get(0)[0].equals("Rocky") && byLength.tuples.get(1)[0].equals("Star_Wars_2")
+                && byLength.tuples.get(2)[0].equals("Star_Wars") && byLength.tuples.get(3)[0].equals("Rambo")
+                && movie.orderBy("year", true).tuples.get(0)[0].equals("Star_Wars")
+                && movie.orderBy("budget", true) == null;
+
+        Table orders = new Table("orders", "id customer amount", "Integer String Double", "id");
+        java.util.Random rand = new java.util.Random(42);
+        for (int i = 0; i < 100000; i++) {
+            orders.insert(new Comparable[]{i, "customer_" + rand.nextInt(1000), (double) rand.nextInt(500)});
+        }
+        Table inMemory = orders.orderBy("amount", true);
+        Table spilled = orders.orderBy("amount", true, 64L << 10);              // about 700 runs
+        ok = ok && inMemory.tuples.size() == 100000 && spilled.tuples.size() == 100000;
+        for (int i = 0; ok && i < 100000; i++) {
+            Comparable[] a = inMemory.tuples.get(i), b = spilled.tuples.get(i);
+            ok = Arrays.equals(a, b);
+            if (i > 0) {
+                Comparable[] prev = spilled.tuples.get(i - 1);
+                int cmp = ((Double) prev[2]).compareTo((Double) b[2]);
+                ok = ok && (cmp < 0 || cmp == 0 && (Integer) prev[0] < (Integer) b[0]);     // stable
+            }
+        }
+        Table desc = orders.orderBy("customer amount", false, 1L << 20);
+        return ok && desc.tuples.size() == 100000
+                && ((String) desc.tuples.get(0)[1]).compareTo((String) desc.tuples.get(99999)[1]) > 0
+                && sameSet(desc, orders);
+    }
+
+    /**
+     * Tests limit and topK on tables and queries, and that a limited scan stops early.
+     */
+    public boolean testTopK() {
+        System.out.println("\n\ntestTopK\n************************************************************************************************************************\n");
+        Table orders = new Table("orders", "id customer amount", "Integer String Integer", "id");
+        java.util.Random rand = new java.util.Random(7);
+        for (int i = 0; i < 20000; i++) orders.insert(new Comparable[]{i, "customer_" + (i % 50), rand.nextInt(1000)});
+
+        boolean ok = orders.limit(5).tuples.size() == 5 && orders.limit(5).tuples.get(4)[0].equals(4)
+                && orders.limit(50000).tuples.size() == 20000 && orders.limit(0).tuples.isEmpty();
+        for (int k : new int[]{0, 1, 10, 1000, 30000}) {
+            for (boolean asc : new boolean[]{true, false}) {
+                Table top = orders.topK(k, "amount customer", asc);
+                Table expected = orders.orderBy("amount customer", asc).limit(k);
+                ok = ok && top.tuples.size() == expected.tuples.size();
+                for (int i = 0; ok && i < top.tuples.size(); i++) ok = top.tuples.get(i) == expected.tuples.get(i);
+            }
+        }
+        ok = ok && orders.topK(3, "price") == null;
+
+        final int[] tested = new int[1];
+        PredicateMod<Comparable[]> even = new PredicateMod<Comparable[]>() {
+            public boolean test(Comparable[] t) {
+                tested[0]++;
+                return (Integer) t[0] % 2 == 0;
+            }
+        };
+        ok = ok && orders.select(even, 10).tuples.size() == 10 && tested[0] == 19
+                && orders.project("customer", 7).tuples.size() == 7
+                && orders.project("customer", 100).tuples.size() == 50;
+
+        tested[0] = 0;
+        Table q = orders.query().where(even).project("id customer").limit(3).toTable();
+        ok = ok && q.tuples.size() == 3 && q.tuples.get(2)[0].equals(4) && tested[0] == 5;
+        Table qTop = orders.query().where(even).topK(4, "amount", false).toTable();
+        Table evenTop = orders.select(even).topK(4, "amount", false);
+        for (int i = 0; ok && i < 4; i++) ok = qTop.tuples.get(i) == evenTop.tuples.get(i);
+        return ok && qTop.tuples.size() == 4;
+    }
+
+    /**
+     * Tests that a Bloom filter has no false negatives and about its false-positive rate,
+     * and that selective joins and minus (which pre-filter with one) stay correct.
+     */
+    public boolean testBloomFilter() {
+        System.out.println("\n\ntestBloomFilter\n************************************************************************************************************************\n");
+        BloomFilter bloom = new BloomFilter(10000, 0.01);
+        int[] cols = {0};
+        for (int i = 0; i < 10000; i++) bloom.add(new Comparable[]{"key" + i}, cols);
+        boolean ok = true;
+        for (int i = 0; i < 10000; i++) ok = ok && bloom.mightContain(new Comparable[]{"key" + i}, cols);
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (bloom.mightContain(new Comparable[]{"key" + i}, cols)) falsePositives++;
+        }
+        ok = ok && falsePositives < 2000;                                      // about 1000 expected
+
+        Table sales = new Table("sales", "id productId qty", "Integer Integer Integer", "id");
+        for (int i = 0; i < 50000; i++) sales.insert(new Comparable[]{i, i % 5000, i % 9});
+        int expected = 50000 / 100;                                            // 1% of sales match
+        for (Table.JoinType type : Table.JoinType.values()) {
+            Table[] product = new Table[3];                                    // equiJoin renames rhs attributes
+            for (int k = 0; k < product.length; k++) {
+                product[k] = new Table("product", "productId name", "Integer String", "productId");
+                for (int p = 0; p < 5000; p += 100) product[k].insert(new Comparable[]{p, "product_" + p});
+            }
+            Table sales2 = sales.project("id productId qty");                  // a copy with its own attributes
+            ok = ok && sales.equiJoin("productId", "productId", product[0], type).tuples.size() == expected
+                    && product[1].equiJoin("productId", "productId", sales2, type).tuples.size() == expected
+                    && sales.naturalJoin(product[2], type).tuples.size() == expected;
+        }
+
+        Table few = new Table("few", "id productId qty", "Integer Integer Integer", "id");
+        for (int i = 0; i < 50000; i += 1000) few.insert(new Comparable[]{i, i % 5000, i % 9});
+        few.insert(new Comparable[]{-1, 0, 0});                                // not in sales
+        for (Table.SetOpType type : Table.SetOpType.values()) {
+            ok = ok && sales.minus(few, type).tuples.size() == 50000 - 50 && few.minus(sales, type).tuples.size() == 1;
+        }
+        return ok;
+    }
+
+    /**
+     * Tests the hybrid hash join in memory, spilled, in blocks and through the Table joins.
+     */
+    public boolean testHybridHashJoin() {
+        System.out.println("\n\ntestHybridHashJoin\n************************************************************************************************************************\n");
+        Class[] dom1 = {Integer.class, Integer.class, String.class};
+        Class[] dom2 = {Integer.class, String.class};
+        List<Comparable[]> orders = new ArrayList<>();
+        for (int i = 0; i < 40000; i++) orders.add(new Comparable[]{i, i % 7000, "order_" + i});
+        List<Comparable[]> items = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) items.add(new Comparable[]{i % 5000, "item_" + i});
+        int[] cols1 = {1}, cols2 = {0}, keep2 = {1};
+        boolean ok = true;
+        try {
+            List<Comparable[]> inMemory = new HybridHashJoin(dom1, cols1, dom2, cols2, keep2, 1L << 30).join(orders, items);
+            List<Comparable[]> spilled = new HybridHashJoin(dom1, cols1, dom2, cols2, keep2, 256L << 10).join(orders, items);
+            List<Comparable[]> blocks = new HybridHashJoin(dom1, cols1, dom2, cols2, keep2, 1L << 10).join(orders, items);
+            int expected = 0;                                                  // 4 items per product, 5000 products ordered
+            for (Comparable[] t : orders) if ((Integer) t[1] < 5000) expected += 4;
+            ok = inMemory.size() == expected && spilled.size() == expected && blocks.size() == expected
+                    && sortedKeys(inMemory).equals(sortedKeys(spilled)) && sortedKeys(inMemory).equals(sortedKeys(blocks));
+            for (Comparable[] t : spilled) {
+                ok = ok && t.length == 4 && ((String) t[3]).startsWith("item_") && ((String) t[2]).startsWith("order_")
+                        && Integer.parseInt(((String) t[3]).substring(5)) % 5000 == (Integer) t[1];
+            }
+
+            List<Comparable[]> skewed = new ArrayList<>();                     // one key repartitioning cannot split
+            for (int i = 0; i < 3000; i++) skewed.add(new Comparable[]{7, "item_" + i});
+            List<Comparable[]> few = new ArrayList<>();
+            for (int i = 0; i < 4000; i++) few.add(new Comparable[]{i, i % 10, "order_" + i});
+            ok = ok && new HybridHashJoin(dom1, cols1, dom2, cols2, null, 64L << 10).join(few, skewed).size() == 400 * 3000;
+        } catch (IOException ex) {
+            return false;
+        }
+
+        Table order = new Table("order", "id productId note", "Integer Integer String", "id");
+        for (Comparable[] t : orders) order.insert(t);
+        Table[] item = new Table[3];                                           // equiJoin renames rhs attributes
+        for (int k = 0; k < item.length; k++) {
+            item[k] = new Table("item", "productId name", "Integer String", "name");
+            for (Comparable[] t : items) item[k].insert(t);
+        }
+        Table hash = order.equiJoin("productId", "productId", item[0], Table.JoinType.HASH);
+        Table hybrid = order.equiJoin("productId", "productId", item[1], Table.JoinType.HYBRID_HASH);
+        ok = ok && hybrid.tuples.size() == hash.tuples.size()
+                && sortedKeys(hybrid.tuples).equals(sortedKeys(hash.tuples))
+                && order.naturalJoin(item[2], Table.JoinType.HYBRID_HASH).tuples.size() == hash.tuples.size();
+        return ok;
+    }
+
+    /**
+     * Returns the tuples as sorted strings, for comparing results regardless of order.
+     *
+     * @param rows  the tuples
+     * @return the sorted string forms of the tuples
+     */
+    private static List<String> sortedKeys(List<Comparable[]> rows) {
+        List<String> keys = new ArrayList<>(rows.size());
+        for (Comparable[] t : rows) keys.add(Arrays.toString(t));
+        Collections.sort(keys);
+        return keys;
+    }
 }
@@ -0,0 +1,291 @@
+/****************************************************************************************
+ * @file  ColumnStore.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The ColumnStore class stores the tuples of a table column by column, choosing for each
+ * column a primitive vector based on its domain:
+ * integer types (Integer, Short, Byte, Character): int []
+ * Long: long []
+ * real types (Double, Float): double []
+ * String: int [] of codes into a StringDictionary
+ * any other domain: Comparable []
+ * For compatibility it is also a List of tuples: get (i) builds a row view of tuple i.
+ * Null values are not allowed.  This class is not thread-safe.
+ */
+public class ColumnStore
+       extends AbstractList <Comparable []>
+       implements RandomAccess
+{
+    /** The kinds of column vectors
+     */
+    static final int INT = 0, LONG = 1, DOUBLE = 2, DICT = 3, OBJECT = 4;
+
+    /** The initial capacity of each column vector
+     */
+    private static final int INIT_CAP = 16;
+
+    /** The domain of each column
+     */
+    private final Class [] domain;
+
+    /** The kind of vector used for each column
+     */
+    private final int [] kind;
+
+    /** The column vectors (int [], long [], double [] or Comparable [])
+     */
+    private final Object [] column;
+
+    /** The dictionary of each String column (null for other columns)
+     */
+    private final StringDictionary [] dict;
+
+    /** The number of tuples stored
+     */
+    private int size = 0;
+
+    /** The capacity of the column vectors
+     */
+    private int capacity = INIT_CAP;
+
+    /*************************************************************************************
+     * Construct an empty column store for the given domains.
+     * @param _domain  the domain of each column
+     */
+    public ColumnStore (Class [] _domain)
+    {
+        domain = _domain;
+        kind   = new int [domain.length];
+        column = new Object [domain.length];
+        dict   = new StringDictionary [domain.length];
+        for (int j = 0; j < domain.length; j++) {
+            Class c = domain [j];
+            if (c == Integer.class || c == Short.class || c == Byte.class || c == Character.class) {
+                kind [j] = INT;    column [j] = new int [capacity];
+            } else if (c == Long.class) {
+                kind [j] = LONG;   column [j] = new long [capacity];
+            } else if (c == Double.class || c == Float.class) {
+                kind [j] = DOUBLE; column [j] = new double [capacity];
+            } else if (c == String.class) {
+                kind [j] = DICT;   column [j] = new int [capacity];
+                dict [j] = new StringDictionary ();
+            } else {
+                kind [j] = OBJECT; column [j] = new Comparable [capacity];
+            } // if
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Append a tuple, storing each value in its column vector.
+     * @param t  the tuple (values must be non-null and from the column domains)
+     * @return  true
+     */
+    public boolean add (Comparable [] t)
+    {
+        if (size == capacity) grow ();
+        for (int j = 0; j < kind.length; j++) {
+            switch (kind [j]) {
+            case INT:
+                ((int []) column [j]) [size] = (t [j] instanceof Character) ? (Character) t [j]
+                                                                            : ((Number) t [j]).intValue ();
+                break;
+            case LONG:   ((long []) column [j]) [size]       = (Long) t [j];                     break;
+            case DOUBLE: ((double []) column [j]) [size]     = ((Number) t [j]).doubleValue ();  break;
+            case DICT:   ((int []) column [j]) [size]        = dict [j].encode ((String) t [j]); break;
+            default:     ((Comparable []) column [j]) [size] = t [j];
+            } // switch
+        } // for
+        size++;
+        modCount++;
+        return true;
+    } // add
+
+    /*************************************************************************************
+     * Return a row view of the i-th tuple (a newly built array).
+     * @param i  the tuple number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        if (i >= size) throw new IndexOutOfBoundsException ("index " + i + ", size " + size);
+        Comparable [] t = new Comparable [kind.length];
+        for (int j = 0; j < kind.length; j++) t [j] = value (i, j);
+        return t;
+    } // get
+
+    /*************************************************************************************
+     * Return the values of the given columns of the i-th tuple.
+     * @param i     the tuple number
+     * @param cols  the column positions
+     * @return  the values of those columns
+     */
+    public Comparable [] get (int i, int [] cols)
+    {
+        if (i >= size) throw new IndexOutOfBoundsException ("index " + i + ", size " + size);
+        Comparable [] t = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) t [j] = value (i, cols [j]);
+        return t;
+    } // get
+
+    /*************************************************************************************
+     * Return the number of tuples stored.
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /*************************************************************************************
+     * Return the positions of the tuples whose given columns equal the given values.  The
+     * values are encoded once and the column vectors are compared directly, one column at
+     * a time, narrowing the candidate positions.
+     * @param cols    the column positions
+     * @param values  the values to compare with (in the same order)
+     * @return  the positions of the matching tuples, in ascending order
+     */
+    public int [] selectEqual (int [] cols, Comparable [] values)
+    {
+        int [] pos = null;                          // null means all positions
+        int n = size;
+        for (int k = 0; k < cols.length; k++) {
+            int j = cols [k];
+            Comparable v = values [k];
+            int [] out = new int [(pos == null) ? size : n];
+            int m = 0;
+            switch (kind [j]) {
+            case INT:
+            case DICT: {
+                if (! domain [j].isInstance (v)) return new int [0];
+                int [] vec = (int []) column [j];
+                int x;
+                if (kind [j] == DICT) {
+                    x = dict [j].lookup ((String) v);
+                    if (x < 0) return new int [0];
+                } else {
+                    x = (v instanceof Character) ? (Character) v : ((Number) v).intValue ();
+                } // if
+                for (int i = 0; i < n; i++) {
+                    int r = (pos == null) ? i : pos [i];
+                    if (vec [r] == x) out [m++] = r;
+                } // for
+                break;
+            }
+            case LONG: {
+                if (! domain [j].isInstance (v)) return new int [0];
+                long [] vec = (long []) column [j];
+                long x = (Long) v;
+                for (int i = 0; i < n; i++) {
+                    int r = (pos == null) ? i : pos [i];
+                    if (vec [r] == x) out [m++] = r;
+                } // for
+                break;
+            }
+            case DOUBLE: {
+                if (! domain [j].isInstance (v)) return new int [0];
+                double [] vec = (double []) column [j];
+                double x = ((Number) v).doubleValue ();
+                for (int i = 0; i < n; i++) {
+                    int r = (pos == null) ? i : pos [i];
+                    if (vec [r] == x) out [m++] = r;
+                } // for
+                break;
+            }
+            default: {
+                Comparable [] vec = (Comparable []) column [j];
+                for (int i = 0; i < n; i++) {
+                    int r = (pos == null) ? i : pos [i];
+                    if (vec [r].equals (v)) out [m++] = r;
+                } // for
+            }
+            } // switch
+            pos = out;
+            n   = m;
+        } // for
+        if (pos == null) {
+            pos = new int [size];
+            for (int i = 0; i < size; i++) pos [i] = i;
+            return pos;
+        } // if
+        return Arrays.copyOf (pos, n);
+    } // selectEqual
+
+    /*************************************************************************************
+     * Return the kind of vector used for column j (INT, LONG, DOUBLE, DICT or OBJECT).
+     * @param j  the column position
+     * @return  the kind of column vector
+     */
+    int kind (int j)
+    {
+        return kind [j];
+    } // kind
+
+    /*************************************************************************************
+     * Return the vector for column j.  Only the first size () elements are in use.
+     * @param j  the column position
+     * @return  the int [], long [], double [] or Comparable [] vector
+     */
+    Object vector (int j)
+    {
+        return column [j];
+    } // vector
+
+    /*************************************************************************************
+     * Return the dictionary of String column j.
+     * @param j  the column position
+     * @return  the dictionary (null if column j is not a String column)
+     */
+    StringDictionary dictionary (int j)
+    {
+        return dict [j];
+    } // dictionary
+
+    /*************************************************************************************
+     * Return the value of column j for the i-th tuple, boxed to the column domain.
+     * @param i  the tuple number
+     * @param j  the column position
+     * @return  the value
+     */
+    Comparable value (int i, int j)
+    {
+        switch (kind [j]) {
+        case INT:
+            int x = ((int []) column [j]) [i];
+            if (domain [j] == Short.class)     return (short) x;
+            if (domain [j] == Byte.class)      return (byte) x;
+            if (domain [j] == Character.class) return (char) x;
+            return x;
+        case LONG:
+            return ((long []) column [j]) [i];
+        case DOUBLE:
+            double d = ((double []) column [j]) [i];
+            return (domain [j] == Float.class) ? (Comparable) (float) d : (Comparable) d;
+        case DICT:
+            return dict [j].decode (((int []) column [j]) [i]);
+        default:
+            return ((Comparable []) column [j]) [i];
+        } // switch
+    } // value
+
+    /*************************************************************************************
+     * Double the capacity of every column vector.
+     */
+    private void grow ()
+    {
+        capacity *= 2;
+        for (int j = 0; j < kind.length; j++) {
+            switch (kind [j]) {
+            case INT:
+            case DICT:   column [j] = Arrays.copyOf ((int []) column [j], capacity);        break;
+            case LONG:   column [j] = Arrays.copyOf ((long []) column [j], capacity);       break;
+            case DOUBLE: column [j] = Arrays.copyOf ((double []) column [j], capacity);     break;
+            default:     column [j] = Arrays.copyOf ((Comparable []) column [j], capacity);
+            } // switch
+        } // for
+    } // grow
+
+} // ColumnStore class
+
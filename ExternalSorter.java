@@ -0,0 +1,153 @@
+/****************************************************************************************
+ * @file  ExternalSorter.java
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/****************************************************************************************
+ * The ExternalSorter class sorts a list of tuples within a memory budget.  If the tuples
+ * (by a sampled size estimate) fit in the budget, they are sorted in memory with
+ * Arrays.parallelSort.  Otherwise the list is cut into runs that fit, each run is sorted
+ * in memory and written to a temporary file (tuples encoded by a RowCodec), and the runs
+ * are merged with a k-way merge over a priority queue, in several passes if there are
+ * more than FAN_IN runs.  The final pass writes a temporary file that is mapped into
+ * memory and returned as a read-only list decoding tuples on access, so neither the runs
+ * nor the result need fit on the heap (only one long offset per tuple is kept).  Both
+ * paths are stable: tuples that compare equal keep their input order.
+ */
+public class ExternalSorter
+{
+    /** The maximum number of runs merged at once
+     */
+    private static final int FAN_IN = 64;
+
+    /** The order to sort by
+     */
+    private final Comparator <Comparable []> order;
+
+    /** The codec for tuples spilled to disk
+     */
+    private final RowCodec codec;
+
+    /** The memory budget in bytes
+     */
+    private final long budget;
+
+    /*************************************************************************************
+     * Construct a sorter for tuples with the given domains.
+     * @param domain   the domain of each column
+     * @param _order   the order to sort by
+     * @param _budget  the memory budget in bytes for the tuples being sorted
+     */
+    public ExternalSorter (Class [] domain, Comparator <Comparable []> _order, long _budget)
+    {
+        order  = _order;
+        codec  = SpillFile.spillable (domain) ? new RowCodec (domain) : null;
+        budget = _budget;
+    } // constructor
+
+    /*************************************************************************************
+     * Return the tuples sorted.
+     * @param rows  the tuples to sort (not modified)
+     * @return  the sorted tuples (read-only if the sort spilled to disk)
+     * @throws IOException if a temporary file cannot be written or read
+     * @throws IllegalArgumentException if the tuples do not fit and a domain cannot be
+     *                                  written to disk
+     */
+    public List <Comparable []> sort (List <Comparable []> rows) throws IOException
+    {
+        int n = rows.size ();
+        long rowBytes = SpillFile.estimate (rows);
+        if (rowBytes * n <= budget) return sortInMemory (rows, 0, n);
+        if (codec == null) throw new IllegalArgumentException ("tuples exceed the sort budget and cannot be spilled");
+
+        int runLength = (int) Math.max (1, Math.min (Integer.MAX_VALUE - 8, budget / rowBytes));
+        List <Path> runs = new ArrayList <> ();
+        try {
+            for (int lo = 0; lo < n; lo += runLength) {                    // sorted runs
+                List <Comparable []> run = sortInMemory (rows, lo, (int) Math.min (n, (long) lo + runLength));
+                Path file = Files.createTempFile ("sort", ".run");
+                runs.add (file);
+                try (SpillFile.Writer w = new SpillFile.Writer (file, codec, SpillFile.BUFFER_SIZE, false)) {
+                    for (Comparable [] t : run) w.write (t);
+                } // try
+            } // for
+            while (runs.size () > FAN_IN) {                                // intermediate passes
+                List <Path> merged = new ArrayList <> ();
+                for (int i = 0; i < runs.size (); i += FAN_IN) {
+                    List <Path> group = runs.subList (i, Math.min (runs.size (), i + FAN_IN));
+                    Path file = Files.createTempFile ("sort", ".run");
+                    merged.add (file);
+                    try (SpillFile.Writer w = new SpillFile.Writer (file, codec, SpillFile.BUFFER_SIZE, false)) {
+                        merge (group, w);
+                    } // try
+                    for (Path p : group) Files.deleteIfExists (p);
+                } // for
+                runs = merged;
+            } // while
+
+            Path file = Files.createTempFile ("sort", ".out");             // final pass
+            try {
+                try (SpillFile.Writer w = new SpillFile.Writer (file, codec, SpillFile.BUFFER_SIZE, true)) {
+                    merge (runs, w);
+                    return w.map ();
+                } // try
+            } finally {
+                Files.deleteIfExists (file);                               // the mapping stays valid
+            } // try
+        } finally {
+            for (Path p : runs) Files.deleteIfExists (p);
+        } // try
+    } // sort
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Return the tuples lo, ..., hi - 1 sorted in memory (in parallel).
+     */
+    private List <Comparable []> sortInMemory (List <Comparable []> rows, int lo, int hi)
+    {
+        Comparable [][] a = new Comparable [hi - lo][];
+        for (int i = lo; i < hi; i++) a [i - lo] = rows.get (i);
+        Arrays.parallelSort (a, order);                                    // stable
+        return Arrays.asList (a);
+    } // sortInMemory
+
+    /*************************************************************************************
+     * Merge the runs in the given files and write the result.  Equal tuples are taken
+     * from the earliest run, keeping the sort stable.
+     */
+    private void merge (List <Path> files, SpillFile.Writer out) throws IOException
+    {
+        final List <SpillFile.Reader> readers = new ArrayList <> ();
+        final Comparable [][] head = new Comparable [files.size ()][];     // each run's current tuple
+        try {
+            PriorityQueue <Integer> heap = new PriorityQueue <> (Math.max (1, files.size ()), new Comparator <Integer> () {
+                public int compare (Integer r1, Integer r2)
+                {
+                    int c = order.compare (head [r1], head [r2]);
+                    return (c != 0) ? c : Integer.compare (r1, r2);
+                } // compare
+            });
+            for (Path p : files) {
+                SpillFile.Reader r = new SpillFile.Reader (p, codec, SpillFile.BUFFER_SIZE);
+                readers.add (r);
+                if ((head [readers.size () - 1] = r.next ()) != null) heap.add (readers.size () - 1);
+            } // for
+            while (! heap.isEmpty ()) {
+                int r = heap.poll ();
+                out.write (head [r]);
+                if ((head [r] = readers.get (r).next ()) != null) heap.add (r);
+            } // while
+        } finally {
+            for (SpillFile.Reader r : readers) r.close ();
+        } // try
+    } // merge
+
+} // ExternalSorter class
+
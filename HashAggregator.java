@@ -0,0 +1,312 @@
+/****************************************************************************************
+ * @file  HashAggregator.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The HashAggregator class computes the aggregates count, sum, avg, min and max over
+ * groups of tuples, hashing on the grouping columns.  Aggregates are written like
+ * "count(*)", "sum(length)" or "max(title)".  Each group keeps its running totals in
+ * primitive long and double slots (sums of integers, and min/max of integers, in longs;
+ * of reals in doubles), so adding a tuple to a group boxes nothing.  Only min and max of
+ * other domains (String, Character) compare the values as Comparables.  Tuples of a
+ * ColumnStore are read straight from its primitive column vectors.
+ *
+ * A parallel aggregation gives each task its own HashAggregator over a range of tuples
+ * (a partial aggregate) and merges them; the groups come out in the order they first
+ * appear in the input either way.
+ */
+public class HashAggregator
+{
+    /** The aggregate functions
+     */
+    private static final int COUNT = 0, SUM = 1, AVG = 2, MIN = 3, MAX = 4;
+
+    /** The kinds of accumulators
+     */
+    private static final int NONE = 0, LONG = 1, DOUBLE = 2, OBJECT = 3;
+
+    /** The aggregate function names, indexed by function
+     */
+    private static final String [] NAMES = { "count", "sum", "avg", "min", "max" };
+
+    /** The domains of the input tuples
+     */
+    private final Class [] domain;
+
+    /** The grouping columns
+     */
+    private final int [] groupCols;
+
+    /** The function, input column, accumulator kind and slot of each aggregate
+     */
+    private final int [] fn, col, acc, slot;
+
+    /** The number of long, double and object slots per group
+     */
+    private int nLong = 0, nDouble = 0, nObject = 0;
+
+    /** The groups in order of first appearance
+     */
+    private final LinkedHashMap <KeyType, Group> groups = new LinkedHashMap <> ();
+
+    /*************************************************************************************
+     * The running state of one group.
+     */
+    private static class Group
+    {
+        final Comparable [] values;                  // the grouping values
+        long count;
+        final long [] l;
+        final double [] d;
+        final Comparable [] o;
+
+        Group (Comparable [] _values, int nl, int nd, int no)
+        {
+            values = _values;
+            l = new long [nl];
+            d = new double [nd];
+            o = new Comparable [no];
+        } // constructor
+    } // Group class
+
+    /*************************************************************************************
+     * Construct an aggregator for tuples with the given attributes and domains.
+     * @param attribute   the attribute names of the input
+     * @param _domain     the domains of the input
+     * @param _groupCols  the positions of the grouping columns
+     * @param aggregates  the aggregates, e.g., "count(*)" or "avg(length)"
+     * @throws IllegalArgumentException if an aggregate is malformed or does not apply
+     */
+    public HashAggregator (String [] attribute, Class [] _domain, int [] _groupCols, String [] aggregates)
+    {
+        domain    = _domain;
+        groupCols = _groupCols;
+        int n = aggregates.length;
+        fn = new int [n];
+        col = new int [n];
+        acc = new int [n];
+        slot = new int [n];
+        for (int a = 0; a < n; a++) {
+            String spec = aggregates [a].trim ();
+            int open = spec.indexOf ('(');
+            if (open < 0 || ! spec.endsWith (")")) throw new IllegalArgumentException ("malformed aggregate " + spec);
+            fn [a] = Arrays.asList (NAMES).indexOf (spec.substring (0, open).trim ().toLowerCase ());
+            if (fn [a] < 0) throw new IllegalArgumentException ("unknown aggregate " + spec);
+            String arg = spec.substring (open + 1, spec.length () - 1).trim ();
+            if (fn [a] == COUNT) {                                      // no nulls: count (x) = count (*)
+                col [a] = -1;
+                acc [a] = NONE;
+                continue;
+            } // if
+            col [a] = Arrays.asList (attribute).indexOf (arg);
+            if (col [a] < 0) throw new IllegalArgumentException ("no attribute " + arg + " for " + spec);
+            Class c = domain [col [a]];
+            boolean integral = c == Integer.class || c == Long.class || c == Short.class || c == Byte.class;
+            boolean real = c == Double.class || c == Float.class;
+            if ((fn [a] == SUM || fn [a] == AVG) && ! integral && ! real) {
+                throw new IllegalArgumentException (spec + " needs a numeric attribute");
+            } // if
+            acc [a] = integral ? LONG : real ? DOUBLE : OBJECT;
+            slot [a] = (acc [a] == LONG) ? nLong++ : (acc [a] == DOUBLE) ? nDouble++ : nObject++;
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Return the domain of each aggregate's result: Long for count and integer sums,
+     * Double for avg and real sums, and the input domain for min and max.
+     * @return  the result domains
+     */
+    public Class [] resultDomain ()
+    {
+        Class [] result = new Class [fn.length];
+        for (int a = 0; a < fn.length; a++) {
+            switch (fn [a]) {
+            case COUNT: result [a] = Long.class;                                        break;
+            case SUM:   result [a] = (acc [a] == LONG) ? Long.class : Double.class;     break;
+            case AVG:   result [a] = Double.class;                                      break;
+            default:    result [a] = domain [col [a]];
+            } // switch
+        } // for
+        return result;
+    } // resultDomain
+
+    /*************************************************************************************
+     * Add the tuples lo, ..., hi - 1 to their groups.
+     * @param rows  the tuples (if a ColumnStore, values are read from its vectors)
+     * @param lo    the first tuple
+     * @param hi    one past the last tuple
+     */
+    public void accumulate (List <Comparable []> rows, int lo, int hi)
+    {
+        ColumnStore store = (rows instanceof ColumnStore) ? (ColumnStore) rows : null;
+        Object [] vec = null;
+        if (store != null) {
+            vec = new Object [domain.length];
+            for (int a = 0; a < fn.length; a++) {
+                if (acc [a] == LONG || acc [a] == DOUBLE) vec [col [a]] = store.vector (col [a]);
+            } // for
+        } // if
+
+        for (int i = lo; i < hi; i++) {
+            Comparable [] t = (store == null) ? rows.get (i) : null;
+            Group g = group (t, store, i);
+            g.count++;
+            for (int a = 0; a < fn.length; a++) {
+                int c = col [a], s = slot [a];
+                switch (acc [a]) {
+                case LONG: {
+                    long v = (t != null) ? ((Number) t [c]).longValue ()
+                                         : (vec [c] instanceof int []) ? ((int []) vec [c]) [i] : ((long []) vec [c]) [i];
+                    if      (fn [a] == MIN) { if (g.count == 1 || v < g.l [s]) g.l [s] = v; }
+                    else if (fn [a] == MAX) { if (g.count == 1 || v > g.l [s]) g.l [s] = v; }
+                    else g.l [s] += v;
+                    break;
+                }
+                case DOUBLE: {
+                    double v = (t != null) ? ((Number) t [c]).doubleValue () : ((double []) vec [c]) [i];
+                    if      (fn [a] == MIN) { if (g.count == 1 || v < g.d [s]) g.d [s] = v; }
+                    else if (fn [a] == MAX) { if (g.count == 1 || v > g.d [s]) g.d [s] = v; }
+                    else g.d [s] += v;
+                    break;
+                }
+                case OBJECT: {
+                    @SuppressWarnings("unchecked")
+                    Comparable <Object> v = (t != null) ? t [c] : store.value (i, c);
+                    if (g.o [s] == null || (fn [a] == MIN ? v.compareTo (g.o [s]) < 0 : v.compareTo (g.o [s]) > 0)) g.o [s] = v;
+                    break;
+                }
+                default:
+                } // switch
+            } // for
+        } // for
+    } // accumulate
+
+    /*************************************************************************************
+     * Merge the partial aggregates of another aggregator (for the same aggregates) into
+     * this one.  Groups new to this aggregator follow its own, in the other's order.
+     * @param other  the other aggregator
+     */
+    @SuppressWarnings("unchecked")
+    public void merge (HashAggregator other)
+    {
+        for (Map.Entry <KeyType, Group> e : other.groups.entrySet ()) {
+            Group h = e.getValue ();
+            Group g = groups.get (e.getKey ());
+            if (g == null) {
+                groups.put (e.getKey (), h);
+                continue;
+            } // if
+            g.count += h.count;
+            for (int a = 0; a < fn.length; a++) {
+                int s = slot [a];
+                switch (acc [a]) {
+                case LONG:
+                    if      (fn [a] == MIN) g.l [s] = Math.min (g.l [s], h.l [s]);
+                    else if (fn [a] == MAX) g.l [s] = Math.max (g.l [s], h.l [s]);
+                    else g.l [s] += h.l [s];
+                    break;
+                case DOUBLE:
+                    if      (fn [a] == MIN) g.d [s] = Math.min (g.d [s], h.d [s]);
+                    else if (fn [a] == MAX) g.d [s] = Math.max (g.d [s], h.d [s]);
+                    else g.d [s] += h.d [s];
+                    break;
+                case OBJECT:
+                    int cmp = ((Comparable <Object>) h.o [s]).compareTo (g.o [s]);
+                    if (fn [a] == MIN ? cmp < 0 : cmp > 0) g.o [s] = h.o [s];
+                    break;
+                default:
+                } // switch
+            } // for
+        } // for
+    } // merge
+
+    /*************************************************************************************
+     * Return one tuple per group: the grouping values followed by the aggregates.
+     * @return  the result tuples, in order of first appearance of the groups
+     */
+    public List <Comparable []> result ()
+    {
+        int k = groupCols.length;
+        List <Comparable []> rows = new ArrayList <> (groups.size ());
+        for (Group g : groups.values ()) {
+            Comparable [] t = Arrays.copyOf (g.values, k + fn.length);
+            for (int a = 0; a < fn.length; a++) {
+                int s = slot [a];
+                switch (fn [a]) {
+                case COUNT: t [k + a] = g.count;  break;
+                case SUM:   t [k + a] = (acc [a] == LONG) ? (Comparable) g.l [s] : (Comparable) g.d [s];  break;
+                case AVG:   t [k + a] = ((acc [a] == LONG) ? (double) g.l [s] : g.d [s]) / g.count;      break;
+                default:    t [k + a] = (acc [a] == LONG)   ? narrow (g.l [s], domain [col [a]])
+                                      : (acc [a] == DOUBLE) ? narrow (g.d [s], domain [col [a]]) : g.o [s];
+                } // switch
+            } // for
+            rows.add (t);
+        } // for
+        return rows;
+    } // result
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Return the group of tuple i (t, or row i of the store), creating it if new.  A
+     * single Integer, Long or String grouping column is looked up with a reusable probe
+     * key, so only new groups allocate a key.
+     */
+    private Group group (Comparable [] t, ColumnStore store, int i)
+    {
+        KeyType key;
+        Comparable [] values = null;
+        if (groupCols.length == 1) {
+            int c = groupCols [0];
+            Class d = domain [c];
+            Comparable v = (t != null) ? t [c] : null;
+            if (d == Integer.class) {
+                key = KeyType.probe ((t != null) ? (Integer) v : ((int []) store.vector (c)) [i]);
+            } else if (d == Long.class) {
+                key = KeyType.probe ((t != null) ? (Long) v : ((long []) store.vector (c)) [i]);
+            } else {
+                if (v == null) v = store.value (i, c);
+                key = (d == String.class) ? KeyType.probe ((String) v) : KeyType.of (v);
+            } // if
+            Group g = groups.get (key);
+            if (g != null) return g;
+            if (v == null) v = store.value (i, c);
+            key = KeyType.of (v);
+            values = new Comparable [] { v };
+        } else {
+            values = new Comparable [groupCols.length];
+            for (int j = 0; j < values.length; j++) values [j] = (t != null) ? t [groupCols [j]] : store.value (i, groupCols [j]);
+            key = (values.length == 0) ? KeyType.of ("") : new KeyType (values);
+            Group g = groups.get (key);
+            if (g != null) return g;
+        } // if
+        Group g = new Group (values, nLong, nDouble, nObject);
+        groups.put (key, g);
+        return g;
+    } // group
+
+    /*************************************************************************************
+     * Convert a long min or max back to the integral domain of its column.
+     */
+    private static Comparable narrow (long v, Class d)
+    {
+        if (d == Integer.class) return (int) v;
+        if (d == Short.class)   return (short) v;
+        if (d == Byte.class)    return (byte) v;
+        return v;
+    } // narrow
+
+    /*************************************************************************************
+     * Convert a double min or max back to the real domain of its column.
+     */
+    private static Comparable narrow (double v, Class d)
+    {
+        return (d == Float.class) ? (Comparable) (float) v : (Comparable) v;
+    } // narrow
+
+} // HashAggregator class
+
@@ -0,0 +1,422 @@
+/****************************************************************************************
+ * @file  HybridHashJoin.java
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/****************************************************************************************
+ * The HybridHashJoin class equi-joins two lists of tuples within a memory budget.  The
+ * smaller input is the build side.  If its hash table (by a sampled size estimate) fits
+ * in the budget, the join is an ordinary in-memory hash join.  Otherwise both inputs are
+ * hash-partitioned on the join columns (Grace hash join): as many build partitions as the
+ * budget allows stay resident in a hash table that the matching probe tuples are joined
+ * against as they stream by, while the other partitions of both inputs are written to
+ * temporary files (tuples encoded by a RowCodec, see SpillFile).  Each spilled pair of
+ * partitions is then joined the same way, repartitioned with a different hash if its
+ * build side still does not fit.  A build partition that fits no matter how often it is
+ * split (one heavily repeated key) is joined a budget-sized block at a time, rescanning
+ * its probe partition for each block.  A spilled join writes its result to a temporary
+ * file that is returned mapped into memory, so neither the hash tables nor the result
+ * exceed the budget on the heap.  Result tuples have the lhs columns first.
+ */
+public class HybridHashJoin
+{
+    /** The maximum number of partitions an input is split into at once
+     */
+    private static final int MAX_PARTITIONS = 128;
+
+    /** The number of times a partition is repartitioned before it is joined in blocks
+     */
+    private static final int MAX_DEPTH = 3;
+
+    /** The size of each partition file's write and read buffer
+     */
+    private static final int PART_BUFFER = 1 << 13;
+
+    /** The heap bytes of hash table overhead per build tuple (entry, key and list)
+     */
+    private static final long ENTRY_BYTES = 96;
+
+    /** The join columns of the lhs and rhs tuples
+     */
+    private final int [] cols1, cols2;
+
+    /** The rhs columns appended to each result (null for all)
+     */
+    private final int [] keep2;
+
+    /** The codecs for spilled lhs, rhs and result tuples (null if not spillable)
+     */
+    private final RowCodec codec1, codec2, codecOut;
+
+    /** The memory budget in bytes
+     */
+    private final long budget;
+
+    /** The estimated heap bytes per lhs and rhs tuple
+     */
+    private long rowBytes1, rowBytes2;
+
+    /*************************************************************************************
+     * Construct a join of tuples with the given domains.
+     * @param domain1  the domain of each lhs column
+     * @param _cols1   the join columns of the lhs tuples
+     * @param domain2  the domain of each rhs column
+     * @param _cols2   the join columns of the rhs tuples
+     * @param _keep2   the rhs columns to append to each result (null for all)
+     * @param _budget  the memory budget in bytes for the hash tables
+     */
+    public HybridHashJoin (Class [] domain1, int [] _cols1, Class [] domain2, int [] _cols2, int [] _keep2,
+                           long _budget)
+    {
+        cols1  = _cols1;
+        cols2  = _cols2;
+        keep2  = _keep2;
+        budget = _budget;
+        Class [] domainOut = Arrays.copyOf (domain1, domain1.length + ((keep2 == null) ? domain2.length : keep2.length));
+        for (int c = 0; c < domainOut.length - domain1.length; c++) {
+            domainOut [domain1.length + c] = domain2 [(keep2 == null) ? c : keep2 [c]];
+        } // for
+        boolean spillable = SpillFile.spillable (domain1) && SpillFile.spillable (domain2);
+        codec1   = spillable ? new RowCodec (domain1) : null;
+        codec2   = spillable ? new RowCodec (domain2) : null;
+        codecOut = spillable ? new RowCodec (domainOut) : null;
+    } // constructor
+
+    /*************************************************************************************
+     * Return the tuples joined.
+     * @param rows1  the lhs tuples
+     * @param rows2  the rhs tuples
+     * @return  the joined tuples (read-only if the join spilled to disk)
+     * @throws IOException if a temporary file cannot be written or read
+     * @throws IllegalArgumentException if the build side does not fit and a domain cannot
+     *                                  be written to disk
+     */
+    public List <Comparable []> join (List <Comparable []> rows1, List <Comparable []> rows2) throws IOException
+    {
+        rowBytes1 = SpillFile.estimate (rows1);
+        rowBytes2 = SpillFile.estimate (rows2);
+        Input in1 = new Input (rows1), in2 = new Input (rows2);
+        if (fits (in1, in2)) {
+            final List <Comparable []> rows = new ArrayList <> ();
+            joinInMemory (in1, in2, new Sink () {
+                public void add (Comparable [] t) { rows.add (t); }
+            });
+            return rows;
+        } // if
+        if (codecOut == null) throw new IllegalArgumentException ("tuples exceed the join budget and cannot be spilled");
+
+        Path file = Files.createTempFile ("join", ".out");
+        try {
+            try (final SpillFile.Writer w = new SpillFile.Writer (file, codecOut, SpillFile.BUFFER_SIZE, true)) {
+                join (in1, in2, 0, new Sink () {
+                    public void add (Comparable [] t) throws IOException { w.write (t); }
+                });
+                return w.map ();
+            } // try
+        } finally {
+            Files.deleteIfExists (file);                                   // the mapping stays valid
+        } // try
+    } // join
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Join two inputs (whole or partitions of the inputs, at the given depth of
+     * repartitioning), passing the results to the sink.
+     */
+    private void join (Input in1, Input in2, int depth, Sink out) throws IOException
+    {
+        if (in1.size == 0 || in2.size == 0) return;
+        if (fits (in1, in2)) {
+            joinInMemory (in1, in2, out);
+        } else if (depth >= MAX_DEPTH) {
+            joinInBlocks (in1, in2, out);
+        } else {
+            joinPartitioned (in1, in2, depth, out);
+        } // if
+    } // join
+
+    /*************************************************************************************
+     * Return whether the hash table on the build side (the smaller input) fits in the
+     * budget.
+     */
+    private boolean fits (Input in1, Input in2)
+    {
+        return buildBytes (in1, in2) * Math.min (in1.size, in2.size) <= budget;
+    } // fits
+
+    /*************************************************************************************
+     * Return the estimated heap bytes per build tuple, hash table overhead included.
+     */
+    private long buildBytes (Input in1, Input in2)
+    {
+        return ((in1.size < in2.size) ? rowBytes1 : rowBytes2) + ENTRY_BYTES;
+    } // buildBytes
+
+    /*************************************************************************************
+     * Join two inputs by building a hash table on the smaller and probing it with the
+     * larger.
+     */
+    private void joinInMemory (Input in1, Input in2, Sink out) throws IOException
+    {
+        boolean buildLeft = in1.size < in2.size;
+        Map <KeyType, List <Comparable []>> hash = new HashMap <> ();
+        Scan build = (buildLeft ? in1 : in2).open ();
+        try {
+            int [] cols = buildLeft ? cols1 : cols2;
+            for (Comparable [] t; (t = build.next ()) != null; ) add (hash, Table.keyOf (t, cols), t);
+        } finally {
+            build.close ();
+        } // try
+        probe (hash, buildLeft, buildLeft ? in2 : in1, out);
+    } // joinInMemory
+
+    /*************************************************************************************
+     * Join two inputs whose build side does not fit however it is partitioned: load the
+     * build side a budget-sized block at a time and probe each block with the whole
+     * probe side.
+     */
+    private void joinInBlocks (Input in1, Input in2, Sink out) throws IOException
+    {
+        boolean buildLeft = in1.size < in2.size;
+        int [] cols = buildLeft ? cols1 : cols2;
+        long block = Math.max (1, budget / buildBytes (in1, in2));
+        Scan build = (buildLeft ? in1 : in2).open ();
+        try {
+            Comparable [] t = build.next ();
+            while (t != null) {
+                Map <KeyType, List <Comparable []>> hash = new HashMap <> ();
+                for (long n = 0; t != null && n < block; n++, t = build.next ()) add (hash, Table.keyOf (t, cols), t);
+                probe (hash, buildLeft, buildLeft ? in2 : in1, out);
+            } // while
+        } finally {
+            build.close ();
+        } // try
+    } // joinInBlocks
+
+    /*************************************************************************************
+     * Join two inputs by hash-partitioning both.  The first partitions of the build side
+     * are kept in a hash table and probed as the probe side is partitioned; the rest of
+     * both sides are spilled and their pairs joined afterwards.
+     */
+    private void joinPartitioned (Input in1, Input in2, int depth, Sink out) throws IOException
+    {
+        boolean buildLeft = in1.size < in2.size;
+        Input build = buildLeft ? in1 : in2, probe = buildLeft ? in2 : in1;
+        int [] buildCols = buildLeft ? cols1 : cols2, probeCols = buildLeft ? cols2 : cols1;
+        RowCodec buildCodec = buildLeft ? codec1 : codec2, probeCodec = buildLeft ? codec2 : codec1;
+
+        long need = buildBytes (in1, in2) * build.size;
+        int parts = 2;
+        while (parts < MAX_PARTITIONS && (long) parts * budget < 2 * need) parts <<= 1;
+        long avail = budget - 2L * parts * PART_BUFFER;                    // less the spill buffers
+        int resident = (int) Math.max (0, Math.min (parts - 1, avail / Math.max (1, need / parts) - 1));
+
+        Path [] buildFile = new Path [parts], probeFile = new Path [parts];
+        int [] buildSize = new int [parts], probeSize = new int [parts];
+        try {
+            Map <KeyType, List <Comparable []>> hash = new HashMap <> ();  // the resident partitions
+            SpillFile.Writer [] w = new SpillFile.Writer [parts];
+            try {
+                for (int p = resident; p < parts; p++) {
+                    buildFile [p] = Files.createTempFile ("join", ".part");
+                    w [p] = new SpillFile.Writer (buildFile [p], buildCodec, PART_BUFFER, false);
+                } // for
+                Scan s = build.open ();
+                try {
+                    for (Comparable [] t; (t = s.next ()) != null; ) {
+                        KeyType k = Table.keyOf (t, buildCols);
+                        int p = partition (k, depth, parts);
+                        if (p < resident) add (hash, k, t);
+                        else              w [p].write (t);
+                    } // for
+                } finally {
+                    s.close ();
+                } // try
+            } finally {
+                close (w, buildSize);
+            } // try
+
+            w = new SpillFile.Writer [parts];
+            try {
+                for (int p = resident; p < parts; p++) {
+                    if (buildSize [p] == 0) continue;                      // nothing to match
+                    probeFile [p] = Files.createTempFile ("join", ".part");
+                    w [p] = new SpillFile.Writer (probeFile [p], probeCodec, PART_BUFFER, false);
+                } // for
+                Scan s = probe.open ();
+                try {
+                    for (Comparable [] t; (t = s.next ()) != null; ) {
+                        KeyType k = Table.keyOf (t, probeCols);
+                        int p = partition (k, depth, parts);
+                        if (p < resident) {
+                            List <Comparable []> matches = hash.get (k);
+                            if (matches != null) emit (matches, t, buildLeft, out);
+                        } else if (w [p] != null) {
+                            w [p].write (t);
+                        } // if
+                    } // for
+                } finally {
+                    s.close ();
+                } // try
+            } finally {
+                close (w, probeSize);
+            } // try
+            hash = null;                                                   // free the resident partitions
+
+            for (int p = resident; p < parts; p++) {
+                if (probeFile [p] == null) continue;
+                Input b = new Input (buildFile [p], buildCodec, buildSize [p]);
+                Input q = new Input (probeFile [p], probeCodec, probeSize [p]);
+                join (buildLeft ? b : q, buildLeft ? q : b, depth + 1, out);
+                Files.deleteIfExists (buildFile [p]);
+                Files.deleteIfExists (probeFile [p]);
+            } // for
+        } finally {
+            for (int p = 0; p < parts; p++) {
+                if (buildFile [p] != null) Files.deleteIfExists (buildFile [p]);
+                if (probeFile [p] != null) Files.deleteIfExists (probeFile [p]);
+            } // for
+        } // try
+    } // joinPartitioned
+
+    /*************************************************************************************
+     * Probe a hash table with every tuple of an input, passing the results to the sink.
+     */
+    private void probe (Map <KeyType, List <Comparable []>> hash, boolean buildLeft, Input probe, Sink out)
+            throws IOException
+    {
+        int [] cols = buildLeft ? cols2 : cols1;
+        Scan s = probe.open ();
+        try {
+            for (Comparable [] t; (t = s.next ()) != null; ) {
+                List <Comparable []> matches = hash.get (Table.keyOf (t, cols));
+                if (matches != null) emit (matches, t, buildLeft, out);
+            } // for
+        } finally {
+            s.close ();
+        } // try
+    } // probe
+
+    /*************************************************************************************
+     * Pass the results of joining a probe tuple with its matching build tuples to the sink.
+     */
+    private void emit (List <Comparable []> matches, Comparable [] t, boolean buildLeft, Sink out)
+            throws IOException
+    {
+        for (int j = 0; j < matches.size (); j++) {
+            out.add (buildLeft ? Table.combine (matches.get (j), t, keep2) : Table.combine (t, matches.get (j), keep2));
+        } // for
+    } // emit
+
+    /*************************************************************************************
+     * Close the writers that were opened, recording how many tuples each wrote.
+     */
+    private static void close (SpillFile.Writer [] w, int [] size) throws IOException
+    {
+        IOException first = null;
+        for (int p = 0; p < w.length; p++) {
+            if (w [p] == null) continue;
+            size [p] = w [p].count ();
+            try {
+                w [p].close ();
+            } catch (IOException ex) {
+                if (first == null) first = ex;
+            } // try
+        } // for
+        if (first != null) throw first;
+    } // close
+
+    /*************************************************************************************
+     * Return the partition of a key, mixing in the depth so that each repartitioning
+     * splits a partition differently.
+     */
+    private static int partition (KeyType k, int depth, int parts)
+    {
+        long h = k.hashCode () + 0x9E3779B97F4A7C15L * (depth + 1);
+        h ^= h >>> 33;                                          // MurmurHash3 finalizer
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) (h & (parts - 1));
+    } // partition
+
+    /*************************************************************************************
+     * Add a tuple to the hash table under its key.
+     */
+    private static void add (Map <KeyType, List <Comparable []>> hash, KeyType k, Comparable [] t)
+    {
+        List <Comparable []> list = hash.get (k);
+        if (list == null) hash.put (k, list = new ArrayList <> (1));
+        list.add (t);
+    } // add
+
+    /*************************************************************************************
+     * Receives the joined tuples.
+     */
+    private interface Sink
+    {
+        void add (Comparable [] t) throws IOException;
+    } // Sink interface
+
+    /*************************************************************************************
+     * Scans the tuples of an input, returning null at the end.
+     */
+    private interface Scan
+    {
+        Comparable [] next () throws IOException;
+        void close () throws IOException;
+    } // Scan interface
+
+    /*************************************************************************************
+     * An input to a join: a list of tuples in memory or a spilled partition.
+     */
+    private static class Input
+    {
+        final List <Comparable []> rows;
+        final Path file;
+        final RowCodec codec;
+        final int size;
+
+        Input (List <Comparable []> _rows)
+        {
+            rows  = _rows;
+            file  = null;
+            codec = null;
+            size  = rows.size ();
+        } // constructor
+
+        Input (Path _file, RowCodec _codec, int _size)
+        {
+            rows  = null;
+            file  = _file;
+            codec = _codec;
+            size  = _size;
+        } // constructor
+
+        Scan open () throws IOException
+        {
+            if (file != null) {
+                final SpillFile.Reader r = new SpillFile.Reader (file, codec, PART_BUFFER);
+                return new Scan () {
+                    public Comparable [] next () throws IOException { return r.next (); }
+                    public void close () throws IOException { r.close (); }
+                };
+            } // if
+            return new Scan () {
+                int i = 0;
+                public Comparable [] next () { return (i < size) ? rows.get (i++) : null; }
+                public void close () { }
+            };
+        } // open
+    } // Input class
+
+} // HybridHashJoin class
+
@@ -0,0 +1,87 @@
+/****************************************************************************************
+ * @file  IndexBenchmark.java
+ */
+
+import java.util.Random;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The IndexBenchmark class compares the map types available for the primary index of a
+ * Table.  For each MapType it loads the same rows, then reports the heap used per index
+ * entry and the average latency of select (KeyType) and of the allocation-free get (int)
+ * on random existing keys.
+ *
+ * #usage java IndexBenchmark [rows] [lookups]
+ */
+public class IndexBenchmark
+{
+    /*************************************************************************************
+     * Build a table with the given map type holding the given rows.
+     * @param mType  the map type for the primary index
+     * @param rows   the rows to insert
+     * @return  the loaded table
+     */
+    private static Table load (Table.MapType mType, Comparable [][] rows)
+    {
+        Table t = new Table ("bench", "id name score", "Integer String Double", "id", mType);
+        for (Comparable [] row : rows) t.insert (row);
+        return t;
+    } // load
+
+    /*************************************************************************************
+     * Return the heap currently in use, after requesting garbage collection.
+     * @return  the number of bytes in use
+     */
+    private static long usedMemory ()
+    {
+        Runtime rt = Runtime.getRuntime ();
+        for (int i = 0; i < 3; i++) System.gc ();
+        return rt.totalMemory () - rt.freeMemory ();
+    } // usedMemory
+
+    /*************************************************************************************
+     * Run the benchmark.
+     * @param args  the command-line arguments: number of rows and number of lookups
+     */
+    public static void main (String [] args)
+    {
+        int nRows    = (args.length > 0) ? Integer.parseInt (args [0]) : 500000;
+        int nLookups = (args.length > 1) ? Integer.parseInt (args [1]) : 1000000;
+        Random rand  = new Random (0);
+
+        Comparable [][] rows = new Comparable [nRows][];
+        for (int i = 0; i < nRows; i++) rows [i] = new Comparable [] { i * 7, "name" + i, rand.nextDouble () };
+        int [] ids = new int [nLookups];
+        KeyType [] probes = new KeyType [nLookups];
+        for (int i = 0; i < nLookups; i++) {
+            ids [i] = rand.nextInt (nRows) * 7;
+            probes [i] = new KeyType (new Comparable [] { ids [i] });
+        } // for
+
+        out.println ("rows = " + nRows + ", lookups = " + nLookups);
+        out.printf ("%-12s %14s %14s %14s%n", "MapType", "bytes/entry", "ns/select", "ns/get");
+        for (Table.MapType mType : Table.MapType.values ()) {
+            long before = usedMemory ();
+            Table t = load (mType, rows);
+            long bytes = usedMemory () - before;
+
+            int found = 0;
+            for (int i = 0; i < Math.min (nLookups, 100000); i++) found += t.select (probes [i]).tuples.size ();  // warm up
+            long start = System.nanoTime ();
+            for (int i = 0; i < nLookups; i++) found += t.select (probes [i]).tuples.size ();
+            long elapsed = System.nanoTime () - start;
+
+            for (int i = 0; i < Math.min (nLookups, 100000); i++) if (t.get (ids [i]) != null) found++;   // warm up
+            start = System.nanoTime ();
+            for (int i = 0; i < nLookups; i++) if (t.get (ids [i]) != null) found++;
+            long elapsedGet = System.nanoTime () - start;
+
+            out.printf ("%-12s %14.1f %14.1f %14.1f%s%n", mType, (double) bytes / nRows, (double) elapsed / nLookups,
+                        (double) elapsedGet / nLookups, (found == 0) ? "  (no rows found!)" : "");
+        } // for
+        out.println ("bytes/entry includes the tuple list slot and index key of each row, not the row itself");
+    } // main
+
+} // IndexBenchmark class
+
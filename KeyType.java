@@ -14,14 +14,36 @@ import static java.lang.System.out;
 /*****************************************************************************************
  * The KeyType class provides a key type for handling both non-composite and composite keys.
  * A key is a minimal set of attributes that can be used to uniquely identify a tuple.
+ * The factory method of returns a key specialized for a single int, long or String value
+ * (IntKey, LongKey, StringKey), which stores the value unboxed and compares without
+ * dispatching through Comparable; other keys keep an array of values.  All kinds of keys
+ * with the same values are equal, hash alike and compare as equal, so they may be mixed
+ * in one index.  The probe methods return a per-thread reusable key for lookups that
+ * must not allocate.
  */
 public class KeyType
        implements Comparable <KeyType>, Serializable
 {
-    /** Array holding the attribute values for a particular key
+    /** Array holding the attribute values for a particular key (null for specialized keys)
      */
     private final Comparable [] key;
 
+    /** Cached hash code (0 until first computed)
+     */
+    private transient int hash;
+
+    /** Per-thread probe keys reused by the allocation-free lookups
+     */
+    private static final ThreadLocal <IntKey> intProbe = new ThreadLocal <IntKey> () {
+        protected IntKey initialValue () { return new IntKey (0); }
+    };
+    private static final ThreadLocal <LongKey> longProbe = new ThreadLocal <LongKey> () {
+        protected LongKey initialValue () { return new LongKey (0L); }
+    };
+    private static final ThreadLocal <StringKey> stringProbe = new ThreadLocal <StringKey> () {
+        protected StringKey initialValue () { return new StringKey (""); }
+    };
+
     /*************************************************************************************
      * Construct an instance of KeyType from a Comparable array.  
      * @param _key  the primary key
@@ -42,6 +64,103 @@ public class KeyType
          for (int i = 1; i < key.length; i++) key [i] = keys [i-1];
     } // constructor
 
+    /*************************************************************************************
+     * Construct a specialized key (used by the subclasses).
+     */
+    private KeyType ()
+    {
+         key = null;
+    } // constructor
+
+    /*************************************************************************************
+     * Return a key for the given value, specialized when it is an Integer, Long or String.
+     * @param value  the key value
+     * @return  the key
+     */
+    public static KeyType of (Comparable value)
+    {
+        if (value instanceof Integer) return new IntKey ((Integer) value);
+        if (value instanceof Long)    return new LongKey ((Long) value);
+        if (value instanceof String)  return new StringKey ((String) value);
+        return new KeyType (new Comparable [] { value });
+    } // of
+
+    /*************************************************************************************
+     * Return a key for the given values, specialized when there is a single Integer, Long
+     * or String value.
+     * @param values  the key values
+     * @return  the key
+     */
+    public static KeyType of (Comparable ... values)
+    {
+        return (values.length == 1) ? of (values [0]) : new KeyType (values);
+    } // of
+
+    /*************************************************************************************
+     * Return this thread's reusable probe key set to the given value.  The probe may be
+     * passed to Map.get or containsKey, but must never be stored.
+     * @param value  the key value
+     * @return  the probe key
+     */
+    public static KeyType probe (int value)
+    {
+        IntKey k = intProbe.get ();
+        k.value = value;
+        return k;
+    } // probe
+
+    /*************************************************************************************
+     * Return this thread's reusable probe key set to the given value (see probe (int)).
+     * @param value  the key value
+     * @return  the probe key
+     */
+    public static KeyType probe (long value)
+    {
+        LongKey k = longProbe.get ();
+        k.value = value;
+        return k;
+    } // probe
+
+    /*************************************************************************************
+     * Return this thread's reusable probe key set to the given value (see probe (int)).
+     * @param value  the key value
+     * @return  the probe key
+     */
+    public static KeyType probe (String value)
+    {
+        StringKey k = stringProbe.get ();
+        k.value = value;
+        return k;
+    } // probe
+
+    /*************************************************************************************
+     * Return the number of attribute values making up this key.
+     * @return  the arity of the key
+     */
+    int arity ()
+    {
+        return key.length;
+    } // arity
+
+    /*************************************************************************************
+     * Return the i-th attribute value making up this key.
+     * @param i  the position of the value
+     * @return  the value
+     */
+    Comparable component (int i)
+    {
+        return key [i];
+    } // component
+
+    /*************************************************************************************
+     * Return the attribute values making up this key.
+     * @return  the key values (not a copy, do not modify)
+     */
+    Comparable [] values ()
+    {
+        return key;
+    } // values
+
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
      * @param k  the other key (to compare with this)
@@ -50,9 +169,10 @@ public class KeyType
     @SuppressWarnings("unchecked")
     public int compareTo (KeyType k)
     {
-        for (int i = 0; i < key.length; i++) {
-            if (key [i].compareTo (k.key [i]) < 0) return -1;
-            if (key [i].compareTo (k.key [i]) > 0) return 1;
+        int n = arity ();
+        for (int i = 0; i < n; i++) {
+            int c = component (i).compareTo (k.component (i));
+            if (c != 0) return c;
         } // for
         return 0;
     } // compareTo
@@ -64,17 +184,30 @@ public class KeyType
      */
     public boolean equals (Object k)
     {
-        return compareTo ((KeyType) k) == 0;
+        if (this == k) return true;
+        if (! (k instanceof KeyType)) return false;
+        KeyType k2 = (KeyType) k;
+        int n = arity ();
+        if (n != k2.arity ()) return false;
+        for (int i = 0; i < n; i++) {
+            if (! component (i).equals (k2.component (i))) return false;   // also false for mixed domains
+        } // for
+        return true;
     } // equals
 
     /*************************************************************************************
      * Compute a hash code for this object (equal objects should produce the same hash code).
+     * The hash code is computed once and cached, since keys are probed repeatedly.  A key
+     * with one value hashes as that value does.
      * @return  an integer hash code value
      */
     public int hashCode ()
     {
-        int sum = 0;
-        for (int i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
+        int sum = hash;
+        if (sum == 0) {
+            for (int i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
+            hash = sum;
+        } // if
         return sum;
     } // hashCode
 
@@ -85,10 +218,122 @@ public class KeyType
     public String toString ()
     {
         String s = "Key (";
-        for (int i = 0; i < key.length; i++) s += " " + key [i];
+        for (int i = 0; i < arity (); i++) s += " " + component (i);
         return s + (" )");
     } // toString
 
+    /*************************************************************************************
+     * A key made of a single int value.  The value is changed only on probe keys.
+     */
+    public static final class IntKey
+           extends KeyType
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int value;
+
+        IntKey (int _value)
+        {
+            value = _value;
+        } // constructor
+
+        int arity ()                 { return 1; }
+        Comparable component (int i) { return value; }
+        Comparable [] values ()      { return new Comparable [] { value }; }
+
+        public int compareTo (KeyType k)
+        {
+            if (k instanceof IntKey) return Integer.compare (value, ((IntKey) k).value);
+            return super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            if (k instanceof IntKey) return value == ((IntKey) k).value;
+            return super.equals (k);
+        } // equals
+
+        public int hashCode ()
+        {
+            return value;                                    // as Integer.hashCode
+        } // hashCode
+    } // IntKey class
+
+    /*************************************************************************************
+     * A key made of a single long value.  The value is changed only on probe keys.
+     */
+    public static final class LongKey
+           extends KeyType
+    {
+        private static final long serialVersionUID = 1L;
+
+        private long value;
+
+        LongKey (long _value)
+        {
+            value = _value;
+        } // constructor
+
+        int arity ()                 { return 1; }
+        Comparable component (int i) { return value; }
+        Comparable [] values ()      { return new Comparable [] { value }; }
+
+        public int compareTo (KeyType k)
+        {
+            if (k instanceof LongKey) return Long.compare (value, ((LongKey) k).value);
+            return super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            if (k instanceof LongKey) return value == ((LongKey) k).value;
+            return super.equals (k);
+        } // equals
+
+        public int hashCode ()
+        {
+            return (int) (value ^ (value >>> 32));           // as Long.hashCode
+        } // hashCode
+    } // LongKey class
+
+    /*************************************************************************************
+     * A key made of a single String value (String caches its own hash code).  The value
+     * is changed only on probe keys.
+     */
+    public static final class StringKey
+           extends KeyType
+    {
+        private static final long serialVersionUID = 1L;
+
+        private String value;
+
+        StringKey (String _value)
+        {
+            value = _value;
+        } // constructor
+
+        int arity ()                 { return 1; }
+        Comparable component (int i) { return value; }
+        Comparable [] values ()      { return new Comparable [] { value }; }
+
+        public int compareTo (KeyType k)
+        {
+            if (k instanceof StringKey) return value.compareTo (((StringKey) k).value);
+            return super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            if (k instanceof StringKey) return value.equals (((StringKey) k).value);
+            return super.equals (k);
+        } // equals
+
+        public int hashCode ()
+        {
+            return value.hashCode ();
+        } // hashCode
+    } // StringKey class
+
     /*************************************************************************************
      * The main method is used for testing purposes only.
      * @param args  the command-line arguments
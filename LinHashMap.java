@@ -0,0 +1,284 @@
+/****************************************************************************************
+ * @file  LinHashMap.java
+ *
+ * @see http://en.wikipedia.org/wiki/Linear_hashing
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The LinHashMap class provides a hash map based on Linear Hashing.  When the load factor
+ * is exceeded only the bucket at the split pointer is split, so the table grows one bucket
+ * at a time and never pauses for a full rehash.  The bucket directory is segmented so
+ * growing it never copies the buckets either.  Removal is not supported.  This class is
+ * not thread-safe.
+ */
+public class LinHashMap <K, V>
+       extends AbstractMap <K, V>
+{
+    /** The number of slots in a bucket (further entries go to overflow buckets)
+     */
+    private static final int SLOTS = 4;
+
+    /** The number of buckets in a directory segment
+     */
+    private static final int SEG_SIZE = 1024;
+
+    /** The initial number of buckets
+     */
+    private static final int INIT_BUCKETS = 4;
+
+    /** Split a bucket when size exceeds this fraction of the slots in primary buckets
+     */
+    private static final double LOAD_FACTOR = 0.75;
+
+    /*************************************************************************************
+     * A bucket of SLOTS entries with a chain of overflow buckets.
+     */
+    private static class Bucket
+    {
+        int nKeys;
+        final Object [] key   = new Object [SLOTS];
+        final Object [] value = new Object [SLOTS];
+        Bucket next;
+    } // Bucket class
+
+    /** The segmented bucket directory
+     */
+    private Bucket [][] dir = new Bucket [4][];
+
+    /** The number of buckets in use
+     */
+    private int nBuckets = 0;
+
+    /** The modulus for the current round (buckets before the split pointer use 2 * mod)
+     */
+    private int mod = INIT_BUCKETS;
+
+    /** The next bucket to split
+     */
+    private int split = 0;
+
+    /** The number of key-value pairs in the map
+     */
+    private int size = 0;
+
+    /*************************************************************************************
+     * Construct an empty linear hash map.
+     */
+    public LinHashMap ()
+    {
+        for (int i = 0; i < INIT_BUCKETS; i++) addBucket ();
+    } // constructor
+
+    /*************************************************************************************
+     * Return the value associated with the given key.
+     * @param k  the key
+     * @return  the associated value or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object k)
+    {
+        for (Bucket b = bucket (address (k)); b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (b.key [j].equals (k)) return (V) b.value [j];
+            } // for
+        } // for
+        return null;
+    } // get
+
+    /*************************************************************************************
+     * Determine whether the map contains the given key.
+     * @param k  the key
+     * @return  whether the key is present
+     */
+    public boolean containsKey (Object k)
+    {
+        for (Bucket b = bucket (address (k)); b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (b.key [j].equals (k)) return true;
+            } // for
+        } // for
+        return false;
+    } // containsKey
+
+    /*************************************************************************************
+     * Put the key-value pair into the map, splitting one bucket if the load factor is
+     * exceeded.
+     * @param k  the key
+     * @param v  the value
+     * @return  the value previously associated with the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K k, V v)
+    {
+        if (k == null) throw new NullPointerException ("LinHashMap does not allow null keys");
+        Bucket b = bucket (address (k));
+        for (Bucket c = b; c != null; c = c.next) {
+            for (int j = 0; j < c.nKeys; j++) {
+                if (c.key [j].equals (k)) {
+                    V old = (V) c.value [j];
+                    c.value [j] = v;
+                    return old;
+                } // if
+            } // for
+        } // for
+        append (b, k, v);
+        if (++size > LOAD_FACTOR * SLOTS * nBuckets) splitBucket ();
+        return null;
+    } // put
+
+    /*************************************************************************************
+     * Return the number of key-value pairs in the map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /*************************************************************************************
+     * Return the set of entries, in bucket order (read-only).
+     * @return  the entry set
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return size; }
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <K, V>> () {
+                    private int i = 0;
+                    private Bucket b = bucket (0);
+                    private int j = 0;
+
+                    private void advance ()
+                    {
+                        while (b != null && j >= b.nKeys) {
+                            if (b.next != null) {
+                                b = b.next;
+                            } else {
+                                b = (++i < nBuckets) ? bucket (i) : null;
+                            } // if
+                            j = 0;
+                        } // while
+                    } // advance
+
+                    public boolean hasNext () { advance (); return b != null; }
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry <K, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Map.Entry <K, V> e = new AbstractMap.SimpleImmutableEntry <> ((K) b.key [j], (V) b.value [j]);
+                        j++;
+                        return e;
+                    } // next
+                };
+            } // iterator
+        };
+    } // entrySet
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Compute the bucket number for the given key.  Buckets before the split pointer have
+     * already been split this round, so they are addressed using the doubled modulus.
+     * @param k  the key
+     * @return  the bucket number
+     */
+    private int address (Object k)
+    {
+        int h = k.hashCode ();
+        h = (h ^ (h >>> 16)) & 0x7fffffff;
+        int i = h % mod;
+        return (i < split) ? h % (2 * mod) : i;
+    } // address
+
+    /*************************************************************************************
+     * Return the i-th primary bucket.
+     * @param i  the bucket number
+     * @return  the bucket
+     */
+    private Bucket bucket (int i)
+    {
+        return dir [i / SEG_SIZE][i % SEG_SIZE];
+    } // bucket
+
+    /*************************************************************************************
+     * Add a new empty primary bucket at the end of the directory.
+     */
+    private void addBucket ()
+    {
+        int seg = nBuckets / SEG_SIZE;
+        if (seg == dir.length) dir = Arrays.copyOf (dir, dir.length * 2);
+        if (dir [seg] == null) dir [seg] = new Bucket [SEG_SIZE];
+        dir [seg][nBuckets % SEG_SIZE] = new Bucket ();
+        nBuckets++;
+    } // addBucket
+
+    /*************************************************************************************
+     * Append the key-value pair to the first bucket in the chain with a free slot.
+     * @param b  the primary bucket
+     * @param k  the key
+     * @param v  the value
+     */
+    private static void append (Bucket b, Object k, Object v)
+    {
+        while (b.nKeys == SLOTS) {
+            if (b.next == null) b.next = new Bucket ();
+            b = b.next;
+        } // while
+        b.key [b.nKeys]     = k;
+        b.value [b.nKeys++] = v;
+    } // append
+
+    /*************************************************************************************
+     * Split the bucket at the split pointer, redistributing its entries between itself
+     * and a new bucket at the end of the directory, then advance the split pointer.
+     */
+    private void splitBucket ()
+    {
+        Bucket old = bucket (split);
+        addBucket ();
+        Bucket lo = new Bucket ();
+        Bucket hi = bucket (nBuckets - 1);
+        for (Bucket b = old; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                int h = b.key [j].hashCode ();
+                h = (h ^ (h >>> 16)) & 0x7fffffff;
+                append ((h % (2 * mod) == split) ? lo : hi, b.key [j], b.value [j]);
+            } // for
+        } // for
+        dir [split / SEG_SIZE][split % SEG_SIZE] = lo;
+        if (++split == mod) {                       // round complete, double the modulus
+            split = 0;
+            mod  *= 2;
+        } // if
+    } // splitBucket
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        LinHashMap <Integer, Integer> ht = new LinHashMap <> ();
+        int n = 10000;
+        for (int i = 1; i <= n; i += 2) ht.put (i, i * i);
+        out.println ("size = " + ht.size () + ", buckets = " + ht.nBuckets);
+        boolean ok = true;
+        for (int i = 1; i <= n; i++) {
+            Integer v = ht.get (i);
+            if ((i % 2 == 1) ? (v == null || v != i * i) : v != null) ok = false;
+        } // for
+        out.println ("lookups correct = " + ok);
+        out.println ("entrySet size = " + new ArrayList <> (ht.entrySet ()).size ());
+    } // main
+
+} // LinHashMap class
+
@@ -0,0 +1,606 @@
+/****************************************************************************************
+ * @file  Query.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * This class builds a tree of pull-based (Volcano style) relational operators over
+ * tables.  Each operator produces one tuple per call to next, pulling from its inputs
+ * only as needed, so no intermediate result is materialized.  Only hash tables that an
+ * operator inherently needs (the build side of a join, the rhs of minus, the tuples
+ * already output by project and union) are kept in memory.  The result is produced when
+ * the query is iterated or materialized with toTable.
+ *
+ * #usage movie.query ().where (t -> t[1].equals (1977)).naturalJoin (studio).project ("title name").toTable ()
+ */
+public class Query implements Iterable<Comparable[]> {
+    /**
+     * The interface implemented by every operator: open, then call next until it
+     * returns null, then close.
+     */
+    interface Operator {
+        void open();
+
+        Comparable[] next();
+
+        void close();
+    } // Operator
+
+    /**
+     * Name of the table the query starts from.
+     */
+    private final String name;
+
+    /**
+     * Array of attribute names of the tuples produced.
+     */
+    private final String[] attribute;
+
+    /**
+     * Array of attribute domains of the tuples produced.
+     */
+    private final Class[] domain;
+
+    /**
+     * Primary key of the tuples produced.
+     */
+    private final String[] key;
+
+    /**
+     * The root of the operator tree.
+     */
+    private final Operator root;
+
+    /************************************************************************************
+     * Construct a query from the schema of its result and the root of its operator tree.
+     *
+     * @param _name       the name of the table the query starts from
+     * @param _attribute  the attribute names of the result
+     * @param _domain     the attribute domains of the result
+     * @param _key        the primary key of the result
+     * @param _root       the root operator
+     */
+    private Query(String _name, String[] _attribute, Class[] _domain, String[] _key, Operator _root) {
+        name = _name;
+        attribute = _attribute;
+        domain = _domain;
+        key = _key;
+        root = _root;
+    } // constructor
+
+    /************************************************************************************
+     * Start a query that scans the given table.
+     *
+     * @param table  the table to scan
+     * @return a query producing every tuple of the table
+     */
+    public static Query from(Table table) {
+        return new Query(table.getName(), table.getAttribute(), table.getDomain(), table.getKey(),
+                new Scan(table.tuples));
+    } // from
+
+    /************************************************************************************
+     * Keep only the tuples satisfying the predicate.
+     *
+     * @param predicate  the check condition for tuples
+     * @return the filtered query
+     */
+    public Query where(PredicateMod<Comparable[]> predicate) {
+        return new Query(name, attribute, domain, key, new Filter(root, predicate));
+    } // where
+
+    /************************************************************************************
+     * Project the tuples onto the given attributes, eliminating duplicates as they
+     * stream past.
+     *
+     * @param attributes  the attributes to project onto
+     * @return the projected query
+     */
+    public Query project(String attributes) {
+        String[] attrs = attributes.split(" ");
+        int[] cols = match(attrs);
+        Class[] colDomain = new Class[cols.length];
+        for (int j = 0; j < cols.length; j++) colDomain[j] = domain[cols[j]];
+        String[] newKey = Arrays.asList(attrs).containsAll(Arrays.asList(key)) ? key : attrs;
+        return new Query(name, attrs, colDomain, newKey, new Project(root, cols));
+    } // project
+
+    /************************************************************************************
+     * Pass on only the first n tuples.  Since operators pull tuples on demand, the
+     * operators below (scans, filters, projections, join probes) stop as soon as n
+     * tuples have been produced.
+     *
+     * @param n  the maximum number of tuples
+     * @return the limited query
+     */
+    public Query limit(int n) {
+        return new Query(name, attribute, domain, key, new Limit(root, n));
+    } // limit
+
+    /************************************************************************************
+     * Pass on the first n tuples ordered on the given attributes.  The input is drained
+     * into a bounded heap of n tuples instead of being sorted.
+     *
+     * @param n           the number of tuples
+     * @param attributes  the attributes to order by
+     * @param asc         whether to take the smallest (or else the largest) values
+     * @return the top-k query
+     */
+    public Query topK(int n, String attributes, boolean asc) {
+        Comparator<Comparable[]> order = Table.rowOrder(match(attributes.split(" ")), asc);
+        return new Query(name, attribute, domain, key, new TopK(root, n, order));
+    } // topK
+
+    /************************************************************************************
+     * Equi-join with table2, requiring attributes1 of this query to equal attributes2
+     * of table2.  Duplicate attribute names of table2 get "2" appended.  The primary
+     * index of table2 is probed when attributes2 form its key; otherwise table2 is
+     * loaded into a hash table and the tuples of this query are streamed against it.
+     *
+     * @param attributes1  the attributes of this query to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table
+     * @return the joined query
+     */
+    public Query join(String attributes1, String attributes2, Table table2) {
+        String[] attrs2 = attributes2.split(" ");
+        String[] attr2 = table2.getAttribute().clone();
+        int[] cols1 = match(attributes1.split(" "));
+        int[] cols2 = table2.match(attrs2);
+        for (int i = 0; i < cols2.length; i++) {
+            if (attr2[cols2[i]].equals(attribute[cols1[i]])) attr2[cols2[i]] += "2";
+        } // for
+        return new Query(name, ArrayUtil.concat(attribute, attr2), ArrayUtil.concat(domain, table2.getDomain()),
+                key, joinOp(cols1, table2, attrs2, cols2, null));
+    } // join
+
+    /************************************************************************************
+     * Natural join with table2 on their common attributes, dropping the duplicate
+     * columns of table2 (a cartesian product when there are none).
+     *
+     * @param table2  the rhs table
+     * @return the joined query
+     */
+    public Query naturalJoin(Table table2) {
+        String[] attr2 = table2.getAttribute();
+        List<String> common = new ArrayList<>(Arrays.asList(attribute));
+        common.retainAll(Arrays.asList(attr2));
+        String[] commonAttrs = common.toArray(new String[common.size()]);
+        int[] cols1 = match(commonAttrs);
+        int[] cols2 = table2.match(commonAttrs);
+
+        List<Integer> keep = new ArrayList<>();
+        for (int i = 0; i < attr2.length; i++) {
+            if (!common.contains(attr2[i])) keep.add(i);
+        } // for
+        int[] keep2 = new int[keep.size()];
+        String[] allAttrs = Arrays.copyOf(attribute, attribute.length + keep2.length);
+        Class[] allDomain = Arrays.copyOf(domain, domain.length + keep2.length);
+        for (int i = 0; i < keep2.length; i++) {
+            keep2[i] = keep.get(i);
+            allAttrs[attribute.length + i] = attr2[keep2[i]];
+            allDomain[attribute.length + i] = table2.getDomain()[keep2[i]];
+        } // for
+        return new Query(name, allAttrs, allDomain, key, joinOp(cols1, table2, commonAttrs, cols2, keep2));
+    } // naturalJoin
+
+    /************************************************************************************
+     * Union with another compatible query: every tuple of this query followed by the
+     * tuples of query2 not produced by this query.
+     *
+     * @param query2  the rhs query
+     * @return the union query
+     */
+    public Query union(Query query2) {
+        return new Query(name, attribute, domain, key, new Union(root, query2.root));
+    } // union
+
+    /************************************************************************************
+     * Difference with another compatible query: the tuples of this query that query2
+     * does not produce.  query2 is loaded into a hash set when the query is opened.
+     *
+     * @param query2  the rhs query
+     * @return the difference query
+     */
+    public Query minus(Query query2) {
+        return new Query(name, attribute, domain, key, new Minus(root, query2.root));
+    } // minus
+
+    /************************************************************************************
+     * Run the query, collecting its tuples into a new table.
+     *
+     * @return a table holding the result
+     */
+    public Table toTable() {
+        List<Comparable[]> rows = new ArrayList<>();
+        for (Comparable[] t : this) rows.add(t);
+        return new Table(Table.tempName(name), attribute, domain, key, rows);
+    } // toTable
+
+    /************************************************************************************
+     * Return an iterator that runs the query, pulling one tuple at a time.  The operator
+     * tree is opened on the first call to hasNext and closed when it is exhausted.
+     *
+     * @return an iterator over the result tuples
+     */
+    public Iterator<Comparable[]> iterator() {
+        return new Iterator<Comparable[]>() {
+            private boolean opened = false;
+            private Comparable[] nextTup;
+
+            public boolean hasNext() {
+                if (!opened) {
+                    root.open();
+                    opened = true;
+                    nextTup = root.next();
+                    if (nextTup == null) root.close();
+                } // if
+                return nextTup != null;
+            } // hasNext
+
+            public Comparable[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Comparable[] t = nextTup;
+                nextTup = root.next();
+                if (nextTup == null) root.close();
+                return t;
+            } // next
+        };
+    } // iterator
+
+    /************************************************************************************
+     * Return the attribute names of the tuples produced.
+     *
+     * @return the attribute names
+     */
+    public String[] getAttribute() {
+        return attribute;
+    } // getAttribute
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Choose the join operator: probe the primary index of table2 when attrs2 form its
+     * key, otherwise hash join with table2 as the build side.
+     */
+    private Operator joinOp(int[] cols1, Table table2, String[] attrs2, int[] cols2, int[] keep2) {
+        if (cols1.length == 0) return new HashJoin(root, cols1, table2.tuples, cols2, keep2);
+        int[] order = table2.keyOrder(attrs2);
+        if (order != null) {
+            int[] probeCols = new int[order.length];
+            for (int j = 0; j < order.length; j++) probeCols[j] = cols1[order[j]];
+            return new IndexJoin(root, probeCols, table2, keep2);
+        } // if
+        return new HashJoin(root, cols1, table2.tuples, cols2, keep2);
+    } // joinOp
+
+    /************************************************************************************
+     * Return the positions of the given attributes in the result of this query.
+     */
+    private int[] match(String[] column) {
+        int[] colPos = new int[column.length];
+        for (int j = 0; j < column.length; j++) {
+            colPos[j] = Arrays.asList(attribute).indexOf(column[j]);
+            if (colPos[j] < 0) throw new IllegalArgumentException("match: no attribute " + column[j]);
+        } // for
+        return colPos;
+    } // match
+
+    //----------------------------------------------------------------------------------
+    // Operators
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Scan the tuples of a table in order.
+     */
+    private static class Scan implements Operator {
+        private final List<Comparable[]> rows;
+        private int pos;
+
+        Scan(List<Comparable[]> _rows) {
+            rows = _rows;
+        } // constructor
+
+        public void open() {
+            pos = 0;
+        } // open
+
+        public Comparable[] next() {
+            return (pos < rows.size()) ? rows.get(pos++) : null;
+        } // next
+
+        public void close() {
+        } // close
+    } // Scan
+
+    /************************************************************************************
+     * Pass on the tuples of the input satisfying a predicate.
+     */
+    private static class Filter implements Operator {
+        private final Operator input;
+        private final PredicateMod<Comparable[]> predicate;
+
+        Filter(Operator _input, PredicateMod<Comparable[]> _predicate) {
+            input = _input;
+            predicate = _predicate;
+        } // constructor
+
+        public void open() {
+            input.open();
+        } // open
+
+        public Comparable[] next() {
+            for (Comparable[] t = input.next(); t != null; t = input.next()) {
+                if (predicate.test(t)) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close() {
+            input.close();
+        } // close
+    } // Filter
+
+    /************************************************************************************
+     * Project the tuples of the input onto some columns, passing on the first occurrence
+     * of each projected tuple.
+     */
+    private static class Project implements Operator {
+        private final Operator input;
+        private final int[] cols;
+        private Set<KeyType> seen;
+
+        Project(Operator _input, int[] _cols) {
+            input = _input;
+            cols = _cols;
+        } // constructor
+
+        public void open() {
+            seen = new HashSet<>();
+            input.open();
+        } // open
+
+        public Comparable[] next() {
+            for (Comparable[] t = input.next(); t != null; t = input.next()) {
+                Comparable[] row = new Comparable[cols.length];
+                for (int j = 0; j < cols.length; j++) row[j] = t[cols[j]];
+                if (seen.add(new KeyType(row))) return row;
+            } // for
+            return null;
+        } // next
+
+        public void close() {
+            seen = null;
+            input.close();
+        } // close
+    } // Project
+
+    /************************************************************************************
+     * Join the input (probe side) with a list of tuples loaded into a hash table (build
+     * side) when the operator is opened.  With no join columns this is a cartesian
+     * product.
+     */
+    private static class HashJoin implements Operator {
+        private final Operator input;
+        private final int[] cols1, cols2, keep2;
+        private final List<Comparable[]> build;
+        private Map<KeyType, List<Comparable[]>> hash;
+        private Comparable[] current;
+        private List<Comparable[]> matches;
+        private int pos;
+
+        HashJoin(Operator _input, int[] _cols1, List<Comparable[]> _build, int[] _cols2, int[] _keep2) {
+            input = _input;
+            cols1 = _cols1;
+            build = _build;
+            cols2 = _cols2;
+            keep2 = _keep2;
+        } // constructor
+
+        public void open() {
+            hash = new HashMap<>();
+            for (int i = 0; i < build.size(); i++) {
+                Comparable[] t = build.get(i);
+                KeyType k = Table.keyOf(t, cols2);
+                List<Comparable[]> bucket = hash.get(k);
+                if (bucket == null) hash.put(k, bucket = new ArrayList<>(1));
+                bucket.add(t);
+            } // for
+            matches = null;
+            input.open();
+        } // open
+
+        public Comparable[] next() {
+            while (matches == null || pos == matches.size()) {
+                current = input.next();
+                if (current == null) return null;
+                matches = hash.get(Table.keyOf(current, cols1));
+                pos = 0;
+            } // while
+            return Table.combine(current, matches.get(pos++), keep2);
+        } // next
+
+        public void close() {
+            hash = null;
+            input.close();
+        } // close
+    } // HashJoin
+
+    /************************************************************************************
+     * Join the input with a table by probing the table's primary index.
+     */
+    private static class IndexJoin implements Operator {
+        private final Operator input;
+        private final int[] cols1, keep2;
+        private final Table table2;
+
+        IndexJoin(Operator _input, int[] _cols1, Table _table2, int[] _keep2) {
+            input = _input;
+            cols1 = _cols1;
+            table2 = _table2;
+            keep2 = _keep2;
+        } // constructor
+
+        public void open() {
+            input.open();
+        } // open
+
+        public Comparable[] next() {
+            for (Comparable[] t = input.next(); t != null; t = input.next()) {
+                Comparable[] t2 = table2.lookup(Table.keyOf(t, cols1));
+                if (t2 != null) return Table.combine(t, t2, keep2);
+            } // for
+            return null;
+        } // next
+
+        public void close() {
+            input.close();
+        } // close
+    } // IndexJoin
+
+    /************************************************************************************
+     * Pass on every tuple of the lhs input, then the tuples of the rhs input that the
+     * lhs did not produce.
+     */
+    private static class Union implements Operator {
+        private final Operator input1, input2;
+        private Set<KeyType> seen;
+        private boolean onRight;
+
+        Union(Operator _input1, Operator _input2) {
+            input1 = _input1;
+            input2 = _input2;
+        } // constructor
+
+        public void open() {
+            seen = new HashSet<>();
+            onRight = false;
+            input1.open();
+        } // open
+
+        public Comparable[] next() {
+            if (!onRight) {
+                Comparable[] t = input1.next();
+                if (t != null) {
+                    seen.add(new KeyType(t));
+                    return t;
+                } // if
+                input1.close();
+                input2.open();
+                onRight = true;
+            } // if
+            for (Comparable[] t = input2.next(); t != null; t = input2.next()) {
+                if (!seen.contains(new KeyType(t))) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close() {
+            seen = null;
+            if (onRight) input2.close(); else input1.close();
+        } // close
+    } // Union
+
+    /************************************************************************************
+     * Pass on the tuples of the lhs input not produced by the rhs input, which is
+     * loaded into a hash set when the operator is opened.
+     */
+    private static class Minus implements Operator {
+        private final Operator input1, input2;
+        private Set<KeyType> rhs;
+
+        Minus(Operator _input1, Operator _input2) {
+            input1 = _input1;
+            input2 = _input2;
+        } // constructor
+
+        public void open() {
+            rhs = new HashSet<>();
+            input2.open();
+            for (Comparable[] t = input2.next(); t != null; t = input2.next()) rhs.add(new KeyType(t));
+            input2.close();
+            input1.open();
+        } // open
+
+        public Comparable[] next() {
+            for (Comparable[] t = input1.next(); t != null; t = input1.next()) {
+                if (!rhs.contains(new KeyType(t))) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close() {
+            rhs = null;
+            input1.close();
+        } // close
+    } // Minus
+
+    /************************************************************************************
+     * Pass on the first n tuples of the input, then stop pulling from it.
+     */
+    private static class Limit implements Operator {
+        private final Operator input;
+        private final int n;
+        private int count;
+
+        Limit(Operator _input, int _n) {
+            input = _input;
+            n = _n;
+        } // constructor
+
+        public void open() {
+            count = 0;
+            input.open();
+        } // open
+
+        public Comparable[] next() {
+            if (count >= n) return null;
+            Comparable[] t = input.next();
+            if (t != null) count++;
+            return t;
+        } // next
+
+        public void close() {
+            input.close();
+        } // close
+    } // Limit
+
+    /************************************************************************************
+     * Pass on the first n tuples of the input in the given order, found by draining the
+     * input into a bounded heap when the operator is opened.
+     */
+    private static class TopK implements Operator {
+        private final Operator input;
+        private final int n;
+        private final Comparator<Comparable[]> order;
+        private Iterator<Comparable[]> result;
+
+        TopK(Operator _input, int _n, Comparator<Comparable[]> _order) {
+            input = _input;
+            n = _n;
+            order = _order;
+        } // constructor
+
+        public void open() {
+            BoundedHeap heap = new BoundedHeap(Math.max(0, n), order);
+            input.open();
+            if (n > 0) {
+                for (Comparable[] t = input.next(); t != null; t = input.next()) heap.offer(t);
+            } // if
+            input.close();
+            result = heap.sorted().iterator();
+        } // open
+
+        public Comparable[] next() {
+            return result.hasNext() ? result.next() : null;
+        } // next
+
+        public void close() {
+            result = null;
+        } // close
+    } // TopK
+
+} // Query class
@@ -0,0 +1,24 @@
+/****************************************************************************************
+ * @file  RangeIndex.java
+ */
+
+import java.util.SortedMap;
+
+/****************************************************************************************
+ * The RangeIndex interface is implemented by primary indices that are not NavigableMaps
+ * but can still find the entries whose keys lie in a range without a full scan.
+ */
+public interface RangeIndex
+{
+    /*************************************************************************************
+     * Return the entries whose keys lie in the given range, in key order.
+     * @param from      the low end of the range (null for unbounded)
+     * @param fromIncl  whether from is included
+     * @param to        the high end of the range (null for unbounded)
+     * @param toIncl    whether to is included
+     * @return  the entries in the range
+     */
+    SortedMap <KeyType, Comparable []> range (KeyType from, boolean fromIncl, KeyType to, boolean toIncl);
+
+} // RangeIndex interface
+
@@ -0,0 +1,105 @@
+/****************************************************************************************
+ * @file  RowCodec.java
+ */
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/****************************************************************************************
+ * The RowCodec class encodes the tuples of a table to bytes and back, column by column
+ * according to the domains: Integer (4 bytes), Long (8), Short (2), Byte (1), Character
+ * (2), Double (8), Float (4) and String (a 4-byte length then UTF-8 bytes).  Values may
+ * not be null.  Buffers use the ByteBuffer default (big-endian) byte order.
+ */
+public class RowCodec
+{
+    /** The column kinds
+     */
+    private static final int INT = 0, LONG = 1, SHORT = 2, BYTE = 3, CHAR = 4, DOUBLE = 5,
+                             FLOAT = 6, STRING = 7;
+
+    /** The kind of each column
+     */
+    private final int [] kind;
+
+    /*************************************************************************************
+     * Construct a codec for tuples with the given domains.
+     * @param domain  the domain of each column
+     * @throws IllegalArgumentException if a domain is not supported
+     */
+    public RowCodec (Class [] domain)
+    {
+        kind = new int [domain.length];
+        for (int j = 0; j < domain.length; j++) {
+            Class c = domain [j];
+            if      (c == Integer.class)   kind [j] = INT;
+            else if (c == Long.class)      kind [j] = LONG;
+            else if (c == Short.class)     kind [j] = SHORT;
+            else if (c == Byte.class)      kind [j] = BYTE;
+            else if (c == Character.class) kind [j] = CHAR;
+            else if (c == Double.class)    kind [j] = DOUBLE;
+            else if (c == Float.class)     kind [j] = FLOAT;
+            else if (c == String.class)    kind [j] = STRING;
+            else throw new IllegalArgumentException ("unsupported domain " + c.getName ());
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Encode the tuple at the buffer's position, advancing it.
+     * @param t    the tuple (values must be non-null and from the column domains)
+     * @param buf  the buffer to write to
+     * @throws BufferOverflowException if the buffer has too little room
+     */
+    public void encode (Comparable [] t, ByteBuffer buf)
+    {
+        for (int j = 0; j < kind.length; j++) {
+            switch (kind [j]) {
+            case INT:    buf.putInt ((Integer) t [j]);         break;
+            case LONG:   buf.putLong ((Long) t [j]);           break;
+            case SHORT:  buf.putShort ((Short) t [j]);         break;
+            case BYTE:   buf.put ((Byte) t [j]);               break;
+            case CHAR:   buf.putChar ((Character) t [j]);      break;
+            case DOUBLE: buf.putDouble ((Double) t [j]);       break;
+            case FLOAT:  buf.putFloat ((Float) t [j]);         break;
+            default:
+                byte [] b = ((String) t [j]).getBytes (StandardCharsets.UTF_8);
+                buf.putInt (b.length);
+                buf.put (b);
+            } // switch
+        } // for
+    } // encode
+
+    /*************************************************************************************
+     * Decode the tuple starting at the given absolute position of the buffer (the
+     * buffer's own position is not changed, so a shared buffer may be read by many
+     * threads).
+     * @param buf  the buffer to read from
+     * @param pos  the position of the encoded tuple
+     * @return  the tuple
+     */
+    public Comparable [] decode (ByteBuffer buf, int pos)
+    {
+        Comparable [] t = new Comparable [kind.length];
+        for (int j = 0; j < kind.length; j++) {
+            switch (kind [j]) {
+            case INT:    t [j] = buf.getInt (pos);     pos += 4; break;
+            case LONG:   t [j] = buf.getLong (pos);    pos += 8; break;
+            case SHORT:  t [j] = buf.getShort (pos);   pos += 2; break;
+            case BYTE:   t [j] = buf.get (pos);        pos += 1; break;
+            case CHAR:   t [j] = buf.getChar (pos);    pos += 2; break;
+            case DOUBLE: t [j] = buf.getDouble (pos);  pos += 8; break;
+            case FLOAT:  t [j] = buf.getFloat (pos);   pos += 4; break;
+            default:
+                int len = buf.getInt (pos);
+                byte [] b = new byte [len];
+                for (int k = 0; k < len; k++) b [k] = buf.get (pos + 4 + k);
+                t [j] = new String (b, StandardCharsets.UTF_8);
+                pos += 4 + len;
+            } // switch
+        } // for
+        return t;
+    } // decode
+
+} // RowCodec class
+
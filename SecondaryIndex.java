@@ -0,0 +1,109 @@
+/****************************************************************************************
+ * @file  SecondaryIndex.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The SecondaryIndex class maps the values of a set of (usually non-key) attributes of a
+ * table to the tuples holding them.  A unique index rejects a second tuple with the same
+ * values.  The owning Table keeps the index up to date as tuples are inserted.
+ */
+class SecondaryIndex
+{
+    /** The indexed attribute names
+     */
+    final String [] attrs;
+
+    /** The column positions of the indexed attributes
+     */
+    final int [] cols;
+
+    /** Whether each indexed value may occur in at most one tuple
+     */
+    final boolean unique;
+
+    /** Map from indexed value to the tuples holding it (in insertion order)
+     */
+    private final Map <KeyType, List <Comparable []>> map = new HashMap <> ();
+
+    /*************************************************************************************
+     * Construct an empty secondary index.
+     * @param _attrs   the indexed attribute names
+     * @param _cols    the column positions of the indexed attributes
+     * @param _unique  whether the indexed values must be unique
+     */
+    SecondaryIndex (String [] _attrs, int [] _cols, boolean _unique)
+    {
+        attrs  = _attrs;
+        cols   = _cols;
+        unique = _unique;
+    } // constructor
+
+    /*************************************************************************************
+     * Extract the indexed values from tuple t.
+     * @param t  the tuple
+     * @return  the indexed values as a key
+     */
+    KeyType keyOf (Comparable [] t)
+    {
+        Comparable [] keyVal = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) keyVal [j] = t [cols [j]];
+        return KeyType.of (keyVal);
+    } // keyOf
+
+    /*************************************************************************************
+     * Determine whether tuple t may be added without violating uniqueness.
+     * @param t  the tuple
+     * @return  whether t may be added
+     */
+    boolean canAdd (Comparable [] t)
+    {
+        return ! unique || ! map.containsKey (keyOf (t));
+    } // canAdd
+
+    /*************************************************************************************
+     * Add tuple t to the index.
+     * @param t  the tuple
+     */
+    void add (Comparable [] t)
+    {
+        KeyType k = keyOf (t);
+        List <Comparable []> bucket = map.get (k);
+        if (bucket == null) {
+            bucket = new ArrayList <> (1);
+            map.put (k, bucket);
+        } // if
+        bucket.add (t);
+    } // add
+
+    /*************************************************************************************
+     * Return the tuples holding the given indexed values.
+     * @param k  the indexed values (in the order of attrs)
+     * @return  the matching tuples, or an empty list
+     */
+    List <Comparable []> get (KeyType k)
+    {
+        List <Comparable []> bucket = map.get (k);
+        return (bucket == null) ? Collections.<Comparable []> emptyList () : bucket;
+    } // get
+
+    /*************************************************************************************
+     * Determine whether this index covers exactly the given attributes (in any order).
+     * If so, return for each indexed attribute its position in the given attributes.
+     * @param column  the attribute names
+     * @return  the positions of the indexed attributes in column, or null
+     */
+    int [] order (String [] column)
+    {
+        if (column.length != attrs.length) return null;
+        int [] pos = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) {
+            pos [j] = Arrays.asList (column).indexOf (attrs [j]);
+            if (pos [j] < 0) return null;
+        } // for
+        return pos;
+    } // order
+
+} // SecondaryIndex class
+
@@ -0,0 +1,309 @@
+/****************************************************************************************
+ * @file  SpillFile.java
+ */
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/****************************************************************************************
+ * The SpillFile class holds the pieces shared by the operators that spill tuples to
+ * temporary files when they exceed a memory budget (ExternalSorter, HybridHashJoin).  A
+ * spill file is a sequence of records, each an int length followed by a tuple encoded by
+ * a RowCodec.  A Writer appends records through a buffer; a Reader reads them back in
+ * order; and a finished file may be mapped into memory as a read-only list that decodes
+ * tuples on access, so a result larger than the heap can still be returned as a table.
+ */
+public class SpillFile
+{
+    /** The default size of the write and read buffers
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /** The maximum size of one mapped segment (a mapping is limited to 2 GB)
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /** The number of tuples sampled to estimate the size of a tuple
+     */
+    private static final int SAMPLE = 256;
+
+    /*************************************************************************************
+     * Return an estimate of the heap bytes per tuple, from a sample of the tuples.
+     * @param rows  the tuples
+     * @return  the estimated bytes per tuple (at least 1)
+     */
+    public static long estimate (List <Comparable []> rows)
+    {
+        int n = rows.size ();
+        if (n == 0) return 1;
+        int m = Math.min (n, SAMPLE);
+        long total = 0;
+        for (int s = 0; s < m; s++) {
+            Comparable [] t = rows.get ((int) ((long) n * s / m));
+            total += 16 + 8L * t.length;                                   // array and references
+            for (Comparable v : t) {
+                if (v instanceof String)                           total += 48 + ((String) v).length ();
+                else if (v instanceof Long || v instanceof Double) total += 24;
+                else                                               total += 16;
+            } // for
+        } // for
+        return Math.max (1, total / m);
+    } // estimate
+
+    /*************************************************************************************
+     * Return whether every domain can be encoded by a RowCodec (and so spilled).
+     * @param domain  the domains
+     * @return  whether tuples of these domains can be spilled
+     */
+    public static boolean spillable (Class [] domain)
+    {
+        try {
+            new RowCodec (domain);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        } // try
+    } // spillable
+
+    /*************************************************************************************
+     * Appends tuples to a spill file, optionally recording where each one starts so the
+     * file can be mapped as a list.
+     */
+    public static class Writer
+            implements AutoCloseable
+    {
+        private final FileChannel ch;
+        private final RowCodec codec;
+        private ByteBuffer buf;
+        private long pos = 0;                          // file position of buf [0]
+        private long [] offsets;
+        private int count = 0;
+
+        /*********************************************************************************
+         * Open a writer on the given (new or empty) file.
+         * @param file        the file
+         * @param _codec      the codec encoding the tuples
+         * @param bufferSize  the size of the write buffer
+         * @param mappable    whether to record offsets for map
+         * @throws IOException if the file cannot be opened
+         */
+        public Writer (Path file, RowCodec _codec, int bufferSize, boolean mappable) throws IOException
+        {
+            ch      = FileChannel.open (file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            codec   = _codec;
+            buf     = ByteBuffer.allocate (bufferSize);
+            offsets = mappable ? new long [1024] : null;
+        } // constructor
+
+        /*********************************************************************************
+         * Append a tuple.
+         * @param t  the tuple
+         * @throws IOException if the file cannot be written
+         */
+        public void write (Comparable [] t) throws IOException
+        {
+            if (buf.remaining () < 4) flush ();
+            int start = buf.position ();
+            for ( ; ; ) {
+                try {
+                    buf.position (start + 4);
+                    codec.encode (t, buf);
+                    break;
+                } catch (BufferOverflowException ex) {
+                    buf.position (start);
+                    if (start > 0) {
+                        flush ();
+                        start = 0;
+                    } else {
+                        buf = ByteBuffer.allocate (2 * buf.capacity ());  // an oversized tuple
+                    } // if
+                } // try
+            } // for
+            buf.putInt (start, buf.position () - start - 4);
+            if (offsets != null) {
+                if (count == offsets.length) offsets = Arrays.copyOf (offsets, 2 * count);
+                offsets [count] = pos + start + 4;
+            } // if
+            count++;
+        } // write
+
+        /*********************************************************************************
+         * Return the number of tuples written.
+         * @return  the tuple count
+         */
+        public int count ()
+        {
+            return count;
+        } // count
+
+        /*********************************************************************************
+         * Write out the buffer and map the file as a read-only list of its tuples.  The
+         * mapping stays valid after the writer is closed and the file deleted.
+         * @return  the tuples written
+         * @throws IOException if the file cannot be written or mapped
+         */
+        public List <Comparable []> map () throws IOException
+        {
+            if (offsets == null) throw new IllegalStateException ("writer does not record offsets");
+            flush ();
+            return new Mapped (ch, codec, offsets, count);
+        } // map
+
+        /*********************************************************************************
+         * Write out the buffer and close the file.
+         * @throws IOException if the file cannot be written
+         */
+        public void close () throws IOException
+        {
+            try {
+                flush ();
+            } finally {
+                ch.close ();
+            } // try
+        } // close
+
+        private void flush () throws IOException
+        {
+            buf.flip ();
+            while (buf.hasRemaining ()) pos += ch.write (buf, pos);
+            buf.clear ();
+        } // flush
+    } // Writer class
+
+    /*************************************************************************************
+     * Reads the tuples of a spill file in order.
+     */
+    public static class Reader
+            implements AutoCloseable
+    {
+        private final FileChannel ch;
+        private final RowCodec codec;
+        private ByteBuffer buf;
+        private long pos = 0;                          // file position of the next read
+
+        /*********************************************************************************
+         * Open a reader on the given spill file.
+         * @param file        the file
+         * @param _codec      the codec decoding the tuples
+         * @param bufferSize  the size of the read buffer
+         * @throws IOException if the file cannot be opened
+         */
+        public Reader (Path file, RowCodec _codec, int bufferSize) throws IOException
+        {
+            ch    = FileChannel.open (file, StandardOpenOption.READ);
+            codec = _codec;
+            buf   = ByteBuffer.allocate (bufferSize);
+            buf.flip ();                               // empty
+        } // constructor
+
+        /*********************************************************************************
+         * Return the next tuple, or null at the end of the file.
+         * @return  the next tuple or null
+         * @throws IOException if the file cannot be read or is truncated
+         */
+        public Comparable [] next () throws IOException
+        {
+            if (! fill (4)) return null;
+            int len = buf.getInt (buf.position ());
+            if (! fill (4 + len)) throw new IOException ("spill file truncated");
+            Comparable [] t = codec.decode (buf, buf.position () + 4);
+            buf.position (buf.position () + 4 + len);
+            return t;
+        } // next
+
+        /*********************************************************************************
+         * Close the file.
+         * @throws IOException if the file cannot be closed
+         */
+        public void close () throws IOException
+        {
+            ch.close ();
+        } // close
+
+        private boolean fill (int need) throws IOException
+        {
+            if (buf.remaining () >= need) return true;
+            if (need > buf.capacity ()) {
+                ByteBuffer bigger = ByteBuffer.allocate (Math.max (need, 2 * buf.capacity ()));
+                bigger.put (buf).flip ();
+                buf = bigger;
+            } // if
+            buf.compact ();
+            while (buf.position () < need) {
+                int n = ch.read (buf, pos);
+                if (n < 0) break;
+                pos += n;
+            } // while
+            buf.flip ();
+            return buf.remaining () >= need;
+        } // fill
+    } // Reader class
+
+    /*************************************************************************************
+     * The tuples of a spill file, mapped into memory and decoded on access.
+     */
+    private static class Mapped
+            extends AbstractList <Comparable []>
+            implements RandomAccess
+    {
+        private final RowCodec codec;
+        private final long [] offsets;
+        private final int size;
+        private final int [] segFirst;                // the first tuple of each segment
+        private final long [] segStart;               // the file offset of each segment
+        private final MappedByteBuffer [] segment;
+
+        Mapped (FileChannel ch, RowCodec _codec, long [] _offsets, int _size) throws IOException
+        {
+            codec   = _codec;
+            offsets = _offsets;
+            size    = _size;
+            List <Integer> first = new ArrayList <> ();
+            List <Long> start = new ArrayList <> ();
+            List <MappedByteBuffer> segs = new ArrayList <> ();
+            long fileSize = ch.size ();
+            for (int i = 0; i < size; ) {                                  // records never straddle segments
+                long begin = offsets [i] - 4;
+                int j = i + 1;                                             // tuples [i, j) in this segment
+                while (j < size && end (j, fileSize) - begin <= SEGMENT_SIZE) j++;
+                first.add (i);
+                start.add (begin);
+                segs.add (ch.map (FileChannel.MapMode.READ_ONLY, begin, end (j - 1, fileSize) - begin));
+                i = j;
+            } // for
+            segFirst = new int [first.size ()];
+            segStart = new long [start.size ()];
+            for (int s = 0; s < segFirst.length; s++) {
+                segFirst [s] = first.get (s);
+                segStart [s] = start.get (s);
+            } // for
+            segment = segs.toArray (new MappedByteBuffer [0]);
+        } // constructor
+
+        private long end (int i, long fileSize)                           // the end of tuple i's record
+        {
+            return (i + 1 < size) ? offsets [i + 1] - 4 : fileSize;
+        } // end
+
+        public Comparable [] get (int i)
+        {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("index " + i + ", size " + size);
+            int s = Arrays.binarySearch (segFirst, i);
+            if (s < 0) s = -s - 2;                                         // the segment starting before i
+            return codec.decode (segment [s], (int) (offsets [i] - segStart [s]));
+        } // get
+
+        public int size ()
+        {
+            return size;
+        } // size
+    } // Mapped class
+
+} // SpillFile class
+
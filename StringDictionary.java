@@ -0,0 +1,81 @@
+/****************************************************************************************
+ * @file  StringDictionary.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The StringDictionary class assigns small integer codes to distinct strings (in order of
+ * first appearance), so a column of strings can be stored as an int array and compared
+ * by code.  Each distinct string is stored once.
+ */
+public class StringDictionary
+{
+    /** Map from string to its code
+     */
+    private final Map <String, Integer> codes = new HashMap <> ();
+
+    /** The strings, indexed by code
+     */
+    private final List <String> strings = new ArrayList <> ();
+
+    /*************************************************************************************
+     * Return the code for the given string, assigning a new code if it is not yet in the
+     * dictionary.
+     * @param s  the string to encode
+     * @return  the code for s
+     */
+    public int encode (String s)
+    {
+        Integer code = codes.get (s);
+        if (code == null) {
+            code = strings.size ();
+            codes.put (s, code);
+            strings.add (s);
+        } // if
+        return code;
+    } // encode
+
+    /*************************************************************************************
+     * Return the code for the given string without adding it.
+     * @param s  the string to look up
+     * @return  the code for s, or -1 if s is not in the dictionary
+     */
+    public int lookup (String s)
+    {
+        Integer code = codes.get (s);
+        return (code == null) ? -1 : code;
+    } // lookup
+
+    /*************************************************************************************
+     * Return the dictionary's own instance of the given string, adding it if needed.
+     * Strings interned by the same dictionary are equal exactly when they are identical.
+     * @param s  the string to intern
+     * @return  the canonical instance of s
+     */
+    public String intern (String s)
+    {
+        return strings.get (encode (s));
+    } // intern
+
+    /*************************************************************************************
+     * Return the string with the given code.
+     * @param code  the code to decode
+     * @return  the string
+     */
+    public String decode (int code)
+    {
+        return strings.get (code);
+    } // decode
+
+    /*************************************************************************************
+     * Return the number of distinct strings in the dictionary.
+     * @return  the size of the dictionary
+     */
+    public int size ()
+    {
+        return strings.size ();
+    } // size
+
+} // StringDictionary class
+
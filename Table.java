@@ -1,4 +1,19 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.smartcardio.CommandAPDU;
 
@@ -14,7 +29,7 @@ public class Table {
     /**
      * Counter for naming temporary tables.
      */
-    private static int count = 0;
+    private static final AtomicInteger count = new AtomicInteger();
 
     /**
      * Table name.
@@ -35,9 +50,10 @@ public class Table {
     private final Class[] domain;
 
     /**
-     * Collection of tuples (data storage).
+     * Collection of tuples (data storage).  Replaced by checkpoint for a table opened
+     * from a file.
      */
-    public final List<Comparable[]> tuples;
+    public List<Comparable[]> tuples;
 
     /**
      * Primary key.
@@ -45,29 +61,165 @@ public class Table {
     private final String[] key;
 
     /**
-     * Index into tuples (maps key to tuple number).
+     * Index into tuples (maps key to tuple number).  Replaced along with tuples.
      */
-    private final Map<KeyType, Comparable[]> index;
+    private Map<KeyType, Comparable[]> index;
 
     /**
-     * The supported map types.
+     * Secondary indices on other attributes (kept up to date by insert).
      */
-    private enum MapType {
-        TREE_MAP
+    private final List<SecondaryIndex> secondary = new ArrayList<>();
+
+    /**
+     * Column positions of the primary key (resolved on first use).
+     */
+    private int[] keyCols;
+
+    /**
+     * Dictionaries interning the values of String columns (null until one is created).
+     */
+    private StringDictionary[] dict;
+
+    /**
+     * The write-ahead log, file and checkpoint lock of a table opened from a file (null
+     * otherwise).  Inserts hold the read lock; a checkpoint holds the write lock.
+     */
+    private WriteAheadLog log;
+    private Path file;
+    private ReentrantReadWriteLock gate;
+
+    /**
+     * Whether a tuple has been inserted with the same key as an earlier tuple.
+     */
+    private volatile boolean dupKeys = false;
+
+    /**
+     * Whether the table is a snapshot's read-only view (see snapshot).
+     */
+    private boolean readOnly = false;
+
+    /**
+     * The supported map types: TREE_MAP (red-black tree), HASH_MAP (point lookups only),
+     * BPTREE_MAP (B+Tree with linked leaves) and LINHASH_MAP (Linear Hashing).
+     */
+    public enum MapType {
+        TREE_MAP, HASH_MAP, BPTREE_MAP, LINHASH_MAP
     }
 
     /**
-     * The map type to be used for indices.  Change as needed.
+     * The map type to be used for indices when none is specified.  Change as needed.
      */
     private static final MapType mType = MapType.TREE_MAP;
 
+    /**
+     * The supported storage types: ROW stores each tuple as a Comparable array; COLUMNAR
+     * stores each column as a primitive (or dictionary-coded) vector in a ColumnStore,
+     * with tuples still available as row views.  A COLUMNAR table keeps no primary
+     * index; key selects scan the key columns instead.  CONCURRENT stores tuples in an
+     * AppendOnlyList and indexes them in a VersionedIndex (whatever the MapType), so
+     * many threads may insert and select at once without a global lock, and readers may
+     * take consistent snapshots (see snapshot).
+     */
+    public enum StorageType {
+        ROW, COLUMNAR, CONCURRENT
+    }
+
+    /**
+     * The supported join algorithms.  PARALLEL_HASH hash-partitions both inputs on the
+     * join columns and hash joins the partitions independently on the fork-join pool.
+     * HYBRID_HASH hash joins within JOIN_BUDGET, spilling partitions of both inputs to
+     * temporary files when the smaller input does not fit (see HybridHashJoin).
+     */
+    public enum JoinType {
+        NESTED_LOOP, HASH, INDEX, PARALLEL_HASH, HYBRID_HASH
+    }
+
+    /**
+     * The join algorithm used when none is specified.  Change as needed.
+     * INDEX falls back to HASH when the rhs index does not cover the join columns.
+     */
+    private static final JoinType jType = JoinType.INDEX;
+
+    /**
+     * The supported algorithms for the set operators (union and minus).  PARALLEL_HASH
+     * hash-partitions both inputs and processes the partitions on the fork-join pool.
+     */
+    public enum SetOpType {
+        HASH, SORT_MERGE, PARALLEL_HASH
+    }
+
+    /**
+     * The set operator algorithm used when none is specified.  Change as needed.
+     */
+    private static final SetOpType sType = SetOpType.HASH;
+
+    /**
+     * The false-positive rate of the Bloom filters that let joins reject tuples of the
+     * larger input early (see BloomFilter); 0 disables them.  Change as needed.
+     */
+    private static final double BLOOM_FPP = 0.01;
+
+    /**
+     * The join algorithms that reduce their inputs with a Bloom filter first.  An index
+     * join probes an existing index directly, so it only uses one when it falls back to a
+     * hash join.  Change as needed.
+     */
+    private static final EnumSet<JoinType> BLOOM_JOINS =
+            EnumSet.of(JoinType.HASH, JoinType.PARALLEL_HASH, JoinType.HYBRID_HASH);
+
+    /**
+     * The flush policy of the write-ahead log when none is specified.  Change as needed.
+     */
+    private static final WriteAheadLog.FlushPolicy fPolicy = WriteAheadLog.FlushPolicy.SYNC;
+
+    /**
+     * The interval in milliseconds between log forces under the INTERVAL flush policy.
+     */
+    private static final long FLUSH_MILLIS = 20;
+
+    /**
+     * The size in bytes the write-ahead log may reach before a checkpoint.
+     */
+    static final long CHECKPOINT_BYTES = 64L << 20;
+
+    /**
+     * The memory budget in bytes for sorting in orderBy; larger inputs are sorted
+     * externally.  Change as needed.
+     */
+    private static final long SORT_BUDGET = 64L << 20;
+
+    /**
+     * The memory budget in bytes for the hash tables of a HYBRID_HASH join; larger
+     * inputs are partitioned and spilled.  Change as needed.
+     */
+    private static final long JOIN_BUDGET = 64L << 20;
+
+    /**
+     * The number of tuples each fork-join task scans without splitting further.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The number of hash partitions used by the parallel operators.
+     */
+    private static final int PARTITIONS = 4 * ForkJoinPool.getCommonPoolParallelism();
+
     /************************************************************************************
      * Make a map (index) given the MapType.
+     *
+     * @param type  the type of map to make
+     * @return an empty map of the given type
      */
-    private static Map<KeyType, Comparable[]> makeMap() {
-        switch (mType) {
+    private static Map<KeyType, Comparable[]> makeMap(MapType type) {
+        switch (type) {
             case TREE_MAP:
                 return new TreeMap<>();
+            case HASH_MAP:
+                return new HashMap<>();
+            case BPTREE_MAP:
+                return new BpTreeMap<>();
+            case LINHASH_MAP:
+                return new LinHashMap<>();
             default:
                 return null;
         } // switch
@@ -86,12 +238,53 @@ public class Table {
      * @param _key        the primary key
      */
     public Table(String _name, String[] _attribute, Class[] _domain, String[] _key) {
+        this(_name, _attribute, _domain, _key, mType);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, indexed using a map of
+     * the given type.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _mType      the type of map to use for the primary index
+     */
+    public Table(String _name, String[] _attribute, Class[] _domain, String[] _key, MapType _mType) {
+        this(_name, _attribute, _domain, _key, _mType, StorageType.ROW);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, indexed using a map of
+     * the given type and stored using the given storage type.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _mType      the type of map to use for the primary index
+     * @param _sType      the type of storage to use for the tuples
+     */
+    public Table(String _name, String[] _attribute, Class[] _domain, String[] _key, MapType _mType,
+                 StorageType _sType) {
         name = _name;
         attribute = _attribute;
         domain = _domain;
         key = _key;
-        tuples = new ArrayList<>();
-        index = makeMap();
+        switch (_sType) {
+            case COLUMNAR:
+                tuples = new ColumnStore(_domain);
+                index = makeMap(_mType);
+                break;
+            case CONCURRENT:
+                tuples = new AppendOnlyList();
+                index = new VersionedIndex((AppendOnlyList) tuples);
+                break;
+            default:
+                tuples = new ArrayList<>();
+                index = makeMap(_mType);
+        } // switch
 
     } // primary constructor
 
@@ -110,7 +303,24 @@ public class Table {
         domain = _domain;
         key = _key;
         tuples = _tuples;
-        index = makeMap();
+        index = makeMap(mType);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table with the schema of table base and the given tuples and index
+     * (used for snapshots and for tables opened from files).
+     *
+     * @param base     the table being viewed
+     * @param _tuples  the tuples visible in the view
+     * @param _index   the index as of the view
+     */
+    private Table(Table base, List<Comparable[]> _tuples, Map<KeyType, Comparable[]> _index) {
+        name = base.name;
+        attribute = base.attribute;
+        domain = base.domain;
+        key = base.key;
+        tuples = _tuples;
+        index = _index;
     } // constructor
 
     /************************************************************************************
@@ -126,6 +336,38 @@ public class Table {
 //        out.println("DDL> create table " + name + " (" + attributes + ")");
     } // constructor
 
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, indexed using a map
+     * of the given type.
+     *
+     * #usage new Table ("movie", "title year", "String Integer", "title year", MapType.BPTREE_MAP)
+     *
+     * @param _name       the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _mType      the type of map to use for the primary index
+     */
+    public Table(String _name, String attributes, String domains, String _key, MapType _mType) {
+        this(_name, attributes.split(" "), findClass(domains.split(" ")), _key.split(" "), _mType);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, stored using the
+     * given storage type.
+     *
+     * #usage new Table ("movie", "title year", "String Integer", "title year", StorageType.COLUMNAR)
+     *
+     * @param _name       the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _sType      the type of storage to use for the tuples
+     */
+    public Table(String _name, String attributes, String domains, String _key, StorageType _sType) {
+        this(_name, attributes.split(" "), findClass(domains.split(" ")), _key.split(" "), mType, _sType);
+    } // constructor
+
     //----------------------------------------------------------------------------------
     // Public Methods
     //----------------------------------------------------------------------------------
@@ -135,8 +377,8 @@ public class Table {
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Tuples from both tables
      * are compared requiring attributes1 to equal attributes2.  Disambiguate attribute
-     * names by append "2" to the end of any duplicate attribute name.  Implement using
-     * a Nested Loop Join algorithm.
+     * names by append "2" to the end of any duplicate attribute name.  Uses the default
+     * join algorithm (jType).
      *
      * #usage movie.join ("studioNo", "name", studio)
      *
@@ -146,30 +388,35 @@ public class Table {
      * @return a table with tuples satisfying the equality predicate
      */
     public Table equiJoin(String attributes1, String attributes2, Table table2) {
+        return equiJoin(attributes1, attributes2, table2, jType);
+    } // equiJoin
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join" using the given join
+     * algorithm.  An Index Join probes the primary index of table2 when attributes2
+     * form its key, a Hash Join builds a hash table on the smaller input and probes it
+     * with the other (a Hybrid Hash Join within a memory budget, spilling partitions of
+     * both inputs to disk), and a Nested Loop Join compares every pair of tuples.
+     *
+     * #usage movie.join ("studioNo", "name", studio, JoinType.NESTED_LOOP)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @param type        the join algorithm to use
+     * @return a table with tuples satisfying the equality predicate, or null if the join failed
+     */
+    public Table equiJoin(String attributes1, String attributes2, Table table2, JoinType type) {
 //        out.println("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", " + table2.name + ")");
 
         String[] t_attrs = attributes1.split(" ");
         String[] u_attrs = attributes2.split(" ");
 
-        List<Comparable[]> rows = new ArrayList<>();
-
         // Join Operator Starts
         int[] cols1 = match(t_attrs);
         int[] cols2 = table2.match(u_attrs);
-        for (int i = 0; i < tuples.size(); i++) {    //for each rows in table1, compare it with
-            for (int j = 0; j < table2.tuples.size(); j++) {    //each rows in table2
-                boolean attrsValuesEqual = true;
-                for (int k = 0; k < cols1.length; k++) {    // compare with each attribute
-                    if (!tuples.get(i)[cols1[k]].equals(table2.tuples.get(j)[cols2[k]])) {
-                        attrsValuesEqual = false;
-                        break;
-                    }
-                }
-                if (attrsValuesEqual) {
-                    rows.add(ArrayUtil.concat(tuples.get(i), table2.tuples.get(j)));
-                }
-            }
-        }
+        List<Comparable[]> rows = join(cols1, table2, u_attrs, cols2, null, type);
+        if (rows == null) return null;
         for (int i = 0; i < cols2.length; i++) {
             if (table2.attribute[cols2[i]].equals(attribute[cols1[i]])) {
                 table2.attribute[cols2[i]] = table2.attribute[cols2[i]] + "2";
@@ -178,13 +425,16 @@ public class Table {
         // Join Operator Ends
 
 
-        return new Table(name + count++, ArrayUtil.concat(attribute, table2.attribute),
+        return new Table(tempName(name), ArrayUtil.concat(attribute, table2.attribute),
                 ArrayUtil.concat(domain, table2.domain), key, rows);
-    } // join
+    } // equiJoin
 
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
-     * Check whether the original key is included in the projection.
+     * Check whether the original key is included in the projection.  Duplicates are
+     * eliminated using a hash set of the projected values, unless the projection
+     * contains the whole key and the index shows the key is unique, in which case no
+     * duplicates can occur.
      *
      * #usage movie.project ("title year studioNo")
      *
@@ -192,149 +442,712 @@ public class Table {
      * @return a table of projected tuples
      */
     public Table project(String attributes) {
+        return project(attributes, false);
+    } // project
+
+    /************************************************************************************
+     * Project the tuples onto the given attributes, optionally in parallel.  The parallel
+     * projection extracts the attributes and hash-partitions the projected tuples in
+     * chunks on the fork-join pool, then eliminates duplicates within each partition
+     * independently.  Its output is ordered by partition rather than by input position.
+     *
+     * #usage movie.project ("title year studioNo", true)
+     *
+     * @param attributes  the attributes to project onto
+     * @param parallel    whether to project in parallel
+     * @return a table of projected tuples
+     */
+    public Table project(String attributes, boolean parallel) {
 //        out.println("RA> " + name + ".project (" + attributes + ")");
         String[] attrs = attributes.split(" ");
-        Class[] colDomain = extractDom(match(attrs), domain);
-        String[] newKey = (Arrays.asList(attrs).containsAll(Arrays.asList(key))) ? key : attrs;
+        int[] cols = match(attrs);
+        Class[] colDomain = extractDom(cols, domain);
+        boolean keyed = Arrays.asList(attrs).containsAll(Arrays.asList(key));
+        String[] newKey = keyed ? key : attrs;
 
         List<Comparable[]> rows = new ArrayList<>();
 
         //  T O   B E   I M P L E M E N T E D
-        for (int i = 0; i < tuples.size(); ++i) {
-            Comparable[] tuple = tuples.get(i);
-            // Comparable[] row = new Comparable[attrs.length];
-            // for (int j = 0; j < attrs.length; ++j) {
-            //     String attr = attrs[j];
-            //     int index = this.col(attr);
-            //     row[j] = tuple[index];
-            // }
-            int equal_count = 0;
-            Comparable[] row = this.extract(tuple, attrs);
-            for (int j = 0; j < rows.size(); j++){
-                Comparable[] prev = rows.get(j);
-                boolean equal_row = true;
-                for (int k = 0; k < row.length; k++) {
-                    if (!prev[k].equals(row[k])){
-                        equal_row = false;
-                        break;
+        boolean unique = keyed && indexComplete();
+        Set<KeyType> seen = unique ? null : new HashSet<KeyType>();
+        ColumnStore store = columns();
+        if (parallel && tuples.size() > CHUNK_SIZE) {
+            int[] all = new int[cols.length];
+            for (int j = 0; j < all.length; j++) all[j] = j;
+            final List<Comparable[]>[] parts = unique ? partition(tuples, null, cols, 1)
+                                                      : partition(tuples, all, cols, PARTITIONS);
+            List<Callable<List<Comparable[]>>> tasks = new ArrayList<>();
+            for (int p = 0; p < parts.length; p++) {
+                final List<Comparable[]> part = parts[p];
+                tasks.add(new Callable<List<Comparable[]>>() {
+                    public List<Comparable[]> call() {
+                        List<Comparable[]> result = new ArrayList<>();
+                        Set<KeyType> partSeen = new HashSet<>();
+                        for (Comparable[] row : part) {
+                            if (partSeen.add(new KeyType(row))) result.add(row);
+                        } // for
+                        return result;
                     }
-                }
-                if (equal_row){
-                    equal_count++;
-                    break;
-                }
-            }
-            if (equal_count == 0) rows.add(row);
+                });
+            } // for
+            rows = unique ? parts[0] : concat(invokeAll(tasks));
+            return new Table(tempName(name), attrs, colDomain, newKey, rows);
+        } // if
+        for (int i = 0; i < tuples.size(); ++i) {
+            Comparable[] row;
+            if (store != null) {
+                row = store.get(i, cols);    // read only the projected columns
+            } else {
+                Comparable[] tuple = tuples.get(i);
+                row = new Comparable[cols.length];
+                for (int j = 0; j < cols.length; j++) row[j] = tuple[cols[j]];
+            } // if
+            if (unique || seen.add(new KeyType(row))) rows.add(row);
         }
 
-        return new Table(name + count++, attrs, colDomain, newKey, rows);
+        return new Table(tempName(name), attrs, colDomain, newKey, rows);
     } // project
 
     /************************************************************************************
-     * Select the tuples satisfying the given key predicate (key = value).  Use an index
-     * (Map) to retrieve the tuple with the given key value.
+     * Project the tuples onto the given attributes, keeping the first limit distinct
+     * projected tuples.  The scan stops as soon as it has found them.
      *
-     * @param keyVal  the given key value
-     * @return a table with the tuple satisfying the key predicate
+     * #usage movie.project ("studioName", 5)
+     *
+     * @param attributes  the attributes to project onto
+     * @param limit       the maximum number of tuples to keep
+     * @return a table of at most limit projected tuples
      */
-    public Table select(KeyType keyVal) {
-//        out.println("RA> " + name + ".select (" + keyVal + ")");
+    public Table project(String attributes, int limit) {
+        String[] attrs = attributes.split(" ");
+        int[] cols = match(attrs);
+        Class[] colDomain = extractDom(cols, domain);
+        boolean keyed = Arrays.asList(attrs).containsAll(Arrays.asList(key));
+        boolean unique = keyed && indexComplete();
+        Set<KeyType> seen = unique ? null : new HashSet<KeyType>();
+        ColumnStore store = columns();
 
         List<Comparable[]> rows = new ArrayList<>();
+        for (int i = 0; i < tuples.size() && rows.size() < limit; i++) {
+            Comparable[] row;
+            if (store != null) {
+                row = store.get(i, cols);
+            } else {
+                Comparable[] tuple = tuples.get(i);
+                row = new Comparable[cols.length];
+                for (int j = 0; j < cols.length; j++) row[j] = tuple[cols[j]];
+            } // if
+            if (unique || seen.add(new KeyType(row))) rows.add(row);
+        } // for
+        return new Table(tempName(name), attrs, colDomain, keyed ? key : attrs, rows);
+    } // project
 
-        //  T O   B E  I M P L E M E N T E D
-        Comparable[] tup = index.get(keyVal);
-        if (tup != null) {
-            rows.add(tup);
-        }
-        //  I M P L E M E N T E D
-
-        return new Table(name + count++, attribute, domain, key, rows);
-    } // select
+    /************************************************************************************
+     * Group the tuples on the given attributes and compute the given aggregates for each
+     * group (see HashAggregator).  The result has the grouping attributes followed by one
+     * attribute per aggregate, named as written (e.g., "avg(length)"), and is keyed on the
+     * grouping attributes.  With no grouping attributes ("") the whole table is one group.
+     *
+     * #usage movie.groupBy ("studioName", "count(*)", "avg(length)", "max(year)")
+     *
+     * @param groupAttrs  the attributes to group on
+     * @param aggregates  the aggregates: count, sum, avg, min or max of an attribute
+     * @return a table with one tuple per group, or null if an aggregate is invalid
+     */
+    public Table groupBy(String groupAttrs, String... aggregates) {
+        return groupBy(groupAttrs, false, aggregates);
+    } // groupBy
 
     /************************************************************************************
-     * Union this table and table2.  Check that the two tables are compatible.
+     * Group and aggregate the tuples, optionally in parallel.  The parallel version splits
+     * the table into ranges, aggregates each range into a partial result on the fork-join
+     * pool, and merges the partial results in range order, so its output matches the
+     * sequential one (up to rounding of real sums).
      *
-     * #usage movie.union (show)
+     * #usage movie.groupBy ("studioName year", true, "count(*)", "sum(length)")
      *
-     * @param table2  the rhs table in the union operation
-     * @return a table representing the union
+     * @param groupAttrs  the attributes to group on
+     * @param parallel    whether to aggregate in parallel
+     * @param aggregates  the aggregates: count, sum, avg, min or max of an attribute
+     * @return a table with one tuple per group, or null if an aggregate is invalid
      */
-    public Table union(Table table2) {
-//        out.println("RA> " + name + ".union (" + table2.name + ")");
-        if (!compatible(table2)) return null;
+    public Table groupBy(String groupAttrs, boolean parallel, final String... aggregates) {
+        final String[] attrs = groupAttrs.trim().isEmpty() ? new String[0] : groupAttrs.trim().split(" ");
+        for (String attr : attrs) {
+            if (!Arrays.asList(attribute).contains(attr)) {
+                out.println("groupBy ERROR: no attribute " + attr + " in " + name);
+                return null;
+            } // if
+        } // for
+        final int[] cols = match(attrs);
+        HashAggregator agg;
+        try {
+            agg = new HashAggregator(attribute, domain, cols, aggregates);
+        } catch (IllegalArgumentException ex) {
+            out.println("groupBy ERROR: " + ex.getMessage());
+            return null;
+        } // try
+
+        final List<Comparable[]> rows = tuples;
+        final int size = rows.size();
+        if (parallel && size > CHUNK_SIZE) {
+            final int n = Math.min(PARTITIONS, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            List<Callable<HashAggregator>> tasks = new ArrayList<>();
+            for (int p = 0; p < n; p++) {
+                final int lo = (int) ((long) size * p / n), hi = (int) ((long) size * (p + 1) / n);
+                tasks.add(new Callable<HashAggregator>() {
+                    public HashAggregator call() {
+                        HashAggregator partial = new HashAggregator(attribute, domain, cols, aggregates);
+                        partial.accumulate(rows, lo, hi);
+                        return partial;
+                    }
+                });
+            } // for
+            List<HashAggregator> partials = invokeAll(tasks);
+            agg = partials.get(0);
+            for (int p = 1; p < n; p++) agg.merge(partials.get(p));
+        } else {
+            agg.accumulate(rows, 0, size);
+        } // if
 
-        List<Comparable[]> rows = new ArrayList<>();
+        String[] names = new String[aggregates.length];
+        for (int a = 0; a < names.length; a++) names[a] = aggregates[a].replace(" ", "");
+        String[] newAttrs = Arrays.copyOf(attrs, attrs.length + names.length);
+        System.arraycopy(names, 0, newAttrs, attrs.length, names.length);
+        Class[] newDomain = Arrays.copyOf(extractDom(cols, domain), newAttrs.length);
+        System.arraycopy(agg.resultDomain(), 0, newDomain, attrs.length, names.length);
+        return new Table(tempName(name), newAttrs, newDomain, (attrs.length > 0) ? attrs : names, agg.result());
+    } // groupBy
 
-        //  T O   B E   I M P L E M E N T E D
-        rows.addAll(tuples);
+    /************************************************************************************
+     * Sort the tuples on the given attributes (the first attribute first) within the
+     * default memory budget.
+     *
+     * #usage movie.orderBy ("year title", true)
+     *
+     * @param attributes  the attributes to sort on
+     * @param asc         whether to sort in ascending (or else descending) order
+     * @return a table of the sorted tuples, or null if the sort failed
+     */
+    public Table orderBy(String attributes, boolean asc) {
+        return orderBy(attributes, asc, SORT_BUDGET);
+    } // orderBy
 
-        for (int i = 0; i < table2.tuples.size(); i++) {
-            Comparable[] row2 = table2.tuples.get(i);
-            boolean found = false;
-            for (int j = 0; j < tuples.size(); j++) {
-                Comparable[] row1 = tuples.get(j);
+    /************************************************************************************
+     * Sort the tuples on the given attributes within the given memory budget (see
+     * ExternalSorter).  Tuples that fit in the budget are sorted in memory in parallel;
+     * larger inputs are sorted in runs that are spilled to temporary files and merged,
+     * and the result is then read from a mapped file.  The sort is stable.
+     *
+     * #usage movie.orderBy ("length", false, 16L << 20)
+     *
+     * @param attributes  the attributes to sort on
+     * @param asc         whether to sort in ascending (or else descending) order
+     * @param budget      the memory budget in bytes
+     * @return a table of the sorted tuples, or null if the sort failed
+     */
+    public Table orderBy(String attributes, boolean asc, long budget) {
+        String[] attrs = attributes.split(" ");
+        for (String attr : attrs) {
+            if (!Arrays.asList(attribute).contains(attr)) {
+                out.println("orderBy ERROR: no attribute " + attr + " in " + name);
+                return null;
+            } // if
+        } // for
+        try {
+            List<Comparable[]> rows = new ExternalSorter(domain, rowOrder(match(attrs), asc), budget).sort(tuples);
+            return new Table(tempName(name), attribute, domain, key, rows);
+        } catch (IOException | IllegalArgumentException ex) {
+            out.println("orderBy ERROR: " + name + ": " + ex.getMessage());
+            return null;
+        } // try
+    } // orderBy
 
-                if (Arrays.deepEquals(row1, row2)) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                rows.add(row2);
-            }
-        }
-        // I M P L E M E N T E D
+    /************************************************************************************
+     * Return the first n tuples of this table (in storage order).
+     *
+     * #usage movie.limit (10)
+     *
+     * @param n  the maximum number of tuples
+     * @return a table of at most n tuples
+     */
+    public Table limit(int n) {
+        List<Comparable[]> rows = new ArrayList<>(tuples.subList(0, Math.max(0, Math.min(n, tuples.size()))));
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // limit
 
-        return new Table(name + count++, attribute, domain, key, rows);
-    } // union
+    /************************************************************************************
+     * Return the n tuples with the smallest values of the given attributes, in order.
+     *
+     * #usage movie.topK (10, "length")
+     *
+     * @param n           the number of tuples
+     * @param attributes  the attributes to order by
+     * @return a table of the first n tuples in order, or null for an unknown attribute
+     */
+    public Table topK(int n, String attributes) {
+        return topK(n, attributes, true);
+    } // topK
 
     /************************************************************************************
-     * Take the difference of this table and table2.  Check that the two tables are
-     * compatible.
+     * Return the first n tuples ordered on the given attributes, without sorting the
+     * table: one pass keeps the first n so far in a bounded heap (see BoundedHeap), which
+     * takes O(N log n) time and O(n) space.  The result equals orderBy followed by limit.
      *
-     * #usage movie.minus (show)
+     * #usage movie.topK (10, "length", false)
      *
-     * @param table2  The rhs table in the minus operation
-     * @return a table representing the difference
+     * @param n           the number of tuples
+     * @param attributes  the attributes to order by
+     * @param asc         whether to take the smallest (or else the largest) values
+     * @return a table of the first n tuples in order, or null for an unknown attribute
      */
-    public Table minus(Table table2) {
-//        out.println("RA> " + name + ".minus (" + table2.name + ")");
-        if (!compatible(table2)) return null;
+    public Table topK(int n, String attributes, boolean asc) {
+        String[] attrs = attributes.split(" ");
+        for (String attr : attrs) {
+            if (!Arrays.asList(attribute).contains(attr)) {
+                out.println("topK ERROR: no attribute " + attr + " in " + name);
+                return null;
+            } // if
+        } // for
+        BoundedHeap heap = new BoundedHeap(Math.max(0, n), rowOrder(match(attrs), asc));
+        for (int i = 0; i < tuples.size(); i++) heap.offer(tuples.get(i));
+        return new Table(tempName(name), attribute, domain, key, heap.sorted());
+    } // topK
+
+    /************************************************************************************
+     * Select the tuples satisfying the given key predicate (key = value).  Use an index
+     * (Map) to retrieve the tuple with the given key value.
+     *
+     * @param keyVal  the given key value
+     * @return a table with the tuple satisfying the key predicate
+     */
+    public Table select(KeyType keyVal) {
+//        out.println("RA> " + name + ".select (" + keyVal + ")");
 
         List<Comparable[]> rows = new ArrayList<>();
 
-        //  T O   B E   I M P L E M E N T E D
-        for (int i = 0; i < tuples.size(); i++) {
-            Comparable[] row1 = tuples.get(i);
-            boolean matched = false;
-            for (int j = 0; j < table2.tuples.size(); j++) {
-                Comparable[] row2 = table2.tuples.get(j);
-                if (Arrays.deepEquals(row1, row2)) {
-                    matched = true;
-                    break;
-                }
-            }
-            if (!matched) {
-                rows.add(row1);
+        //  T O   B E  I M P L E M E N T E D
+        ColumnStore store = columns();
+        if (store != null) {
+            for (int i : store.selectEqual(keyCols(), keyVal.values())) rows.add(store.get(i));
+        } else {
+            Comparable[] tup = index.get(keyVal);
+            if (tup != null) {
+                rows.add(tup);
             }
-        }
-        // I M P L E M E N T E D
+        } // if
+        //  I M P L E M E N T E D
 
-        return new Table(name + count++, attribute, domain, key, rows);
-    } // minus
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // select
 
     /************************************************************************************
-     * Join this table and table2 by performing an "natural join".  Tuples from both tables
-     * are compared requiring common attributes to be equal.  The duplicate column is also
-     * eliminated.
+     * Select the tuple with the given value of a single int (or long) key.
      *
-     * #usage movieStar.join (starsIn)
+     * #usage customer.select (42)
      *
-     * @param table2  the rhs table in the join operation
-     * @return a table with tuples satisfying the equality predicate
+     * @param keyVal  the given key value
+     * @return a table with the tuple satisfying the key predicate
+     */
+    public Table select(int keyVal) {
+        return select((long) keyVal);
+    } // select
+
+    /************************************************************************************
+     * Select the tuple with the given value of a single long (or int) key.
+     *
+     * #usage orders.select (42L)
+     *
+     * @param keyVal  the given key value
+     * @return a table with the tuple satisfying the key predicate
+     */
+    public Table select(long keyVal) {
+        List<Comparable[]> rows = new ArrayList<>(1);
+        Comparable[] tup = get(keyVal);
+        if (tup != null) rows.add(tup);
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Return the tuple with the given value of a single int (or long) key without
+     * allocating: the index is probed with a reusable per-thread key.
+     *
+     * #usage Comparable [] t = customer.get (42)
+     *
+     * @param keyVal  the given key value
+     * @return the tuple (the last inserted if keys repeat), or null if there is none
+     */
+    public Comparable[] get(int keyVal) {
+        return get((long) keyVal);
+    } // get
+
+    /************************************************************************************
+     * Return the tuple with the given value of a single long (or int) key without
+     * allocating (see get (int)).
+     *
+     * @param keyVal  the given key value
+     * @return the tuple (the last inserted if keys repeat), or null if there is none
+     */
+    public Comparable[] get(long keyVal) {
+        int[] cols = keyCols();
+        if (cols.length != 1) return null;
+        Class dom = domain[cols[0]];
+        if (dom == Long.class) return find(KeyType.probe(keyVal));
+        if (dom == Integer.class && (int) keyVal == keyVal) return find(KeyType.probe((int) keyVal));
+        return null;
+    } // get
+
+    /************************************************************************************
+     * Return the tuple with the given value of a single String key without allocating
+     * (see get (int)).
+     *
+     * #usage Comparable [] t = studio.get ("Fox")
+     *
+     * @param keyVal  the given key value
+     * @return the tuple (the last inserted if keys repeat), or null if there is none
+     */
+    public Comparable[] get(String keyVal) {
+        int[] cols = keyCols();
+        if (cols.length != 1 || domain[cols[0]] != String.class) return null;
+        return find(KeyType.probe(keyVal));
+    } // get
+
+    /************************************************************************************
+     * Select the tuples satisfying the given predicate by scanning the table.
+     *
+     * #usage movie.select (t -> t[1].equals (1977))
+     *
+     * @param predicate  the check condition for tuples
+     * @return a table with tuples satisfying the predicate
+     */
+    public Table select(PredicateMod<Comparable[]> predicate) {
+        return select(predicate, false);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples satisfying the given predicate by scanning the table, optionally
+     * in parallel.  The parallel scan splits the tuples into chunks that are filtered
+     * independently on the common fork-join pool; the chunk results are concatenated
+     * so tuples keep their original order.  The predicate must be thread-safe.
+     *
+     * #usage movie.select (t -> t[1].equals (1977), true)
+     *
+     * @param predicate  the check condition for tuples
+     * @param parallel   whether to scan in parallel
+     * @return a table with tuples satisfying the predicate
+     */
+    public Table select(PredicateMod<Comparable[]> predicate, boolean parallel) {
+//        out.println("RA> " + name + ".select (" + predicate + ")");
+
+        List<Comparable[]> rows = filter(tuples, predicate, parallel);
+
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Select the first limit tuples satisfying the given predicate.  The scan stops as
+     * soon as it has found them.
+     *
+     * #usage movie.select (t -> t[1].equals (1977), 10)
+     *
+     * @param predicate  the check condition for tuples
+     * @param limit      the maximum number of tuples to select
+     * @return a table with at most limit tuples satisfying the predicate
+     */
+    public Table select(PredicateMod<Comparable[]> predicate, int limit) {
+        List<Comparable[]> rows = new ArrayList<>();
+        for (int i = 0; i < tuples.size() && rows.size() < limit; i++) {
+            Comparable[] tup = tuples.get(i);
+            if (predicate.test(tup)) rows.add(tup);
+        } // for
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose given attributes equal the given values.  Uses the primary
+     * index when the attributes form the key, a secondary index when one covers them,
+     * and otherwise scans the table.
+     *
+     * #usage movie.select ("studioName", "Fox")
+     *
+     * @param attributes  the attributes to compare
+     * @param values      the values the attributes must equal (in the same order)
+     * @return a table with tuples satisfying the equality predicate
+     */
+    public Table select(String attributes, Comparable... values) {
+//        out.println("RA> " + name + ".select (" + attributes + " = " + Arrays.toString(values) + ")");
+        String[] attrs = attributes.split(" ");
+        if (attrs.length != values.length) {
+            out.println("select ERROR: " + attrs.length + " attributes but " + values.length + " values");
+            return null;
+        } // if
+
+        List<Comparable[]> rows;
+        int[] order = keyOrder(attrs);
+        SecondaryIndex sec = (order == null) ? findIndex(attrs) : null;
+        if (order != null) {
+            rows = new ArrayList<>(1);
+            Comparable[] tup = index.get(KeyType.of(permute(values, order)));
+            if (tup != null) rows.add(tup);
+        } else if (sec != null) {
+            rows = new ArrayList<>(sec.get(KeyType.of(permute(values, sec.order(attrs)))));
+        } else if (columns() != null) {
+            rows = new ArrayList<>();
+            for (int i : columns().selectEqual(match(attrs), values)) rows.add(columns().get(i));
+        } else {
+            rows = new ArrayList<>();
+            int[] cols = match(attrs);
+            for (int i = 0; i < tuples.size(); i++) {
+                Comparable[] tup = tuples.get(i);
+                boolean equal = true;
+                for (int j = 0; j < cols.length && equal; j++) equal = tup[cols[j]].equals(values[j]);
+                if (equal) rows.add(tup);
+            } // for
+        } // if
+
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose key lies in the closed range [from, to].  The tuples are
+     * read in key order from the sorted index.
+     *
+     * #usage movie.select (new KeyType ("A", 1970), new KeyType ("M", 1990))
+     *
+     * @param from  the smallest key value to select
+     * @param to    the largest key value to select
+     * @return a table with the tuples satisfying the key range predicate
+     */
+    public Table select(KeyType from, KeyType to) {
+        return select(from, true, to, true);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose key lies in the range between from and to, where each end
+     * may be open or closed, and a null end is unbounded.  Sorted indices (TREE_MAP,
+     * BPTREE_MAP) are read with subMap, headMap or tailMap; hash indices are scanned.
+     *
+     * #usage movie.select (new KeyType ("A", 1970), true, null, false)
+     *
+     * @param from      the low end of the range (null for unbounded)
+     * @param fromIncl  whether tuples with key equal to from are selected
+     * @param to        the high end of the range (null for unbounded)
+     * @param toIncl    whether tuples with key equal to to are selected
+     * @return a table with the tuples satisfying the key range predicate
+     */
+    public Table select(KeyType from, boolean fromIncl, KeyType to, boolean toIncl) {
+//        out.println("RA> " + name + ".select (" + from + ", " + to + ")");
+
+        List<Comparable[]> rows;
+        ColumnStore store = columns();
+        if (store != null) {
+            SortedMap<KeyType, List<Comparable[]>> range = new TreeMap<>();
+            int[] cols = keyCols();
+            for (int i = 0; i < store.size(); i++) {
+                KeyType k = new KeyType(store.get(i, cols));
+                int c1 = (from == null) ? 1 : k.compareTo(from);
+                int c2 = (to == null) ? -1 : k.compareTo(to);
+                if ((c1 > 0 || (c1 == 0 && fromIncl)) && (c2 < 0 || (c2 == 0 && toIncl))) {
+                    if (!range.containsKey(k)) range.put(k, new ArrayList<Comparable[]>(1));
+                    range.get(k).add(store.get(i));
+                } // if
+            } // for
+            rows = new ArrayList<>();
+            for (List<Comparable[]> group : range.values()) rows.addAll(group);
+        } else {
+            rows = new ArrayList<>(rangeMap(from, fromIncl, to, toIncl).values());
+        } // if
+
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Union this table and table2.  Check that the two tables are compatible.
+     *
+     * #usage movie.union (show)
+     *
+     * @param table2  the rhs table in the union operation
+     * @return a table representing the union
+     */
+    public Table union(Table table2) {
+        return union(table2, sType);
+    } // union
+
+    /************************************************************************************
+     * Union this table and table2 using the given algorithm.  HASH keeps every tuple of
+     * this table (in order) and adds the tuples of table2 not found in a hash set built
+     * over this table.  SORT_MERGE sorts both inputs and merges them, producing sorted
+     * output; use it for inputs too large to hash.
+     *
+     * #usage movie.union (show, SetOpType.SORT_MERGE)
+     *
+     * @param table2  the rhs table in the union operation
+     * @param type    the set operator algorithm to use
+     * @return a table representing the union
+     */
+    public Table union(Table table2, SetOpType type) {
+//        out.println("RA> " + name + ".union (" + table2.name + ")");
+        if (!compatible(table2)) return null;
+
+        List<Comparable[]> rows;
+
+        //  T O   B E   I M P L E M E N T E D
+        if (type == SetOpType.SORT_MERGE) {
+            List<Comparable[]> rows1 = sortRows(tuples);
+            List<Comparable[]> rows2 = sortRows(table2.tuples);
+            rows = new ArrayList<>(rows1.size() + rows2.size());
+            int i = 0, j = 0;
+            while (i < rows1.size() && j < rows2.size()) {
+                int c = compareRows(rows1.get(i), rows2.get(j));
+                if (c < 0) {
+                    rows.add(rows1.get(i++));
+                } else if (c > 0) {
+                    rows.add(rows2.get(j++));
+                } else {
+                    Comparable[] row1 = rows1.get(i++);
+                    rows.add(row1);
+                    while (j < rows2.size() && compareRows(row1, rows2.get(j)) == 0) j++;
+                } // if
+            } // while
+            while (i < rows1.size()) rows.add(rows1.get(i++));
+            while (j < rows2.size()) rows.add(rows2.get(j++));
+        } else if (type == SetOpType.PARALLEL_HASH) {
+            final List<Comparable[]>[] parts1 = partition(tuples, allCols(), null, PARTITIONS);
+            final List<Comparable[]>[] parts2 = partition(table2.tuples, allCols(), null, PARTITIONS);
+            List<Callable<List<Comparable[]>>> tasks = new ArrayList<>();
+            for (int p = 0; p < PARTITIONS; p++) {
+                final int q = p;
+                tasks.add(new Callable<List<Comparable[]>>() {
+                    public List<Comparable[]> call() {
+                        List<Comparable[]> result = new ArrayList<>(parts1[q]);
+                        Set<KeyType> rowSet = rowSet(parts1[q]);
+                        for (Comparable[] row2 : parts2[q]) {
+                            if (!rowSet.contains(new KeyType(row2))) result.add(row2);
+                        } // for
+                        return result;
+                    }
+                });
+            } // for
+            rows = concat(invokeAll(tasks));
+        } else {
+            rows = new ArrayList<>(tuples.size() + table2.tuples.size());
+            rows.addAll(tuples);
+            Set<KeyType> rowSet = rowSet(tuples);
+            for (int i = 0; i < table2.tuples.size(); i++) {
+                Comparable[] row2 = table2.tuples.get(i);
+                if (!rowSet.contains(new KeyType(row2))) rows.add(row2);
+            } // for
+        } // if
+        // I M P L E M E N T E D
+
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // union
+
+    /************************************************************************************
+     * Take the difference of this table and table2.  Check that the two tables are
+     * compatible.
+     *
+     * #usage movie.minus (show)
+     *
+     * @param table2  The rhs table in the minus operation
+     * @return a table representing the difference
+     */
+    public Table minus(Table table2) {
+        return minus(table2, sType);
+    } // minus
+
+    /************************************************************************************
+     * Take the difference of this table and table2 using the given algorithm.  HASH
+     * streams the tuples of this table (in order), dropping those found in a hash set
+     * built over table2.  SORT_MERGE sorts both inputs and merges them, producing sorted
+     * output; use it for inputs too large to hash.  PARALLEL_HASH does the same as HASH
+     * within each hash partition, in parallel, producing output ordered by partition.
+     *
+     * #usage movie.minus (show, SetOpType.SORT_MERGE)
+     *
+     * @param table2  The rhs table in the minus operation
+     * @param type    the set operator algorithm to use
+     * @return a table representing the difference
+     */
+    public Table minus(Table table2, SetOpType type) {
+//        out.println("RA> " + name + ".minus (" + table2.name + ")");
+        if (!compatible(table2)) return null;
+
+        List<Comparable[]> rows = new ArrayList<>();
+
+        //  T O   B E   I M P L E M E N T E D
+        if (type == SetOpType.SORT_MERGE) {
+            List<Comparable[]> rows1 = sortRows(tuples);
+            List<Comparable[]> rows2 = sortRows(table2.tuples);
+            int i = 0, j = 0;
+            while (i < rows1.size() && j < rows2.size()) {
+                int c = compareRows(rows1.get(i), rows2.get(j));
+                if (c < 0) {
+                    rows.add(rows1.get(i++));
+                } else if (c > 0) {
+                    j++;
+                } else {
+                    i++;
+                } // if
+            } // while
+            while (i < rows1.size()) rows.add(rows1.get(i++));
+        } else if (type == SetOpType.PARALLEL_HASH) {
+            final List<Comparable[]>[] parts1 = partition(tuples, allCols(), null, PARTITIONS);
+            final List<Comparable[]>[] parts2 = partition(table2.tuples, allCols(), null, PARTITIONS);
+            List<Callable<List<Comparable[]>>> tasks = new ArrayList<>();
+            for (int p = 0; p < PARTITIONS; p++) {
+                final int q = p;
+                tasks.add(new Callable<List<Comparable[]>>() {
+                    public List<Comparable[]> call() {
+                        List<Comparable[]> result = new ArrayList<>();
+                        Set<KeyType> rowSet = rowSet(parts2[q]);
+                        for (Comparable[] row1 : parts1[q]) {
+                            if (!rowSet.contains(new KeyType(row1))) result.add(row1);
+                        } // for
+                        return result;
+                    }
+                });
+            } // for
+            rows = concat(invokeAll(tasks));
+        } else {
+            Set<KeyType> rowSet = rowSet(table2.tuples);
+            for (int i = 0; i < tuples.size(); i++) {
+                Comparable[] row1 = tuples.get(i);
+                if (!rowSet.contains(new KeyType(row1))) rows.add(row1);
+            } // for
+        } // if
+        // I M P L E M E N T E D
+
+        return new Table(tempName(name), attribute, domain, key, rows);
+    } // minus
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "natural join".  Tuples from both tables
+     * are compared requiring common attributes to be equal.  The duplicate column is also
+     * eliminated.
+     *
+     * #usage movieStar.join (starsIn)
+     *
+     * @param table2  the rhs table in the join operation
+     * @return a table with tuples satisfying the equality predicate
      */
     public Table naturalJoin(Table table2) {
+        return naturalJoin(table2, jType);
+    } // naturalJoin
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "natural join" using the given join
+     * algorithm.  When the common attributes form the primary key of table2, an Index
+     * Join probes its index once per tuple of this table (O(n log m)); otherwise a Hash
+     * Join is used (O(n + m)).
+     *
+     * #usage movieStar.join (starsIn, JoinType.HASH)
+     *
+     * @param table2  the rhs table in the join operation
+     * @param type    the join algorithm to use
+     * @return a table with tuples satisfying the equality predicate, or null if the join failed
+     */
+    public Table naturalJoin(Table table2, JoinType type) {
 //        out.println("RA> " + name + ".join (" + table2.name + ")");
 
         List<Comparable[]> rows = new ArrayList<>();
@@ -369,91 +1182,694 @@ public class Table {
 
             List<Integer> addcols2 = new ArrayList<Integer>();
             for (int i = 0; i < table2.attribute.length; i++) addcols2.add(i);
-            for (int i = 0; i < cols2.length; i++) addcols2.remove(cols2[i]);
+            for (int i = 0; i < cols2.length; i++) addcols2.remove((Integer) cols2[i]);
 
             all_attribute = new String[attribute.length + addcols2.size()];
             all_domain = new Class[domain.length + addcols2.size()];
+            int[] keep2 = new int[addcols2.size()];
 
             for (int a1=0; a1 < attribute.length; a1++) {
                 all_attribute[a1] = attribute[a1];
                 all_domain[a1] = domain[a1];
             }
             for (int a2=0; a2 < addcols2.size(); a2++) {
-                all_attribute[a2 + attribute.length] = table2.attribute[addcols2.get(a2)];
-                all_domain[a2 + attribute.length] = table2.domain[addcols2.get(a2)];
+                keep2[a2] = addcols2.get(a2);
+                all_attribute[a2 + attribute.length] = table2.attribute[keep2[a2]];
+                all_domain[a2 + attribute.length] = table2.domain[keep2[a2]];
             }
 
-            for (int t1 = 0; t1 < tuples.size(); t1++) {
-                Comparable[] row1 = tuples.get(t1);
-                for (int t2 = 0; t2 < table2.tuples.size(); ++t2) {
-                    Comparable[] row2 = table2.tuples.get(t2);
-                    boolean attrsValuesEqual = true;
-                    for (int c = 0; c < common_attr.size(); c++) {
-                        Comparable val1 = row1[cols1[c]];
-                        Comparable val2 = row2[cols2[c]];
-                        if (!val1.equals(val2)) {
-                            attrsValuesEqual = false;
-                            break;
-                        }
-                    }
+            rows = join(cols1, table2, common_attr_array, cols2, keep2, type);
+            if (rows == null) return null;
+        }
+        // I M P L E M E N T E D
+
+        // FIX - eliminate duplicate columns
+        return new Table(tempName(name), all_attribute, all_domain, key, rows);
+    } // naturalJoin
+
+    /************************************************************************************
+     * Start a pull-based query over this table.  Operators chained on the query stream
+     * tuples one at a time instead of materializing intermediate tables.
+     *
+     * #usage movie.query ().naturalJoin (studio).project ("title name").toTable ()
+     *
+     * @return a query that scans this table
+     */
+    public Query query() {
+        return Query.from(this);
+    } // query
+
+    /************************************************************************************
+     * Open a snapshot of this CONCURRENT table.  The snapshot's table sees exactly the
+     * tuples inserted before it was opened, through both scans and the primary index,
+     * while writers keep inserting without blocking.  Long-running operators (joins,
+     * unions, queries) should run against the snapshot's table.  Close the snapshot so
+     * the older versions it holds can be reclaimed.
+     *
+     * #usage try (Table.Snapshot s = orders.snapshot ()) { s.table ().naturalJoin (items) }
+     *
+     * @return the snapshot, or null if this is not a CONCURRENT table
+     */
+    public Snapshot snapshot() {
+        if (!(index instanceof VersionedIndex)) {
+            out.println("snapshot ERROR: " + name + " is not a CONCURRENT table");
+            return null;
+        } // if
+        return new Snapshot((VersionedIndex) index);
+    } // snapshot
+
+    /************************************************************************************
+     * Return the number of versions of the tuple with the given key held by the index of
+     * a CONCURRENT table (versions are kept only while a snapshot may still read them).
+     *
+     * @param keyVal  the key
+     * @return the number of versions, or -1 if this is not a CONCURRENT table
+     */
+    int versions(KeyType keyVal) {
+        return (index instanceof VersionedIndex) ? ((VersionedIndex) index).versions(keyVal) : -1;
+    } // versions
+
+    /************************************************************************************
+     * A consistent, read-only view of a CONCURRENT table as of the moment it was opened.
+     * Inserting into the snapshot's table fails with an error message.
+     */
+    public class Snapshot implements AutoCloseable {
+        private final VersionedIndex versions;
+        private final long version;
+        private final Table table;
+        private boolean closed = false;
+
+        private Snapshot(VersionedIndex _versions) {
+            versions = _versions;
+            version = versions.openSnapshot();
+            table = new Table(Table.this, ((AppendOnlyList) tuples).prefix((int) version), versions.asOf(version));
+            table.readOnly = true;
+        } // constructor
+
+        /********************************************************************************
+         * Return the table as of this snapshot.
+         *
+         * @return the snapshot's table
+         */
+        public Table table() {
+            return table;
+        } // table
+
+        /********************************************************************************
+         * Return the version of this snapshot (the number of tuples it sees).
+         *
+         * @return the snapshot version
+         */
+        public long version() {
+            return version;
+        } // version
+
+        /********************************************************************************
+         * Release this snapshot, allowing the versions only it could see to be reclaimed.
+         */
+        public void close() {
+            if (closed) return;
+            closed = true;
+            versions.closeSnapshot(version);
+        } // close
+    } // Snapshot class
+
+    /************************************************************************************
+     * Return the name of this table.
+     *
+     * @return the table name
+     */
+    public String getName() {
+        return name;
+    } // getName
+
+    /************************************************************************************
+     * Return the attribute names of this table.
+     *
+     * @return the attribute names (not a copy)
+     */
+    public String[] getAttribute() {
+        return attribute;
+    } // getAttribute
+
+    /************************************************************************************
+     * Return the attribute domains of this table.
+     *
+     * @return the attribute domains (not a copy)
+     */
+    public Class[] getDomain() {
+        return domain;
+    } // getDomain
+
+    /************************************************************************************
+     * Return the primary key of this table.
+     *
+     * @return the key attribute names (not a copy)
+     */
+    public String[] getKey() {
+        return key;
+    } // getKey
+
+    /************************************************************************************
+     * Return the column position for the given attribute name.
+     *
+     * @param attr  the given attribute name
+     * @return a column position
+     */
+    public int col(String attr) {
+        for (int i = 0; i < attribute.length; i++) {
+            if (attr.equals(attribute[i])) return i;
+        } // for
+
+        return -1;  // not found
+    } // col
+
+    /************************************************************************************
+     * Create a secondary index on the given attributes, built from the current tuples
+     * and maintained by insert.  Equality selects and joins on exactly these attributes
+     * use the index automatically.
+     *
+     * #usage movie.createIndex ("studioName", false)
+     *
+     * @param attributes  the attributes to index
+     * @param unique      whether each combination of values may occur only once
+     * @return whether the index was created
+     */
+    public boolean createIndex(String attributes, boolean unique) {
+        if (tuples instanceof AppendOnlyList) {
+            out.println("createIndex ERROR: secondary indices are not supported on concurrent table " + name);
+            return false;
+        } // if
+        String[] attrs = attributes.split(" ");
+        for (String attr : attrs) {
+            if (col(attr) < 0) {
+                out.println("createIndex ERROR: no attribute " + attr + " in " + name);
+                return false;
+            } // if
+        } // for
+        if (findIndex(attrs) != null) {
+            out.println("createIndex ERROR: " + name + " already has an index on " + attributes);
+            return false;
+        } // if
+
+        SecondaryIndex sec = new SecondaryIndex(attrs, match(attrs), unique);
+        for (int i = 0; i < tuples.size(); i++) {
+            Comparable[] tup = tuples.get(i);
+            if (!sec.canAdd(tup)) {
+                out.println("createIndex ERROR: duplicate value " + sec.keyOf(tup) + " for unique index");
+                return false;
+            } // if
+            sec.add(tup);
+        } // for
+        secondary.add(sec);
+        return true;
+    } // createIndex
+
+    /************************************************************************************
+     * Create a dictionary for each of the given String attributes.  Every value stored
+     * in these columns (now and by later inserts) is replaced by the dictionary's single
+     * instance of it, so a low-cardinality column holds one String per distinct value,
+     * each hash code is computed once, and equal values are identical, making the
+     * equality checks in joins and set operations a reference comparison.
+     *
+     * #usage movie.createDictionary ("genre studioName")
+     *
+     * @param attributes  the String attributes to intern
+     * @return whether the dictionaries were created
+     */
+    public boolean createDictionary(String attributes) {
+        for (String attr : attributes.split(" ")) {
+            if (!createDictionary(attr, new StringDictionary())) return false;
+        } // for
+        return true;
+    } // createDictionary
+
+    /************************************************************************************
+     * Intern the values of the given String attribute using the given dictionary, which
+     * may be shared with a column of another table so that the values of both columns
+     * are identical when equal (e.g., the columns of a join).
+     *
+     * #usage movie.createDictionary ("studioName", studio.dictionary ("name"))
+     *
+     * @param attribute   the String attribute to intern
+     * @param dictionary  the dictionary to use
+     * @return whether the dictionary was created
+     */
+    public boolean createDictionary(String attribute, StringDictionary dictionary) {
+        int j = col(attribute);
+        if (j < 0) {
+            out.println("createDictionary ERROR: no attribute " + attribute + " in " + name);
+            return false;
+        } // if
+        if (domain[j] != String.class) {
+            out.println("createDictionary ERROR: " + attribute + " in " + name + " is not a String attribute");
+            return false;
+        } // if
+        if (!(tuples instanceof ArrayList)) {
+            String kind = (columns() != null) ? "columnar (already dictionary encoded)"
+                        : (file != null) ? "file-backed"
+                        : (tuples instanceof AppendOnlyList) ? "concurrent" : "read-only";
+            out.println("createDictionary ERROR: only row tables intern values; " + name + " is " + kind);
+            return false;
+        } // if
+        if (dict == null) dict = new StringDictionary[this.attribute.length];
+        if (dict[j] != null && dict[j] != dictionary) {
+            out.println("createDictionary ERROR: " + name + " already has a dictionary on " + attribute);
+            return false;
+        } // if
+
+        dict[j] = dictionary;
+        for (Comparable[] tup : tuples) tup[j] = dictionary.intern((String) tup[j]);
+        return true;
+    } // createDictionary
+
+    /************************************************************************************
+     * Return the dictionary interning the values of the given attribute.
+     *
+     * @param attribute  the attribute
+     * @return the dictionary, or null if the attribute has none
+     */
+    public StringDictionary dictionary(String attribute) {
+        int j = col(attribute);
+        if (j < 0 || dict == null) return null;
+        return dict[j];
+    } // dictionary
+
+    /************************************************************************************
+     * Insert a tuple to the table.
+     *
+     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
+     *
+     * @param tup  the array of attribute values forming the tuple
+     * @return whether insertion was successful
+     */
+    public boolean insert(Comparable[] tup) {
+//        out.println("DML> insert into " + name + " values ( " + Arrays.toString(tup) + " )");
+
+        if (readOnly) {
+            out.println("insert ERROR: " + name + " is a read-only snapshot");
+            return false;
+        } // if
+        if (typeCheck(tup)) {
+            for (SecondaryIndex sec : secondary) {
+                if (!sec.canAdd(tup)) {
+                    out.println("insert ERROR: duplicate value " + sec.keyOf(tup) + " for unique index");
+                    return false;
+                } // if
+            } // for
+            if (log == null) {
+                store(tup);
+                return true;
+            } // if
+            gate.readLock().lock();                       // log, then store
+            try {
+                log.commit(log.append(tup));
+                store(tup);
+            } catch (IOException | RuntimeException ex) {
+                out.println("insert ERROR: write-ahead log of " + name + ": " + ex.getMessage());
+                return false;
+            } finally {
+                gate.readLock().unlock();
+            } // try
+            checkpointIfDue();
+            return true;
+        } else {
+            if (log != null) out.println("insert ERROR: " + Arrays.toString(tup) + " does not match the domains of " + name);
+            return false;
+        } // if
+    } // insert
+
+    /************************************************************************************
+     * Return the path of the write-ahead log of the table file at the given path.
+     *
+     * @param path  the path of the table file
+     * @return the path of its log
+     */
+    static Path logPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".wal");
+    } // logPath
+
+    /************************************************************************************
+     * Checkpoint the table if its write-ahead log has grown past CHECKPOINT_BYTES.
+     */
+    private void checkpointIfDue() {
+        if (log.size() >= CHECKPOINT_BYTES) {
+            gate.writeLock().lock();
+            try {
+                if (log.size() >= CHECKPOINT_BYTES) checkpoint();       // not done meanwhile
+            } finally {
+                gate.writeLock().unlock();
+            } // try
+        } // if
+    } // checkpointIfDue
+
+    /************************************************************************************
+     * Store a checked tuple in the table and its indices.
+     *
+     * @param tup  the tuple
+     */
+    private void store(Comparable[] tup) {
+        if (index instanceof VersionedIndex) {                    // index, then publish
+            AppendOnlyList list = (AppendOnlyList) tuples;
+            int slot = list.reserve();
+            if (((VersionedIndex) index).put(keyOf(tup, keyCols()), tup, slot + 1) != null) dupKeys = true;
+            list.publish(slot, tup);
+            return;
+        } // if
+        intern(tup);
+        tuples.add(tup);
+        if (columns() == null && index.put(keyOf(tup, keyCols()), tup) != null) dupKeys = true;
+        for (SecondaryIndex sec : secondary) sec.add(tup);
+    } // store
+
+    /************************************************************************************
+     * Insert a batch of tuples into the table.  The tuples are type checked against the
+     * domains once per batch, the key columns are resolved once, and the primary index
+     * is built at the end: the new entries are sorted by key and, when the index is
+     * empty and sorted (BPTREE_MAP or TREE_MAP), bulk loaded in linear time.  Tuples
+     * that fail the type check or violate a unique secondary index are skipped.  A
+     * CONCURRENT table indexes each tuple as it is inserted, so readers never wait for
+     * the end of the batch.  A table with a write-ahead log logs the whole batch with a
+     * single commit before storing any of it, so a failed commit inserts nothing.
+     *
+     * #usage movie.insertAll (rows)
+     *
+     * @param tups  the tuples to insert
+     * @return the number of tuples inserted
+     */
+    public int insertAll(Iterable<Comparable[]> tups) {
+//        out.println("DML> insert into " + name + " values ( ... )");
+
+        if (readOnly) {
+            out.println("insertAll ERROR: " + name + " is a read-only snapshot");
+            return 0;
+        } // if
+        if (log != null) {
+            gate.readLock().lock();
+            try {
+                return insertBatch(tups);
+            } finally {
+                gate.readLock().unlock();
+                checkpointIfDue();
+            } // try
+        } // if
+        return insertBatch(tups);
+    } // insertAll
+
+    /************************************************************************************
+     * Insert a batch of tuples (see insertAll).
+     *
+     * @param tups  the tuples to insert
+     * @return the number of tuples inserted
+     */
+    private int insertBatch(Iterable<Comparable[]> tups) {
+        if (index instanceof VersionedIndex) {
+            int inserted = 0;
+            for (Comparable[] tup : tups) if (insert(tup)) inserted++;
+            return inserted;
+        } // if
+
+        ColumnStore store = columns();
+        Class[] ref = (store != null || log != null) ? domain : null;    // class each column must have
+        if (ref == null && !tuples.isEmpty()) ref = classes(tuples.get(0));
+        if (tuples instanceof ArrayList && tups instanceof Collection) {
+            ((ArrayList<Comparable[]>) tuples).ensureCapacity(tuples.size() + ((Collection) tups).size());
+        } // if
+
+        List<Comparable[]> batch = new ArrayList<>();               // the valid tuples
+        List<Set<KeyType>> batchKeys = new ArrayList<>();           // unique values within the batch
+        for (SecondaryIndex sec : secondary) batchKeys.add(sec.unique ? new HashSet<KeyType>() : null);
+        int skipped = 0;
+        for (Comparable[] tup : tups) {
+            if (ref == null) ref = classes(tup);
+            boolean ok = tup.length == ref.length;
+            for (int j = 0; ok && j < tup.length; j++) ok = tup[j] != null && tup[j].getClass() == ref[j];
+            for (int k = 0; ok && k < secondary.size(); k++) {
+                SecondaryIndex sec = secondary.get(k);
+                ok = sec.canAdd(tup) && (!sec.unique || !batchKeys.get(k).contains(sec.keyOf(tup)));
+            } // for
+            if (!ok) {
+                skipped++;
+                continue;
+            } // if
+            for (int k = 0; k < secondary.size(); k++) {
+                if (secondary.get(k).unique) batchKeys.get(k).add(secondary.get(k).keyOf(tup));
+            } // for
+            batch.add(tup);
+        } // for
+        if (skipped > 0) out.println("insertAll: skipped " + skipped + " invalid tuples");
+
+        if (log != null && !batch.isEmpty()) {                      // log, then store
+            try {
+                long lsn = -1;
+                for (Comparable[] tup : batch) lsn = log.append(tup);
+                log.commit(lsn);
+            } catch (IOException | RuntimeException ex) {
+                out.println("insertAll ERROR: write-ahead log of " + name + ": " + ex.getMessage());
+                return 0;
+            } // try
+        } // if
+
+        int[] cols = keyCols();
+        List<KeyType> keys = new ArrayList<>();
+        for (Comparable[] tup : batch) {
+            intern(tup);
+            tuples.add(tup);
+            for (SecondaryIndex sec : secondary) sec.add(tup);
+            if (store == null) keys.add(keyOf(tup, cols));
+        } // for
+        if (store == null) loadIndex(keys, batch);
+        return batch.size();
+    } // insertBatch
+
+    /************************************************************************************
+     * Bulk load this table from a delimited text file (CSV, TSV, ...), parsing each field
+     * straight into the domain of its column (see TableLoader).  Malformed lines are
+     * skipped.
+     *
+     * #usage movie.load (Paths.get ("movie.csv"), ',', true)
+     *
+     * @param path       the path of the file
+     * @param delimiter  the field delimiter
+     * @param header     whether the first line holds the column names
+     * @return the number of tuples inserted, or -1 if the file cannot be loaded
+     */
+    public int load(Path path, char delimiter, boolean header) {
+        return load(path, delimiter, header, false);
+    } // load
+
+    /************************************************************************************
+     * Bulk load this table from a delimited text file, optionally parsing chunks of the
+     * file in parallel.  Tuples are inserted in file order either way, but a parallel load
+     * requires that quoted fields hold no line breaks.
+     *
+     * #usage movie.load (Paths.get ("movie.csv"), ',', true, true)
+     *
+     * @param path       the path of the file
+     * @param delimiter  the field delimiter
+     * @param header     whether the first line holds the column names
+     * @param parallel   whether to parse in parallel
+     * @return the number of tuples inserted, or -1 if the file cannot be loaded
+     */
+    public int load(Path path, char delimiter, boolean header, boolean parallel) {
+        try {
+            TableLoader loader = new TableLoader(this, delimiter, header);
+            return parallel ? loader.loadParallel(path, ForkJoinPool.getCommonPoolParallelism())
+                            : loader.load(path);
+        } catch (IOException | IllegalArgumentException ex) {
+            out.println("load ERROR: " + name + ": " + ex.getMessage());
+            return -1;
+        } // try
+    } // load
+
+    /************************************************************************************
+     * Save this table to a file in the binary, page-oriented TableFile format, with its
+     * primary index.  The domains must be primitive wrapper types or String.
+     *
+     * #usage movie.save (Paths.get ("movie.tbl"))
+     *
+     * @param path  the path of the file (replaced if it exists)
+     * @return whether the table was saved
+     */
+    public boolean save(Path path) {
+        try {
+            TableFile.write(this, path);
+            return true;
+        } catch (IOException | IllegalArgumentException ex) {
+            out.println("save ERROR: " + name + ": " + ex.getMessage());
+            return false;
+        } // try
+    } // save
+
+    /************************************************************************************
+     * Open a table saved by save, with a write-ahead log using the default flush policy
+     * (see open (Path, FlushPolicy)).
+     *
+     * #usage Table movie = Table.open (Paths.get ("movie.tbl"))
+     *
+     * @param path  the path of the file
+     * @return the table, or null if the file cannot be opened
+     */
+    public static Table open(Path path) {
+        return open(path, fPolicy);
+    } // open
+
+    /************************************************************************************
+     * Open a table saved by save.  The file is memory-mapped: opening reads only its
+     * header and directory, tuples are decoded on access, and key selects and index
+     * joins binary search the saved index instead of rebuilding it.  Tuples inserted
+     * into the opened table are kept in memory and made durable by a write-ahead log
+     * (the file's path with ".wal" appended), which is replayed here after a restart
+     * or crash.  With the SYNC policy insert returns only once its tuple is on disk;
+     * concurrent inserts share one fsync (group commit), as do the tuples of one
+     * insertAll.  Once the log passes CHECKPOINT_BYTES it is folded into the file by
+     * checkpoint.  Many threads may insert at once (provided the table has no secondary
+     * indices); call close when done.
+     *
+     * #usage Table orders = Table.open (Paths.get ("orders.tbl"), FlushPolicy.INTERVAL)
+     *
+     * @param path    the path of the file
+     * @param policy  when the log is forced to disk
+     * @return the table, or null if the file cannot be opened
+     */
+    public static Table open(Path path, WriteAheadLog.FlushPolicy policy) {
+        try {
+            TableFile file = TableFile.open(path);
+            Table schema = new Table(file.getName(), file.getAttribute(), file.getDomain(), file.getKey());
+            Table table = new Table(schema, file.tuples(), file.index());
+            table.dupKeys = file.hasDuplicateKeys();
+
+            WriteAheadLog wal = new WriteAheadLog(logPath(path), new RowCodec(table.domain), policy, FLUSH_MILLIS);
+            for (Comparable[] tup : wal.replay(file.lsn())) table.insert(tup);
+            table.log = wal;
+            table.file = path;
+            table.gate = new ReentrantReadWriteLock();
+            return table;
+        } catch (IOException ex) {
+            out.println("open ERROR: " + path + ": " + ex.getMessage());
+            return null;
+        } // try
+    } // open
 
-                    if (attrsValuesEqual) {
-                        Comparable[] row = new Comparable[row1.length + addcols2.size()];
-                        for (int c1 = 0; c1 < row1.length; c1++) {
-                            row[c1] = row1[c1];
-                        }
-                        for (int c2 = 0; c2 < addcols2.size(); c2++) {
-                            row[row1.length + c2] = row2[addcols2.get(c2)];
-                        }
-                        rows.add(row);
-                    }
-                }
-            }
-        }
-        // I M P L E M E N T E D
+    /************************************************************************************
+     * Save the tuples of a table opened from a file back to that file and empty its
+     * write-ahead log.  Inserts wait while the checkpoint runs.  The file records how
+     * much of the log it includes, so a crash at any point loses nothing and replays
+     * nothing twice.  The table then reads the rewritten file, so the tuples inserted
+     * since it was opened no longer take heap space.
+     *
+     * #usage orders.checkpoint ()
+     *
+     * @return whether the checkpoint succeeded
+     */
+    public boolean checkpoint() {
+        if (log == null) {
+            out.println("checkpoint ERROR: " + name + " was not opened from a file");
+            return false;
+        } // if
+        gate.writeLock().lock();
+        try {
+            log.force();
+            TableFile.write(this, file, log.lsn());
+            log.truncate();
+            TableFile saved = TableFile.open(file);                       // drop the in-memory overlay
+            tuples = saved.tuples();
+            index = saved.index();
+            dupKeys = saved.hasDuplicateKeys();
+            return true;
+        } catch (IOException | IllegalArgumentException ex) {
+            out.println("checkpoint ERROR: " + name + ": " + ex.getMessage());
+            return false;
+        } finally {
+            gate.writeLock().unlock();
+        } // try
+    } // checkpoint
 
-        // FIX - eliminate duplicate columns
-        return new Table(name + count++, all_attribute, all_domain, key, rows);
-    } // join
+    /************************************************************************************
+     * Force and close the write-ahead log of a table opened from a file.  The table may
+     * still be read, but no longer inserted into.
+     *
+     * @return whether the log was closed cleanly
+     */
+    public boolean close() {
+        if (log == null) return true;
+        gate.writeLock().lock();
+        try {
+            log.close();
+            return true;
+        } catch (IOException ex) {
+            out.println("close ERROR: " + name + ": " + ex.getMessage());
+            return false;
+        } finally {
+            gate.writeLock().unlock();
+        } // try
+    } // close
 
     /************************************************************************************
-     * Return the column position for the given attribute name.
+     * Export all of this table to a writer in the given format, streaming one tuple at a
+     * time so memory use stays constant (see TableExporter).
      *
-     * @param attr  the given attribute name
-     * @return a column position
+     * #usage movie.export (writer, TableExporter.Format.CSV)
+     *
+     * @param w       the writer (flushed, not closed)
+     * @param format  the format (CSV or FIXED_WIDTH)
+     * @return the number of tuples written, or -1 if the writer failed
      */
-    public int col(String attr) {
-        for (int i = 0; i < attribute.length; i++) {
-            if (attr.equals(attribute[i])) return i;
-        } // for
+    public int export(Writer w, TableExporter.Format format) {
+        return export(w, format, 0, Integer.MAX_VALUE);
+    } // export
 
-        return -1;  // not found
-    } // col
+    /************************************************************************************
+     * Export a page of this table to a writer: at most limit tuples, starting with the
+     * tuple at position offset.
+     *
+     * #usage movie.export (writer, TableExporter.Format.FIXED_WIDTH, 100, 50)
+     *
+     * @param w       the writer (flushed, not closed)
+     * @param format  the format (CSV or FIXED_WIDTH)
+     * @param offset  the position of the first tuple
+     * @param limit   the maximum number of tuples
+     * @return the number of tuples written, or -1 if the writer failed
+     */
+    public int export(Writer w, TableExporter.Format format, int offset, int limit) {
+        try {
+            return new TableExporter(this, format).write(w, offset, limit);
+        } catch (IOException | IllegalArgumentException ex) {
+            out.println("export ERROR: " + name + ": " + ex.getMessage());
+            return -1;
+        } // try
+    } // export
 
     /************************************************************************************
-     * Insert a tuple to the table.
+     * Export a page of this table to an output stream, encoded in UTF-8.
      *
-     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
+     * #usage movie.export (System.out, TableExporter.Format.FIXED_WIDTH, 0, 20)
      *
-     * @param tup  the array of attribute values forming the tuple
-     * @return whether insertion was successful
+     * @param os      the output stream (flushed, not closed)
+     * @param format  the format (CSV or FIXED_WIDTH)
+     * @param offset  the position of the first tuple
+     * @param limit   the maximum number of tuples
+     * @return the number of tuples written, or -1 if the stream failed
      */
-    public boolean insert(Comparable[] tup) {
-//        out.println("DML> insert into " + name + " values ( " + Arrays.toString(tup) + " )");
+    public int export(OutputStream os, TableExporter.Format format, int offset, int limit) {
+        return export(new OutputStreamWriter(os, StandardCharsets.UTF_8), format, offset, limit);
+    } // export
 
-        if (typeCheck(tup)) {
-            tuples.add(tup);
-            Comparable[] keyVal = new Comparable[key.length];
-            int[] cols = match(key);
-            for (int j = 0; j < keyVal.length; j++) keyVal[j] = tup[cols[j]];
-            {
-                index.put(new KeyType(keyVal), tup);
-            }
-            return true;
-        } else {
-            return false;
-        } // if
-    } // insert
+    /************************************************************************************
+     * Export a page of this table to a channel (e.g., a FileChannel or a socket), encoded
+     * in UTF-8.
+     *
+     * #usage movie.export (channel, TableExporter.Format.CSV, 0, 1000)
+     *
+     * @param ch      the channel (not closed)
+     * @param format  the format (CSV or FIXED_WIDTH)
+     * @param offset  the position of the first tuple
+     * @param limit   the maximum number of tuples
+     * @return the number of tuples written, or -1 if the channel failed
+     */
+    public int export(WritableByteChannel ch, TableExporter.Format format, int offset, int limit) {
+        return export(Channels.newWriter(ch, StandardCharsets.UTF_8.newEncoder(), -1), format, offset, limit);
+    } // export
 
     //----------------------------------------------------------------------------------
     // Private Methods
@@ -486,7 +1902,7 @@ public class Table {
      * @param column  the array of column names
      * @return an array of column index positions
      */
-    private int[] match(String[] column) {
+    int[] match(String[] column) {
         int[] colPos = new int[column.length];
 
         for (int j = 0; j < column.length; j++) {
@@ -506,18 +1922,748 @@ public class Table {
     } // match
 
     /************************************************************************************
-     * Extract the attributes specified by the column array from tuple t.
+     * Return the portion of the index whose keys lie in the given range (a null bound is
+     * unbounded).  Sorted maps return a view, a RangeIndex finds the range itself, and
+     * other maps are scanned into a sorted copy.
      *
-     * @param t       the tuple to extract from
-     * @param column  the array of column names
-     * @return a smaller tuple extracted from tuple t
+     * @param from      the low end of the range
+     * @param fromIncl  whether from is included
+     * @param to        the high end of the range
+     * @param toIncl    whether to is included
+     * @return the index entries in the range, in key order
+     */
+    private SortedMap<KeyType, Comparable[]> rangeMap(KeyType from, boolean fromIncl, KeyType to, boolean toIncl) {
+        if (index instanceof RangeIndex) {
+            return ((RangeIndex) index).range(from, fromIncl, to, toIncl);
+        } // if
+        if (index instanceof NavigableMap) {
+            NavigableMap<KeyType, Comparable[]> nav = (NavigableMap<KeyType, Comparable[]>) index;
+            if (from == null && to == null) return nav;
+            if (from == null) return nav.headMap(to, toIncl);
+            if (to == null) return nav.tailMap(from, fromIncl);
+            if (from.compareTo(to) > 0) return new TreeMap<>();
+            return nav.subMap(from, fromIncl, to, toIncl);
+        } // if
+        if (index instanceof BpTreeMap) {
+            BpTreeMap<KeyType, Comparable[]> bpt = (BpTreeMap<KeyType, Comparable[]>) index;
+            if (from == null && to == null) return bpt;
+            if (from == null) return bpt.headMap(to, toIncl);
+            if (to == null) return bpt.tailMap(from, fromIncl);
+            return bpt.subMap(from, fromIncl, to, toIncl);
+        } // if
+
+        SortedMap<KeyType, Comparable[]> range = new TreeMap<>();
+        for (Map.Entry<KeyType, Comparable[]> e : index.entrySet()) {
+            int c1 = (from == null) ? 1 : e.getKey().compareTo(from);
+            int c2 = (to == null) ? -1 : e.getKey().compareTo(to);
+            if ((c1 > 0 || (c1 == 0 && fromIncl)) && (c2 < 0 || (c2 == 0 && toIncl))) {
+                range.put(e.getKey(), e.getValue());
+            } // if
+        } // for
+        return range;
+    } // rangeMap
+
+    /************************************************************************************
+     * Join the tuples of this table with those of table2 on the given columns using the
+     * requested algorithm.  INDEX probes the primary index of table2 when attrs2 form its
+     * key and the index is complete, or a secondary index of table2 covering attrs2;
+     * otherwise a Hash Join is performed.  HYBRID_HASH spills to temporary files when
+     * the smaller input does not fit in JOIN_BUDGET (and joins in memory if its domains
+     * cannot be spilled).  The algorithms in BLOOM_JOINS first drop the tuples of the
+     * larger input that cannot match (see semiJoin).
+     *
+     * @param cols1  the join columns of this table
+     * @param table2 the rhs table
+     * @param attrs2 the join attributes of table2
+     * @param cols2  the join columns of table2
+     * @param keep2  the rhs columns to append to each result (null for all)
+     * @param type   the join algorithm to use
+     * @return the joined tuples, or null if a spilled join failed
+     */
+    private List<Comparable[]> join(int[] cols1, Table table2, String[] attrs2, int[] cols2,
+                                    int[] keep2, JoinType type) {
+        int[] order = (type == JoinType.INDEX) ? table2.keyOrder(attrs2) : null;
+        SecondaryIndex sec = (type == JoinType.INDEX && order == null) ? table2.findIndex(attrs2) : null;
+
+        List<Comparable[]> rows1 = tuples, rows2 = table2.tuples;            // semi-join reduction
+        JoinType plan = (order == null && sec == null && type == JoinType.INDEX) ? JoinType.HASH : type;
+        if (BLOOM_FPP > 0 && BLOOM_JOINS.contains(plan) && cols1.length > 0) {
+            boolean parallel = type == JoinType.PARALLEL_HASH;
+            if (rows2.size() < rows1.size()) {
+                rows1 = semiJoin(rows1, cols1, rows2, cols2, parallel);
+            } else if (rows1.size() < rows2.size() && order == null && sec == null) {
+                rows2 = semiJoin(rows2, cols2, rows1, cols1, parallel);       // an index join scans only rows1
+            } // if
+        } // if
+
+        switch (type) {
+            case NESTED_LOOP:
+                return nestedLoopJoin(rows1, cols1, rows2, cols2, keep2);
+            case PARALLEL_HASH:
+                return parallelHashJoin(rows1, cols1, rows2, cols2, keep2);
+            case HYBRID_HASH:
+                try {
+                    return new HybridHashJoin(domain, cols1, table2.domain, cols2, keep2, JOIN_BUDGET).join(rows1, rows2);
+                } catch (IllegalArgumentException ex) {
+                    return hashJoin(rows1, cols1, rows2, cols2, keep2);       // cannot spill, join in memory
+                } catch (IOException ex) {
+                    out.println("join ERROR: " + name + ": " + ex.getMessage());
+                    return null;
+                } // try
+            case INDEX:
+                if (order != null) {
+                    return indexJoin(rows1, permute(cols1, order), table2.index, keep2);
+                } // if
+                if (sec != null) {
+                    return secondaryIndexJoin(rows1, permute(cols1, sec.order(attrs2)), sec, keep2);
+                } // if
+                return hashJoin(rows1, cols1, rows2, cols2, keep2);
+            default:
+                return hashJoin(rows1, cols1, rows2, cols2, keep2);
+        } // switch
+    } // join
+
+    /************************************************************************************
+     * Return the tuples of the larger input of a join that may match the smaller input:
+     * a Bloom filter is built over the join columns of the smaller input and each tuple
+     * of the larger input is tested against it, so tuples that cannot match are dropped
+     * before any key is built or any hash table or index is probed.  A few tuples without
+     * a match (about BLOOM_FPP of them) may pass.  A columnar larger input is tested on
+     * its join columns, read from the column vectors, and only the tuples passing are built.
+     *
+     * @param big        the larger input
+     * @param bigCols    the join columns of the larger input
+     * @param small      the smaller input
+     * @param smallCols  the join columns of the smaller input
+     * @param parallel   whether to test the tuples of the larger input in parallel
+     * @return the tuples of the larger input that may match, in order
+     */
+    private static List<Comparable[]> semiJoin(List<Comparable[]> big, final int[] bigCols,
+                                               List<Comparable[]> small, int[] smallCols, boolean parallel) {
+        final BloomFilter bloom = bloomOf(small, smallCols);
+        if (big instanceof ColumnStore) {                                   // test the key columns only
+            ColumnStore store = (ColumnStore) big;
+            int[] all = new int[bigCols.length];
+            for (int j = 0; j < all.length; j++) all[j] = j;
+            List<Comparable[]> result = new ArrayList<>();
+            for (int i = 0; i < store.size(); i++) {
+                if (bloom.mightContain(store.get(i, bigCols), all)) result.add(store.get(i));
+            } // for
+            return result;
+        } // if
+        return filter(big, new PredicateMod<Comparable[]>() {
+            public boolean test(Comparable[] t) {
+                return bloom.mightContain(t, bigCols);
+            }
+        }, parallel);
+    } // semiJoin
+
+    /************************************************************************************
+     * Build a Bloom filter over the given columns of a list of tuples.
+     *
+     * @param rows  the tuples
+     * @param cols  the columns forming the key
+     * @return the Bloom filter, sized for BLOOM_FPP
+     */
+    private static BloomFilter bloomOf(List<Comparable[]> rows, int[] cols) {
+        BloomFilter bloom = new BloomFilter(rows.size(), BLOOM_FPP);
+        for (int i = 0; i < rows.size(); i++) bloom.add(rows.get(i), cols);
+        return bloom;
+    } // bloomOf
+
+    /************************************************************************************
+     * Return the tuples satisfying a predicate, in order, optionally testing them in
+     * parallel chunks on the fork-join pool (the predicate must then be thread-safe).
+     *
+     * @param rows       the tuples to test
+     * @param predicate  the check condition for tuples
+     * @param parallel   whether to test in parallel
+     * @return the tuples satisfying the predicate
+     */
+    private static List<Comparable[]> filter(List<Comparable[]> rows, PredicateMod<Comparable[]> predicate,
+                                             boolean parallel) {
+        if (parallel && rows.size() > CHUNK_SIZE) {
+            @SuppressWarnings("unchecked")
+            List<Comparable[]>[] chunks = new List[(rows.size() + CHUNK_SIZE - 1) / CHUNK_SIZE];
+            ForkJoinPool.commonPool().invoke(new FilterTask(rows, predicate, chunks, 0, chunks.length));
+            int n = 0;
+            for (List<Comparable[]> chunk : chunks) n += chunk.size();
+            List<Comparable[]> result = new ArrayList<>(n);
+            for (List<Comparable[]> chunk : chunks) result.addAll(chunk);
+            return result;
+        } // if
+        List<Comparable[]> result = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Comparable[] tup = rows.get(i);
+            if (predicate.test(tup)) result.add(tup);
+        } // for
+        return result;
+    } // filter
+
+    /************************************************************************************
+     * Join a list of tuples with a table using an Index Nested Loop Join.  The key of
+     * each tuple is looked up in the index of the rhs table.
+     *
+     * @param rows1  the lhs tuples
+     * @param cols1  the lhs columns matching the rhs key (in key order)
+     * @param index2 the primary index of the rhs table
+     * @param keep2  the rhs columns to append to each result (null for all)
+     * @return the joined tuples
+     */
+    private static List<Comparable[]> indexJoin(List<Comparable[]> rows1, int[] cols1,
+                                                Map<KeyType, Comparable[]> index2, int[] keep2) {
+        List<Comparable[]> rows = new ArrayList<>();
+        for (int i = 0; i < rows1.size(); i++) {
+            Comparable[] row2 = index2.get(keyAt(rows1, i, cols1));
+            if (row2 != null) rows.add(combine(rows1.get(i), row2, keep2));
+        } // for
+        return rows;
+    } // indexJoin
+
+    /************************************************************************************
+     * Join a list of tuples with a table using an Index Nested Loop Join over one of
+     * its secondary indices.
+     *
+     * @param rows1  the lhs tuples
+     * @param cols1  the lhs columns matching the indexed attributes (in index order)
+     * @param sec    the secondary index of the rhs table
+     * @param keep2  the rhs columns to append to each result (null for all)
+     * @return the joined tuples
+     */
+    private static List<Comparable[]> secondaryIndexJoin(List<Comparable[]> rows1, int[] cols1,
+                                                         SecondaryIndex sec, int[] keep2) {
+        List<Comparable[]> rows = new ArrayList<>();
+        for (int i = 0; i < rows1.size(); i++) {
+            List<Comparable[]> matches = sec.get(keyAt(rows1, i, cols1));
+            if (matches.isEmpty()) continue;
+            Comparable[] row1 = rows1.get(i);
+            for (int j = 0; j < matches.size(); j++) rows.add(combine(row1, matches.get(j), keep2));
+        } // for
+        return rows;
+    } // secondaryIndexJoin
+
+    /************************************************************************************
+     * Return the tuple with the given key value from the primary index.
+     *
+     * @param keyVal  the key value
+     * @return the tuple, or null if there is none
+     */
+    Comparable[] lookup(KeyType keyVal) {
+        return index.get(keyVal);
+    } // lookup
+
+    /************************************************************************************
+     * Return a fresh name for a temporary table derived from the named table.
+     *
+     * @param base  the name of the table the temporary table is derived from
+     * @return the temporary table name
+     */
+    static String tempName(String base) {
+        return base + count.getAndIncrement();
+    } // tempName
+
+    /************************************************************************************
+     * Determine whether the primary index holds every tuple, i.e., it has been built
+     * and no two tuples share a key.  A CONCURRENT table tracks duplicate keys as they
+     * are inserted, since counting its index is not constant time.
+     *
+     * @return whether the index is complete
+     */
+    private boolean indexComplete() {
+        if (index == null) return false;
+        if (tuples instanceof AppendOnlyList) return !dupKeys;
+        return index.size() == tuples.size();
+    } // indexComplete
+
+    /************************************************************************************
+     * Return the column positions of the primary key, resolving them on first use.
+     *
+     * @return the key column positions
+     */
+    private int[] keyCols() {
+        if (keyCols == null) keyCols = match(key);
+        return keyCols;
+    } // keyCols
+
+    /************************************************************************************
+     * Add the given keys and tuples to the primary index.  The entries are sorted by key
+     * (the last tuple wins for duplicate keys).  An empty BPTREE_MAP index is bulk
+     * loaded bottom-up, an empty TREE_MAP is built from a sorted map in linear time, and
+     * any other index receives the entries in key order.
+     *
+     * @param keys  the keys of the new tuples
+     * @param tups  the new tuples
+     */
+    @SuppressWarnings("unchecked")
+    private void loadIndex(List<KeyType> keys, List<Comparable[]> tups) {
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        final List<KeyType> k = keys;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                int c = k.get(i1).compareTo(k.get(i2));
+                return (c != 0) ? c : i1.compareTo(i2);
+            }
+        });
+
+        List<KeyType> sortedKeys = new ArrayList<>(order.length);
+        List<Comparable[]> sortedTups = new ArrayList<>(order.length);
+        for (int i = 0; i < order.length; i++) {
+            if (i + 1 < order.length && keys.get(order[i]).equals(keys.get(order[i + 1]))) {
+                dupKeys = true;
+                continue;
+            } // if
+            sortedKeys.add(keys.get(order[i]));
+            sortedTups.add(tups.get(order[i]));
+        } // for
+
+        if (index.isEmpty() && index instanceof BpTreeMap) {
+            ((BpTreeMap<KeyType, Comparable[]>) index).bulkLoad(sortedKeys, sortedTups);
+        } else if (index.isEmpty() && index instanceof TreeMap) {
+            BpTreeMap<KeyType, Comparable[]> sorted = new BpTreeMap<>();
+            sorted.bulkLoad(sortedKeys, sortedTups);
+            index.putAll(sorted);        // TreeMap builds itself from a SortedMap in O(n)
+        } else {
+            for (int i = 0; i < sortedKeys.size(); i++) {
+                if (index.put(sortedKeys.get(i), sortedTups.get(i)) != null) dupKeys = true;
+            } // for
+        } // if
+    } // loadIndex
+
+    /************************************************************************************
+     * Return the class of each value in the tuple.
+     *
+     * @param t  the tuple
+     * @return the classes of its values
+     */
+    private static Class[] classes(Comparable[] t) {
+        Class[] c = new Class[t.length];
+        for (int j = 0; j < t.length; j++) c[j] = (t[j] == null) ? null : t[j].getClass();
+        return c;
+    } // classes
+
+    /************************************************************************************
+     * Return the column store holding the tuples of a COLUMNAR table.
+     *
+     * @return the column store, or null for a ROW table
+     */
+    private ColumnStore columns() {
+        return (tuples instanceof ColumnStore) ? (ColumnStore) tuples : null;
+    } // columns
+
+    /************************************************************************************
+     * Return the secondary index covering exactly the given attributes, if any.
+     *
+     * @param attrs  the attributes
+     * @return the secondary index or null
+     */
+    private SecondaryIndex findIndex(String[] attrs) {
+        for (SecondaryIndex sec : secondary) {
+            if (sec.order(attrs) != null) return sec;
+        } // for
+        return null;
+    } // findIndex
+
+    /************************************************************************************
+     * Rearrange the elements of arr so that element j of the result is arr[order[j]].
+     *
+     * @param arr    the array to rearrange
+     * @param order  the positions to take the elements from
+     * @return the rearranged array
+     */
+    private static int[] permute(int[] arr, int[] order) {
+        int[] result = new int[order.length];
+        for (int j = 0; j < order.length; j++) result[j] = arr[order[j]];
+        return result;
+    } // permute
+
+    /************************************************************************************
+     * Rearrange the elements of arr so that element j of the result is arr[order[j]].
+     *
+     * @param arr    the array to rearrange
+     * @param order  the positions to take the elements from
+     * @return the rearranged array
+     */
+    private static Comparable[] permute(Comparable[] arr, int[] order) {
+        Comparable[] result = new Comparable[order.length];
+        for (int j = 0; j < order.length; j++) result[j] = arr[order[j]];
+        return result;
+    } // permute
+
+    /************************************************************************************
+     * Determine whether the given attributes are exactly the primary key of this table
+     * and the index holds every tuple.  If so, return for each key attribute its
+     * position in attrs.
+     *
+     * @param attrs  the attributes to check
+     * @return the positions of the key attributes in attrs, or null if not indexed
+     */
+    int[] keyOrder(String[] attrs) {
+        if (attrs.length != key.length || !indexComplete()) return null;
+        int[] order = new int[key.length];
+        for (int j = 0; j < key.length; j++) {
+            order[j] = Arrays.asList(attrs).indexOf(key[j]);
+            if (order[j] < 0) return null;
+        } // for
+        return order;
+    } // keyOrder
+
+    /************************************************************************************
+     * Join two lists of tuples using a Nested Loop Join.  Each tuple in rows1 is compared
+     * with each tuple in rows2 on the given columns.
+     *
+     * @param rows1  the lhs tuples
+     * @param cols1  the join columns of the lhs tuples
+     * @param rows2  the rhs tuples
+     * @param cols2  the join columns of the rhs tuples
+     * @param keep2  the rhs columns to append to each result (null for all)
+     * @return the joined tuples
+     */
+    private static List<Comparable[]> nestedLoopJoin(List<Comparable[]> rows1, int[] cols1,
+                                                     List<Comparable[]> rows2, int[] cols2, int[] keep2) {
+        List<Comparable[]> rows = new ArrayList<>();
+        for (int i = 0; i < rows1.size(); i++) {    //for each rows in table1, compare it with
+            Comparable[] row1 = rows1.get(i);
+            for (int j = 0; j < rows2.size(); j++) {    //each rows in table2
+                Comparable[] row2 = rows2.get(j);
+                boolean attrsValuesEqual = true;
+                for (int k = 0; k < cols1.length; k++) {    // compare with each attribute
+                    if (!row1[cols1[k]].equals(row2[cols2[k]])) {
+                        attrsValuesEqual = false;
+                        break;
+                    }
+                }
+                if (attrsValuesEqual) {
+                    rows.add(combine(row1, row2, keep2));
+                }
+            }
+        }
+        return rows;
+    } // nestedLoopJoin
+
+    /************************************************************************************
+     * Join two lists of tuples using a Hash Join.  The smaller input is loaded into a
+     * hash table keyed on its join columns (build phase) and the larger input is
+     * scanned, looking up each of its tuples (probe phase).  Result tuples always have
+     * the lhs columns first.  Keys of columnar inputs are read from the column vectors,
+     * so a columnar probe tuple is built only when it matches.
+     *
+     * @param rows1  the lhs tuples
+     * @param cols1  the join columns of the lhs tuples
+     * @param rows2  the rhs tuples
+     * @param cols2  the join columns of the rhs tuples
+     * @param keep2  the rhs columns to append to each result (null for all)
+     * @return the joined tuples
+     */
+    private static List<Comparable[]> hashJoin(List<Comparable[]> rows1, int[] cols1,
+                                               List<Comparable[]> rows2, int[] cols2, int[] keep2) {
+        boolean buildLeft = rows1.size() < rows2.size();
+        List<Comparable[]> probe = buildLeft ? rows2 : rows1;
+        int[] probeCols = buildLeft ? cols2 : cols1;
+        Map<KeyType, List<Comparable[]>> hash = buildHash(buildLeft ? rows1 : rows2, buildLeft ? cols1 : cols2);
+
+        List<Comparable[]> rows = new ArrayList<>();
+        for (int i = 0; i < probe.size(); i++) {
+            List<Comparable[]> matches = hash.get(keyAt(probe, i, probeCols));
+            if (matches == null) continue;
+            Comparable[] row = probe.get(i);
+            for (int j = 0; j < matches.size(); j++) {
+                if (buildLeft) {
+                    rows.add(combine(matches.get(j), row, keep2));
+                } else {
+                    rows.add(combine(row, matches.get(j), keep2));
+                } // if
+            } // for
+        } // for
+        return rows;
+    } // hashJoin
+
+    /************************************************************************************
+     * Join two lists of tuples using a partitioned parallel Hash Join.  Both inputs are
+     * hash-partitioned on their join columns, so matching tuples land in the same
+     * partition, and each pair of partitions is hash joined as a separate task on the
+     * fork-join pool.  The partition results are concatenated.
+     *
+     * @param rows1  the lhs tuples
+     * @param cols1  the join columns of the lhs tuples
+     * @param rows2  the rhs tuples
+     * @param cols2  the join columns of the rhs tuples
+     * @param keep2  the rhs columns to append to each result (null for all)
+     * @return the joined tuples
+     */
+    private static List<Comparable[]> parallelHashJoin(List<Comparable[]> rows1, final int[] cols1,
+                                                       List<Comparable[]> rows2, final int[] cols2,
+                                                       final int[] keep2) {
+        final List<Comparable[]>[] parts1 = partition(rows1, cols1, null, PARTITIONS);
+        final List<Comparable[]>[] parts2 = partition(rows2, cols2, null, PARTITIONS);
+        List<Callable<List<Comparable[]>>> tasks = new ArrayList<>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            final int q = p;
+            tasks.add(new Callable<List<Comparable[]>>() {
+                public List<Comparable[]> call() {
+                    return hashJoin(parts1[q], cols1, parts2[q], cols2, keep2);
+                }
+            });
+        } // for
+        return concat(invokeAll(tasks));
+    } // parallelHashJoin
+
+    /************************************************************************************
+     * Hash-partition a list of tuples in parallel.  The list is split into chunks that
+     * are partitioned by separate tasks; each partition then collects its part of every
+     * chunk in chunk order, so tuples within a partition keep their input order.  The
+     * partition comes from the high bits of a remixed hash, so the hash tables later built
+     * per partition still spread their tuples over all of their buckets.
+     *
+     * @param rows     the tuples to partition
+     * @param cols     the columns to hash on (after extraction), or null for partition 0
+     * @param extract  the columns to extract from each tuple first, or null to keep it whole
+     * @param n        the number of partitions
+     * @return the partitions
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Comparable[]>[] partition(final List<Comparable[]> rows, final int[] cols,
+                                                  final int[] extract, final int n) {
+        List<Callable<List<Comparable[]>[]>> tasks = new ArrayList<>();
+        for (int lo = 0; lo < rows.size(); lo += CHUNK_SIZE) {
+            final int start = lo;
+            final int end = Math.min(rows.size(), lo + CHUNK_SIZE);
+            tasks.add(new Callable<List<Comparable[]>[]>() {
+                public List<Comparable[]>[] call() {
+                    List<Comparable[]>[] parts = new List[n];
+                    for (int p = 0; p < n; p++) parts[p] = new ArrayList<>();
+                    for (int i = start; i < end; i++) {
+                        Comparable[] row = rows.get(i);
+                        if (extract != null) {
+                            Comparable[] t = row;
+                            row = new Comparable[extract.length];
+                            for (int j = 0; j < extract.length; j++) row[j] = t[extract[j]];
+                        } // if
+                        long h = (cols == null) ? 0 : keyOf(row, cols).hashCode();
+                        h ^= h >>> 33;                   // mix so the partition is chosen from
+                        h *= 0xFF51AFD7ED558CCDL;        // bits unrelated to the HashMap buckets
+                        h ^= h >>> 33;
+                        h *= 0xC4CEB9FE1A85EC53L;
+                        h ^= h >>> 33;
+                        parts[(int) (((h >>> 32) * n) >>> 32)].add(row);
+                    } // for
+                    return parts;
+                }
+            });
+        } // for
+        List<List<Comparable[]>[]> chunks = invokeAll(tasks);
+
+        List<Comparable[]>[] parts = new List[n];
+        for (int p = 0; p < n; p++) {
+            int size = 0;
+            for (List<Comparable[]>[] chunk : chunks) size += chunk[p].size();
+            parts[p] = new ArrayList<>(size);
+            for (List<Comparable[]>[] chunk : chunks) parts[p].addAll(chunk[p]);
+        } // for
+        return parts;
+    } // partition
+
+    /************************************************************************************
+     * Run the tasks on the common fork-join pool and return their results in order.
+     *
+     * @param tasks  the tasks to run
+     * @return the result of each task
      */
-    private Comparable[] extract(Comparable[] t, String[] column) {
-        Comparable[] tup = new Comparable[column.length];
-        int[] colPos = match(column);
-        for (int j = 0; j < column.length; j++) tup[j] = t[colPos[j]];
-        return tup;
-    } // extract
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> f : ForkJoinPool.commonPool().invokeAll(tasks)) results.add(f.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("invokeAll: interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException("invokeAll: task failed", ex.getCause());
+        } // try
+        return results;
+    } // invokeAll
+
+    /************************************************************************************
+     * Concatenate lists of tuples into one list.
+     *
+     * @param lists  the lists to concatenate
+     * @return a list holding the tuples of every list, in order
+     */
+    private static List<Comparable[]> concat(List<List<Comparable[]>> lists) {
+        int size = 0;
+        for (List<Comparable[]> list : lists) size += list.size();
+        List<Comparable[]> rows = new ArrayList<>(size);
+        for (List<Comparable[]> list : lists) rows.addAll(list);
+        return rows;
+    } // concat
+
+    /************************************************************************************
+     * Return the positions of all the columns of this table.
+     *
+     * @return the column positions 0 .. attribute.length - 1
+     */
+    private int[] allCols() {
+        int[] cols = new int[attribute.length];
+        for (int j = 0; j < cols.length; j++) cols[j] = j;
+        return cols;
+    } // allCols
+
+    /************************************************************************************
+     * Build a hash table mapping the values of the given columns to the tuples holding
+     * them.  Tuples sharing a key are kept in their original order.
+     *
+     * @param rows  the tuples to load
+     * @param cols  the columns forming the hash key
+     * @return the hash table
+     */
+    private static Map<KeyType, List<Comparable[]>> buildHash(List<Comparable[]> rows, int[] cols) {
+        Map<KeyType, List<Comparable[]>> hash = new HashMap<>(Math.max(16, rows.size() * 4 / 3 + 1));
+        for (int i = 0; i < rows.size(); i++) {
+            Comparable[] row = rows.get(i);
+            KeyType k = keyOf(row, cols);
+            List<Comparable[]> bucket = hash.get(k);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                hash.put(k, bucket);
+            } // if
+            bucket.add(row);
+        } // for
+        return hash;
+    } // buildHash
+
+    /************************************************************************************
+     * Form a joined tuple from row1 followed by the keep2 columns of row2.
+     *
+     * @param row1   the lhs tuple
+     * @param row2   the rhs tuple
+     * @param keep2  the rhs columns to keep (null for all)
+     * @return the joined tuple
+     */
+    static Comparable[] combine(Comparable[] row1, Comparable[] row2, int[] keep2) {
+        if (keep2 == null) return ArrayUtil.concat(row1, row2);
+        Comparable[] row = Arrays.copyOf(row1, row1.length + keep2.length);
+        for (int c = 0; c < keep2.length; c++) row[row1.length + c] = row2[keep2[c]];
+        return row;
+    } // combine
+
+    /************************************************************************************
+     * Build a hash set holding every tuple in the list (as a whole-tuple key).
+     *
+     * @param rows  the tuples to load
+     * @return the set of tuples
+     */
+    private static Set<KeyType> rowSet(List<Comparable[]> rows) {
+        Set<KeyType> rowSet = new HashSet<>(Math.max(16, rows.size() * 4 / 3 + 1));
+        for (int i = 0; i < rows.size(); i++) rowSet.add(new KeyType(rows.get(i)));
+        return rowSet;
+    } // rowSet
+
+    /************************************************************************************
+     * Return a sorted copy of the list of tuples (the tuples themselves are shared).
+     *
+     * @param rows  the tuples to sort
+     * @return the tuples in ascending order
+     */
+    private static List<Comparable[]> sortRows(List<Comparable[]> rows) {
+        Comparable[][] sorted = rows.toArray(new Comparable[rows.size()][]);
+        Arrays.sort(sorted, new Comparator<Comparable[]>() {
+            public int compare(Comparable[] t1, Comparable[] t2) {
+                return compareRows(t1, t2);
+            }
+        });
+        return Arrays.asList(sorted);
+    } // sortRows
+
+    /************************************************************************************
+     * Compare two tuples from compatible tables attribute by attribute.
+     *
+     * @param t1  the first tuple
+     * @param t2  the second tuple
+     * @return negative, zero or positive as t1 is less than, equal to or greater than t2
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareRows(Comparable[] t1, Comparable[] t2) {
+        for (int j = 0; j < t1.length; j++) {
+            int c = t1[j].compareTo(t2[j]);
+            if (c != 0) return c;
+        } // for
+        return 0;
+    } // compareRows
+
+    /************************************************************************************
+     * Replace the values of the tuple's dictionary columns by their interned instances.
+     *
+     * @param tup  the tuple being inserted
+     */
+    private void intern(Comparable[] tup) {
+        if (dict == null) return;
+        for (int j = 0; j < dict.length; j++) {
+            if (dict[j] != null) tup[j] = dict[j].intern((String) tup[j]);
+        } // for
+    } // intern
+
+    /************************************************************************************
+     * Return the tuple with the given key (a probe key, which must not be stored).  A
+     * COLUMNAR table, having no primary index, scans its key columns.
+     *
+     * @param keyVal  the key to find
+     * @return the tuple (the last inserted if keys repeat), or null if there is none
+     */
+    private Comparable[] find(KeyType keyVal) {
+        ColumnStore store = columns();
+        if (store == null) return index.get(keyVal);
+        int[] pos = store.selectEqual(keyCols(), keyVal.values());
+        return (pos.length == 0) ? null : store.get(pos[pos.length - 1]);
+    } // find
+
+    /************************************************************************************
+     * Extract the values at the given column positions from tuple t as a key.
+     *
+     * @param t     the tuple to extract from
+     * @param cols  the column positions forming the key
+     * @return the key value
+     */
+    static KeyType keyOf(Comparable[] t, int[] cols) {
+        if (cols.length == 1) return KeyType.of(t[cols[0]]);
+        Comparable[] keyVal = new Comparable[cols.length];
+        for (int j = 0; j < cols.length; j++) keyVal[j] = t[cols[j]];
+        return new KeyType(keyVal);
+    } // keyOf
+
+    /************************************************************************************
+     * Return the values at the given column positions of the i-th tuple as a key.  For a
+     * columnar list the values are read from the column vectors without building the
+     * tuple.
+     *
+     * @param rows  the tuples
+     * @param i     the tuple number
+     * @param cols  the column positions forming the key
+     * @return the key value
+     */
+    private static KeyType keyAt(List<Comparable[]> rows, int i, int[] cols) {
+        if (rows instanceof ColumnStore) return KeyType.of(((ColumnStore) rows).get(i, cols));
+        return keyOf(rows.get(i), cols);
+    } // keyAt
+
+    /************************************************************************************
+     * Return the order of tuples on the given columns (the first column first).
+     *
+     * @param cols  the column positions to compare
+     * @param asc   whether the order is ascending (or else descending)
+     * @return the tuple comparator
+     */
+    static Comparator<Comparable[]> rowOrder(final int[] cols, final boolean asc) {
+        return new Comparator<Comparable[]>() {
+            @SuppressWarnings("unchecked")
+            public int compare(Comparable[] t1, Comparable[] t2) {
+                for (int c : cols) {
+                    int cmp = t1[c].compareTo(t2[c]);
+                    if (cmp != 0) return asc ? cmp : -cmp;
+                } // for
+                return 0;
+            }
+        };
+    } // rowOrder
 
     /************************************************************************************
      * Check the size of the tuple (number of elements in list) as well as the type of
@@ -528,6 +2674,13 @@ public class Table {
      *          with the given domains
      */
     private boolean typeCheck(Comparable[] t) {
+        if (columns() != null || log != null) {     // column vectors and the log need every value in its domain
+            if (t.length != domain.length) return false;
+            for (int i = 0; i < t.length; i++) {
+                if (!domain[i].isInstance(t[i])) return false;
+            }
+            return true;
+        }
         if (!tuples.isEmpty() && t.length != 0) {
             if (t.length != tuples.get(0).length)
                 return false;
@@ -576,6 +2729,43 @@ public class Table {
         return obj;
     } // extractDom
 
+    /************************************************************************************
+     * A fork-join task that filters a range of chunks of a list of tuples, storing the
+     * tuples of chunk i that satisfy the predicate in result[i].
+     */
+    private static class FilterTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Comparable[]> rows;
+        private final PredicateMod<Comparable[]> predicate;
+        private final List<Comparable[]>[] result;
+        private final int lo, hi;
+
+        FilterTask(List<Comparable[]> _rows, PredicateMod<Comparable[]> _predicate,
+                   List<Comparable[]>[] _result, int _lo, int _hi) {
+            rows = _rows;
+            predicate = _predicate;
+            result = _result;
+            lo = _lo;
+            hi = _hi;
+        } // constructor
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new FilterTask(rows, predicate, result, lo, mid),
+                          new FilterTask(rows, predicate, result, mid, hi));
+                return;
+            } // if
+            int end = Math.min(rows.size(), (lo + 1) * CHUNK_SIZE);
+            List<Comparable[]> chunk = new ArrayList<>();
+            for (int i = lo * CHUNK_SIZE; i < end; i++) {
+                Comparable[] tup = rows.get(i);
+                if (predicate.test(tup)) chunk.add(tup);
+            } // for
+            result[lo] = chunk;
+        } // compute
+    } // FilterTask
+
     public String toString(){
         StringBuilder builder = new StringBuilder();
         builder.append("----------------------------------------------------------------------------------------------------\n");
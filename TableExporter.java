@@ -0,0 +1,193 @@
+/****************************************************************************************
+ * @file  TableExporter.java
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/****************************************************************************************
+ * The TableExporter class streams the tuples of a table to a Writer one at a time, so its
+ * memory use does not depend on the size of the table (unlike Table.toString, which
+ * builds the whole text in memory).  A page of the table may be written by giving an
+ * offset and a limit.  Two formats are supported:
+ *
+ * CSV: a header line of attribute names, then one line per tuple, fields separated by
+ * commas; fields holding a comma, quote or line break are quoted, doubling any quotes, so
+ * the output can be read back with TableLoader.
+ *
+ * FIXED_WIDTH: columns padded with spaces to the width of their longest value (or name)
+ * in the page, numbers right-justified and other values left-justified.  Finding the
+ * widths takes an extra pass over the page.
+ */
+public class TableExporter
+{
+    /** The export formats
+     */
+    public enum Format {
+        CSV, FIXED_WIDTH
+    }
+
+    /** The size of the character buffer in front of the writer
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The table to export
+     */
+    private final Table table;
+
+    /** The export format
+     */
+    private final Format format;
+
+    /*************************************************************************************
+     * Construct an exporter for the given table.
+     * @param _table   the table to export
+     * @param _format  the format to write in
+     */
+    public TableExporter (Table _table, Format _format)
+    {
+        table  = _table;
+        format = _format;
+    } // constructor
+
+    /*************************************************************************************
+     * Write the header and the tuples offset, offset + 1, ... (at most limit of them) to
+     * the writer.  The writer is flushed but not closed.
+     * @param w       the writer
+     * @param offset  the position of the first tuple to write
+     * @param limit   the maximum number of tuples to write
+     * @return  the number of tuples written
+     * @throws IOException if the writer fails
+     */
+    public int write (Writer w, int offset, int limit) throws IOException
+    {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException ("negative offset or limit");
+        List <Comparable []> tuples = table.tuples;
+        int from = Math.min (offset, tuples.size ());                          // a stable page
+        int to   = (int) Math.min ((long) from + limit, tuples.size ());
+        String [] attribute = table.getAttribute ();
+        Buffer out = new Buffer (w);
+
+        if (format == Format.CSV) {
+            for (int j = 0; j < attribute.length; j++) {
+                if (j > 0) out.append (',');
+                csvField (out, attribute [j]);
+            } // for
+            out.append ('\n');
+            for (int i = from; i < to; i++) {
+                Comparable [] t = tuples.get (i);
+                for (int j = 0; j < t.length; j++) {
+                    if (j > 0) out.append (',');
+                    csvField (out, t [j]);
+                } // for
+                out.append ('\n');
+            } // for
+        } else {
+            Class [] domain = table.getDomain ();
+            boolean [] right = new boolean [domain.length];
+            int [] width = new int [attribute.length];
+            for (int j = 0; j < attribute.length; j++) {
+                right [j] = Number.class.isAssignableFrom (domain [j]);
+                width [j] = attribute [j].length ();
+            } // for
+            for (int i = from; i < to; i++) {                                  // first pass: widths
+                Comparable [] t = tuples.get (i);
+                for (int j = 0; j < t.length; j++) width [j] = Math.max (width [j], String.valueOf (t [j]).length ());
+            } // for
+            for (int j = 0; j < attribute.length; j++) padded (out, attribute [j], width [j], right [j], j == 0);
+            out.append ('\n');
+            for (int i = from; i < to; i++) {
+                Comparable [] t = tuples.get (i);
+                for (int j = 0; j < t.length; j++) padded (out, String.valueOf (t [j]), width [j], right [j], j == 0);
+                out.append ('\n');
+            } // for
+        } // if
+        out.flush ();
+        return to - from;
+    } // write
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * A fixed-size character buffer in front of a writer (a BufferedWriter would do, but
+     * this one also spares the per-call synchronization of Writer.write).
+     */
+    private static class Buffer
+    {
+        private final Writer w;
+        private final char [] buf = new char [BUFFER_SIZE];
+        private int n = 0;
+
+        Buffer (Writer _w) { w = _w; }
+
+        void append (char c) throws IOException
+        {
+            if (n == buf.length) drain ();
+            buf [n++] = c;
+        } // append
+
+        void append (String s) throws IOException
+        {
+            for (int i = 0, len = s.length (); i < len; ) {
+                if (n == buf.length) drain ();
+                int k = Math.min (len - i, buf.length - n);
+                s.getChars (i, i + k, buf, n);
+                n += k;
+                i += k;
+            } // for
+        } // append
+
+        void drain () throws IOException
+        {
+            w.write (buf, 0, n);
+            n = 0;
+        } // drain
+
+        void flush () throws IOException
+        {
+            drain ();
+            w.flush ();
+        } // flush
+    } // Buffer class
+
+    /*************************************************************************************
+     * Append a value as a CSV field, quoting it if it holds a comma, quote or line break.
+     */
+    private static void csvField (Buffer out, Comparable value) throws IOException
+    {
+        String s = String.valueOf (value);
+        boolean quote = false;
+        for (int i = 0; i < s.length () && ! quote; i++) {
+            char c = s.charAt (i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        } // for
+        if (! quote) {
+            out.append (s);
+            return;
+        } // if
+        out.append ('"');
+        for (int i = 0; i < s.length (); i++) {
+            char c = s.charAt (i);
+            if (c == '"') out.append ('"');
+            out.append (c);
+        } // for
+        out.append ('"');
+    } // csvField
+
+    /*************************************************************************************
+     * Append a value padded with spaces to the given width, preceded by a space unless it
+     * is in the first column.
+     */
+    private static void padded (Buffer out, String s, int width, boolean right, boolean first) throws IOException
+    {
+        if (! first) out.append (' ');
+        if (! right) out.append (s);
+        for (int k = s.length (); k < width; k++) out.append (' ');
+        if (right) out.append (s);
+    } // padded
+
+} // TableExporter class
+
@@ -0,0 +1,624 @@
+/****************************************************************************************
+ * @file  TableFile.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/****************************************************************************************
+ * The TableFile class stores a table in a binary, page-oriented file and maps it back
+ * into memory.  The file holds:
+ * a header: magic number, format version, table name, attributes, domains, key and the
+ * sequence number of the last write-ahead log record the file includes;
+ * pages of at most PAGE_SIZE bytes (larger only for a single oversized tuple), each a
+ * tuple count, the offsets of its tuples within the page and the tuples encoded by a
+ * RowCodec;
+ * a page directory: the file offset and first tuple number of each page;
+ * the primary index: the tuple numbers sorted by key (the last tuple for a repeated key);
+ * a trailer: the offsets of the directory and index, the counts and the magic number.
+ * Opening a file reads only the header, directory and trailer, and maps the pages and
+ * index with FileChannel.map, so the operating system loads pages on first access.
+ * Tuples are decoded when read; keys are found by binary search over the mapped index.
+ */
+public class TableFile
+{
+    /** The magic number starting and ending every table file ("TBL1")
+     */
+    private static final int MAGIC = 0x54424C31;
+
+    /** The version of the file format (2 added the log sequence number)
+     */
+    private static final int FORMAT = 2;
+
+    /** The target size of a page in bytes
+     */
+    public static final int PAGE_SIZE = 8192;
+
+    /** The maximum size of one mapped segment of pages (a mapping is limited to 2 GB)
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /** The size of the trailer in bytes
+     */
+    private static final int TRAILER_SIZE = 32;
+
+    /** The schema of the stored table
+     */
+    private final String name;
+    private final String [] attribute;
+    private final Class [] domain;
+    private final String [] key;
+
+    /** The log sequence number (LSN) of the last logged insert the file includes
+     */
+    private final long lsn;
+
+    /** The codec decoding the stored tuples
+     */
+    private final RowCodec codec;
+
+    /** The column positions of the key
+     */
+    private final int [] keyCols;
+
+    /** The number of stored tuples and of distinct stored keys
+     */
+    private final int nRows, nKeys;
+
+    /** The first tuple number of each page, and each page's segment and offset within it
+     */
+    private final int [] firstRow, pageSegment, pageStart;
+
+    /** The mapped segments of pages
+     */
+    private final MappedByteBuffer [] segment;
+
+    /** The mapped primary index (tuple numbers sorted by key)
+     */
+    private final MappedByteBuffer sorted;
+
+    //------------------------------------------------------------------------------------
+    // Writing
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Write the given table to a file, replacing any existing file.
+     * @param table  the table to write
+     * @param path   the path of the file
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if a domain is not supported or a value is null
+     */
+    public static void write (Table table, Path path) throws IOException
+    {
+        write (table, path, 0);
+    } // write
+
+    /*************************************************************************************
+     * Write the given table to a file, replacing any existing file, and record that it
+     * includes the write-ahead log up to the given LSN.  The file is written under a
+     * temporary name, forced to disk and then moved into place, so a crash leaves either
+     * the old or the new file, and a table opened from the old file keeps reading it.
+     * @param table  the table to write
+     * @param path   the path of the file
+     * @param lsn    the LSN of the last logged insert included
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if a domain is not supported or a value is null
+     */
+    public static void write (Table table, Path path, long lsn) throws IOException
+    {
+        Class [] domain = table.getDomain ();
+        RowCodec codec  = new RowCodec (domain);
+        List <Comparable []> tuples = table.tuples;
+        int n = tuples.size ();
+        int [] keyCols = table.match (table.getKey ());
+
+        Path tmp = path.resolveSibling (path.getFileName () + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open (tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully (ch, ByteBuffer.wrap (header (table, lsn)));
+
+                List <Long> pageOffset = new ArrayList <> ();             // write the pages
+                List <Integer> firstRow = new ArrayList <> ();
+                List <Integer> offsets  = new ArrayList <> ();
+                ByteBuffer data    = ByteBuffer.allocate (PAGE_SIZE);
+                ByteBuffer scratch = ByteBuffer.allocate (256);
+                for (int i = 0; i < n; i++) {
+                    Comparable [] t = tuples.get (i);
+                    for (int j = 0; j < t.length; j++) {
+                        if (t [j] == null) throw new IllegalArgumentException ("null value in tuple " + i);
+                    } // for
+                    for ( ; ; ) {
+                        try {
+                            scratch.clear ();
+                            codec.encode (t, scratch);
+                            break;
+                        } catch (BufferOverflowException ex) {
+                            scratch = ByteBuffer.allocate (2 * scratch.capacity ());
+                        } // try
+                    } // for
+                    scratch.flip ();
+                    int pageBytes = 4 + 4 * (offsets.size () + 1) + data.position () + scratch.remaining ();
+                    if (! offsets.isEmpty () && pageBytes > PAGE_SIZE) {
+                        pageOffset.add (ch.position ());
+                        firstRow.add (i - offsets.size ());
+                        writePage (ch, offsets, data);
+                    } // if
+                    if (data.remaining () < scratch.remaining ()) {
+                        data = ByteBuffer.allocate (data.position () + scratch.remaining ()).put (data.flip ());
+                    } // if
+                    offsets.add (data.position ());
+                    data.put (scratch);
+                } // for
+                if (! offsets.isEmpty ()) {
+                    pageOffset.add (ch.position ());
+                    firstRow.add (n - offsets.size ());
+                    writePage (ch, offsets, data);
+                } // if
+
+                long dirOffset = ch.position ();                           // the page directory
+                ByteBuffer dir = ByteBuffer.allocate (12 * pageOffset.size ());
+                for (int p = 0; p < pageOffset.size (); p++) dir.putLong (pageOffset.get (p)).putInt (firstRow.get (p));
+                dir.flip ();
+                writeFully (ch, dir);
+
+                long indexOffset = ch.position ();                         // the primary index
+                int [] order = sortByKey (tuples, n, keyCols);
+                ByteBuffer idx = ByteBuffer.allocate (4 * order.length);
+                for (int r : order) idx.putInt (r);
+                idx.flip ();
+                writeFully (ch, idx);
+
+                ByteBuffer trailer = ByteBuffer.allocate (TRAILER_SIZE);
+                trailer.putLong (dirOffset).putLong (indexOffset).putInt (n).putInt (pageOffset.size ())
+                       .putInt (order.length).putInt (MAGIC).flip ();
+                writeFully (ch, trailer);
+                ch.force (true);
+            } // try
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists (tmp);                              // leave no partial file
+            throw ex;
+        } // try
+
+        try {
+            Files.move (tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move (tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        } // try
+        Path dir = path.toAbsolutePath ().getParent ();
+        try (FileChannel d = FileChannel.open (dir, StandardOpenOption.READ)) {
+            d.force (true);                                          // make the rename durable
+        } catch (IOException ex) {
+            // not supported on every platform; the move itself has succeeded
+        } // try
+    } // write
+
+    /*************************************************************************************
+     * Return the header of the file for the given table.
+     */
+    private static byte [] header (Table table, long lsn) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream out = new DataOutputStream (bytes);
+        out.writeInt (MAGIC);
+        out.writeInt (FORMAT);
+        out.writeUTF (table.getName ());
+        String [] attribute = table.getAttribute ();
+        out.writeInt (attribute.length);
+        for (String a : attribute) out.writeUTF (a);
+        for (Class c : table.getDomain ()) out.writeUTF (c.getName ());
+        out.writeInt (table.getKey ().length);
+        for (String k : table.getKey ()) out.writeUTF (k);
+        out.writeLong (lsn);
+        out.flush ();
+        return bytes.toByteArray ();
+    } // header
+
+    /*************************************************************************************
+     * Write one page (tuple count, tuple offsets, tuple data) and reset the buffers.
+     */
+    private static void writePage (FileChannel ch, List <Integer> offsets, ByteBuffer data) throws IOException
+    {
+        int n = offsets.size ();
+        ByteBuffer head = ByteBuffer.allocate (4 + 4 * n);
+        head.putInt (n);
+        for (int off : offsets) head.putInt (4 + 4 * n + off);
+        head.flip ();
+        data.flip ();
+        writeFully (ch, head);
+        writeFully (ch, data);
+        offsets.clear ();
+        data.clear ();
+    } // writePage
+
+    /*************************************************************************************
+     * Write the whole buffer to the channel.
+     */
+    private static void writeFully (FileChannel ch, ByteBuffer buf) throws IOException
+    {
+        while (buf.hasRemaining ()) ch.write (buf);
+    } // writeFully
+
+    /*************************************************************************************
+     * Return the numbers of the first n tuples sorted by key, keeping only the last tuple
+     * of each run of equal keys (the tuple an in-memory index would hold).
+     */
+    private static int [] sortByKey (List <Comparable []> tuples, int n, int [] keyCols)
+    {
+        final KeyType [] keys = new KeyType [n];
+        Integer [] order = new Integer [n];
+        for (int i = 0; i < n; i++) {
+            keys [i]  = Table.keyOf (tuples.get (i), keyCols);
+            order [i] = i;
+        } // for
+        Arrays.sort (order, new Comparator <Integer> () {
+            public int compare (Integer i1, Integer i2)
+            {
+                int c = keys [i1].compareTo (keys [i2]);
+                return (c != 0) ? c : i1.compareTo (i2);
+            } // compare
+        });
+        int [] unique = new int [n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && keys [order [i]].equals (keys [order [i + 1]])) continue;
+            unique [m++] = order [i];
+        } // for
+        return Arrays.copyOf (unique, m);
+    } // sortByKey
+
+    //------------------------------------------------------------------------------------
+    // Reading
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Open a table file, mapping its pages and index into memory.
+     * @param path  the path of the file
+     * @return  the opened file
+     * @throws IOException if the file cannot be read or is not a table file
+     */
+    public static TableFile open (Path path) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open (path, StandardOpenOption.READ)) {
+            return new TableFile (ch);
+        } // try
+    } // open
+
+    /*************************************************************************************
+     * Read the header, directory and trailer from the channel and map the rest.
+     */
+    private TableFile (FileChannel ch) throws IOException
+    {
+        long size = ch.size ();
+        if (size < TRAILER_SIZE) throw new IOException ("not a table file (too short)");
+        ByteBuffer trailer = readFully (ch, size - TRAILER_SIZE, TRAILER_SIZE);
+        long dirOffset   = trailer.getLong ();
+        long indexOffset = trailer.getLong ();
+        nRows            = trailer.getInt ();
+        int nPages       = trailer.getInt ();
+        nKeys            = trailer.getInt ();
+        if (trailer.getInt () != MAGIC) throw new IOException ("not a table file (bad trailer)");
+
+        ByteBuffer dir = readFully (ch, dirOffset, 12 * nPages);
+        long [] pageOffset = new long [nPages];
+        firstRow = new int [nPages];
+        for (int p = 0; p < nPages; p++) {
+            pageOffset [p] = dir.getLong ();
+            firstRow [p]   = dir.getInt ();
+        } // for
+
+        long headerEnd = (nPages > 0) ? pageOffset [0] : dirOffset;
+        DataInputStream in = new DataInputStream (new ByteArrayInputStream (readFully (ch, 0, (int) headerEnd).array ()));
+        if (in.readInt () != MAGIC) throw new IOException ("not a table file (bad header)");
+        int format = in.readInt ();
+        if (format < 1 || format > FORMAT) throw new IOException ("unsupported table file format " + format);
+        name = in.readUTF ();
+        attribute = new String [in.readInt ()];
+        for (int j = 0; j < attribute.length; j++) attribute [j] = in.readUTF ();
+        domain = new Class [attribute.length];
+        try {
+            for (int j = 0; j < domain.length; j++) domain [j] = Class.forName (in.readUTF ());
+        } catch (ClassNotFoundException ex) {
+            throw new IOException ("unknown domain " + ex.getMessage ());
+        } // try
+        key = new String [in.readInt ()];
+        for (int j = 0; j < key.length; j++) key [j] = in.readUTF ();
+        lsn = (format >= 2) ? in.readLong () : 0;
+        codec = new RowCodec (domain);
+        keyCols = new int [key.length];
+        for (int j = 0; j < key.length; j++) keyCols [j] = Arrays.asList (attribute).indexOf (key [j]);
+
+        pageSegment = new int [nPages];                                // map the pages
+        pageStart   = new int [nPages];
+        List <MappedByteBuffer> segs = new ArrayList <> ();
+        for (int p = 0; p < nPages; ) {
+            long start = pageOffset [p];
+            int q = p + 1;
+            while (q < nPages && pageOffset [q] - start <= SEGMENT_SIZE) q++;
+            long end = (q < nPages) ? pageOffset [q] : dirOffset;
+            segs.add (ch.map (FileChannel.MapMode.READ_ONLY, start, end - start));
+            for ( ; p < q; p++) {
+                pageSegment [p] = segs.size () - 1;
+                pageStart [p]   = (int) (pageOffset [p] - start);
+            } // for
+        } // for
+        segment = segs.toArray (new MappedByteBuffer [0]);
+
+        if (4L * nKeys > Integer.MAX_VALUE) throw new IOException ("index too large to map");
+        sorted = ch.map (FileChannel.MapMode.READ_ONLY, indexOffset, 4L * nKeys);
+    } // constructor
+
+    /*************************************************************************************
+     * Read len bytes starting at the given position of the channel.
+     */
+    private static ByteBuffer readFully (FileChannel ch, long pos, int len) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate (len);
+        while (buf.hasRemaining ()) {
+            if (ch.read (buf, pos + buf.position ()) < 0) throw new EOFException ("table file truncated");
+        } // while
+        buf.flip ();
+        return buf;
+    } // readFully
+
+    /*************************************************************************************
+     * Return the name of the stored table.
+     * @return  the table name
+     */
+    public String getName ()
+    {
+        return name;
+    } // getName
+
+    /*************************************************************************************
+     * Return the attributes of the stored table.
+     * @return  the attribute names
+     */
+    public String [] getAttribute ()
+    {
+        return attribute;
+    } // getAttribute
+
+    /*************************************************************************************
+     * Return the domains of the stored table.
+     * @return  the attribute domains
+     */
+    public Class [] getDomain ()
+    {
+        return domain;
+    } // getDomain
+
+    /*************************************************************************************
+     * Return the primary key of the stored table.
+     * @return  the key attributes
+     */
+    public String [] getKey ()
+    {
+        return key;
+    } // getKey
+
+    /*************************************************************************************
+     * Return the LSN of the last write-ahead log record included in the file.
+     * @return  the log sequence number (0 if none)
+     */
+    public long lsn ()
+    {
+        return lsn;
+    } // lsn
+
+    /*************************************************************************************
+     * Return the number of stored tuples.
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return nRows;
+    } // size
+
+    /*************************************************************************************
+     * Return whether two stored tuples share a key.
+     * @return  whether some key is repeated
+     */
+    public boolean hasDuplicateKeys ()
+    {
+        return nKeys < nRows;
+    } // hasDuplicateKeys
+
+    /*************************************************************************************
+     * Decode and return the i-th stored tuple.
+     * @param i  the tuple number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= nRows) throw new IndexOutOfBoundsException ("index " + i + ", size " + nRows);
+        int p = Arrays.binarySearch (firstRow, i);
+        if (p < 0) p = -p - 2;                                   // the page starting before i
+        MappedByteBuffer buf = segment [pageSegment [p]];
+        int page = pageStart [p];
+        return codec.decode (buf, page + buf.getInt (page + 4 + 4 * (i - firstRow [p])));
+    } // get
+
+    /*************************************************************************************
+     * Return a list of the tuples, decoding stored tuples on access.  Tuples added to the
+     * list are kept in memory; like the stored ones, they may be read while other threads
+     * add more.
+     * @return  the tuple list
+     */
+    public List <Comparable []> tuples ()
+    {
+        return new Rows ();
+    } // tuples
+
+    /*************************************************************************************
+     * Return a primary index over the stored tuples, searching the stored index.  Entries
+     * put into the index are kept in memory and take precedence; many threads may put
+     * and get at once.
+     * @return  the index
+     */
+    public Map <KeyType, Comparable []> index ()
+    {
+        return new Index ();
+    } // index
+
+    /*************************************************************************************
+     * Return the key of the i-th entry of the stored index.
+     */
+    private KeyType keyAt (int i)
+    {
+        return Table.keyOf (get (sorted.getInt (4 * i)), keyCols);
+    } // keyAt
+
+    /*************************************************************************************
+     * Return the position of the first entry of the stored index whose key is at least
+     * (or, if strict, greater than) k.
+     */
+    private int lowerBound (KeyType k, boolean strict)
+    {
+        int lo = 0, hi = nKeys;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = keyAt (mid).compareTo (k);
+            if (c < 0 || (strict && c == 0)) lo = mid + 1;
+            else hi = mid;
+        } // while
+        return lo;
+    } // lowerBound
+
+    /*************************************************************************************
+     * Return the stored tuple with the given key, or null.
+     */
+    private Comparable [] find (KeyType k)
+    {
+        int i = lowerBound (k, false);
+        if (i == nKeys) return null;
+        Comparable [] t = get (sorted.getInt (4 * i));
+        return Table.keyOf (t, keyCols).equals (k) ? t : null;
+    } // find
+
+    /*************************************************************************************
+     * The stored tuples followed by those added since the file was opened.
+     */
+    private class Rows
+           extends AbstractList <Comparable []>
+           implements RandomAccess
+    {
+        private final AppendOnlyList added = new AppendOnlyList ();
+
+        public Comparable [] get (int i)
+        {
+            return (i < nRows) ? TableFile.this.get (i) : added.get (i - nRows);
+        } // get
+
+        public boolean add (Comparable [] t)
+        {
+            return added.add (t);
+        } // add
+
+        public int size ()
+        {
+            return nRows + added.size ();
+        } // size
+    } // Rows class
+
+    /*************************************************************************************
+     * The stored index overlaid with the entries put since the file was opened.
+     */
+    private class Index
+           extends AbstractMap <KeyType, Comparable []>
+           implements RangeIndex
+    {
+        private final ConcurrentSkipListMap <KeyType, Comparable []> added = new ConcurrentSkipListMap <> ();
+        private final AtomicInteger newKeys = new AtomicInteger ();
+
+        public Comparable [] get (Object k)
+        {
+            if (! (k instanceof KeyType)) return null;
+            Comparable [] t = added.get (k);
+            return (t != null) ? t : find ((KeyType) k);
+        } // get
+
+        public Comparable [] put (KeyType k, Comparable [] t)
+        {
+            Comparable [] old = added.put (k, t);
+            if (old != null) return old;
+            old = find (k);
+            if (old == null) newKeys.incrementAndGet ();
+            return old;
+        } // put
+
+        public int size ()
+        {
+            return nKeys + newKeys.get ();
+        } // size
+
+        public SortedMap <KeyType, Comparable []> range (KeyType from, boolean fromIncl, KeyType to, boolean toIncl)
+        {
+            SortedMap <KeyType, Comparable []> result = new TreeMap <> ();
+            if (from != null && to != null && from.compareTo (to) > 0) return result;
+            int lo = (from == null) ? 0 : lowerBound (from, ! fromIncl);
+            int hi = (to == null) ? nKeys : lowerBound (to, toIncl);
+            for (int i = lo; i < hi; i++) {
+                Comparable [] t = TableFile.this.get (sorted.getInt (4 * i));
+                result.put (Table.keyOf (t, keyCols), t);
+            } // for
+            NavigableMap <KeyType, Comparable []> sub = added;
+            if (from != null) sub = sub.tailMap (from, fromIncl);
+            if (to != null)   sub = sub.headMap (to, toIncl);
+            result.putAll (sub);
+            return result;
+        } // range
+
+        public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+                public int size () { return Index.this.size (); }
+
+                public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+                {
+                    return new Iterator <Map.Entry <KeyType, Comparable []>> () {   // merge in key order
+                        private int i = 0;
+                        private final Iterator <Map.Entry <KeyType, Comparable []>> it = added.entrySet ().iterator ();
+                        private Map.Entry <KeyType, Comparable []> nextAdded = it.hasNext () ? it.next () : null;
+                        private Map.Entry <KeyType, Comparable []> nextStored = stored ();
+
+                        private Map.Entry <KeyType, Comparable []> stored ()
+                        {
+                            if (i == nKeys) return null;
+                            Comparable [] t = TableFile.this.get (sorted.getInt (4 * i++));
+                            return new AbstractMap.SimpleImmutableEntry <> (Table.keyOf (t, keyCols), t);
+                        } // stored
+
+                        public boolean hasNext () { return nextAdded != null || nextStored != null; }
+
+                        public Map.Entry <KeyType, Comparable []> next ()
+                        {
+                            if (! hasNext ()) throw new NoSuchElementException ();
+                            int c = (nextAdded == null) ? 1 : (nextStored == null) ? -1
+                                                            : nextAdded.getKey ().compareTo (nextStored.getKey ());
+                            Map.Entry <KeyType, Comparable []> e;
+                            if (c <= 0) {
+                                e = nextAdded;
+                                nextAdded = it.hasNext () ? it.next () : null;
+                                if (c == 0) nextStored = stored ();          // overridden
+                            } else {
+                                e = nextStored;
+                                nextStored = stored ();
+                            } // if
+                            return e;
+                        } // next
+                    };
+                } // iterator
+            };
+        } // entrySet
+    } // Index class
+
+} // TableFile class
+
@@ -0,0 +1,497 @@
+/****************************************************************************************
+ * @file  TableLoader.java
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The TableLoader class bulk loads a table from a delimited text file (CSV, TSV, ...)
+ * encoded in UTF-8.  The file is read through a FileChannel into a byte buffer and each
+ * field is parsed from the bytes straight into the domain of its column, without first
+ * splitting lines into strings; only String fields (and unusual numbers) create strings.
+ * Fields may be quoted with '"' (a doubled quote inside stands for one quote), lines may
+ * end in "\n" or "\r\n", and blank lines are skipped.  Parsed tuples are inserted in
+ * batches of BATCH_SIZE with insertAll.  Malformed lines are counted and skipped.
+ *
+ * A parallel load splits the file into chunks at line breaks, parses the chunks on
+ * separate threads and inserts the batches in file order, so the table ends up exactly
+ * as after a sequential load.  Quoted fields must not contain line breaks then.
+ */
+public class TableLoader
+{
+    /** The number of tuples inserted per batch
+     */
+    public static final int BATCH_SIZE = 8192;
+
+    /** The initial size of each read buffer
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** The column kinds
+     */
+    private static final int INT = 0, LONG = 1, SHORT = 2, BYTE = 3, CHAR = 4, DOUBLE = 5,
+                             FLOAT = 6, STRING = 7;
+
+    /** Exact powers of ten for the fast path of parseDouble
+     */
+    private static final double [] POW10 = new double [23];
+    static {
+        POW10 [0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) POW10 [i] = POW10 [i - 1] * 10.0;
+    } // static
+
+    /** Marks the end of a chunk's batches
+     */
+    private static final List <Comparable []> END = new ArrayList <> ();
+
+    /** The table being loaded
+     */
+    private final Table table;
+
+    /** The kind of each column
+     */
+    private final int [] kind;
+
+    /** The field delimiter
+     */
+    private final byte delim;
+
+    /** Whether the first line holds the column names (and is skipped)
+     */
+    private final boolean header;
+
+    /** The number of malformed lines skipped
+     */
+    private final AtomicInteger malformed = new AtomicInteger ();
+
+    /*************************************************************************************
+     * Construct a loader for the given table.
+     * @param _table      the table to load
+     * @param delimiter   the field delimiter (e.g. ',' or '\t'; must be ASCII)
+     * @param _header     whether the first line holds the column names
+     * @throws IllegalArgumentException if a domain is not supported
+     */
+    public TableLoader (Table _table, char delimiter, boolean _header)
+    {
+        if (delimiter > 127 || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException ("bad delimiter " + (int) delimiter);
+        } // if
+        table  = _table;
+        delim  = (byte) delimiter;
+        header = _header;
+        Class [] domain = table.getDomain ();
+        kind = new int [domain.length];
+        for (int j = 0; j < domain.length; j++) {
+            Class c = domain [j];
+            if      (c == Integer.class)   kind [j] = INT;
+            else if (c == Long.class)      kind [j] = LONG;
+            else if (c == Short.class)     kind [j] = SHORT;
+            else if (c == Byte.class)      kind [j] = BYTE;
+            else if (c == Character.class) kind [j] = CHAR;
+            else if (c == Double.class)    kind [j] = DOUBLE;
+            else if (c == Float.class)     kind [j] = FLOAT;
+            else if (c == String.class)    kind [j] = STRING;
+            else throw new IllegalArgumentException ("cannot load domain " + c.getName ());
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Load the file sequentially.
+     * @param path  the path of the file
+     * @return  the number of tuples inserted
+     * @throws IOException if the file cannot be read
+     */
+    public int load (Path path) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open (path, StandardOpenOption.READ)) {
+            final int [] inserted = new int [1];
+            parseChunk (ch, 0, ch.size (), header, new Sink () {
+                public void accept (List <Comparable []> batch) { inserted [0] += table.insertAll (batch); }
+            });
+            report ();
+            return inserted [0];
+        } catch (InterruptedException ex) {                    // not thrown by this sink
+            throw new IOException ("load interrupted");
+        } // try
+    } // load
+
+    /*************************************************************************************
+     * Load the file, parsing chunks of it on the given number of threads.  Small files are
+     * loaded sequentially.
+     * @param path      the path of the file
+     * @param nThreads  the number of parsing threads
+     * @return  the number of tuples inserted
+     * @throws IOException if the file cannot be read
+     */
+    public int loadParallel (Path path, int nThreads) throws IOException
+    {
+        if (nThreads < 2 || Files.size (path) < 2L * BUFFER_SIZE) return load (path);
+
+        try (final FileChannel ch = FileChannel.open (path, StandardOpenOption.READ)) {
+            long size = ch.size ();
+            final long [] bound = new long [nThreads + 1];                      // chunk boundaries
+            for (int i = 1; i < nThreads; i++) bound [i] = nextLine (ch, Math.max (bound [i - 1], size * i / nThreads));
+            bound [nThreads] = size;
+
+            final List <BlockingQueue <List <Comparable []>>> queues = new ArrayList <> ();
+            final IOException [] failure = new IOException [1];
+            Thread [] workers = new Thread [nThreads];
+            for (int i = 0; i < nThreads; i++) {
+                final int c = i;
+                final BlockingQueue <List <Comparable []>> queue = new ArrayBlockingQueue <> (4);
+                queues.add (queue);
+                workers [i] = new Thread ("loader-" + i) {
+                    public void run ()
+                    {
+                        try {
+                            try {
+                                parseChunk (ch, bound [c], bound [c + 1], header && c == 0, new Sink () {
+                                    public void accept (List <Comparable []> batch) throws InterruptedException { queue.put (batch); }
+                                });
+                            } catch (IOException ex) {
+                                synchronized (failure) { failure [0] = ex; }
+                            } // try
+                            queue.put (END);
+                        } catch (InterruptedException ex) {
+                            // the load was abandoned
+                        } // try
+                    } // run
+                };
+                workers [i].setDaemon (true);
+                workers [i].start ();
+            } // for
+
+            int n = 0;
+            try {
+                for (BlockingQueue <List <Comparable []>> queue : queues) {           // in file order
+                    for (List <Comparable []> batch = queue.take (); batch != END; batch = queue.take ()) {
+                        n += table.insertAll (batch);
+                    } // for
+                } // for
+            } catch (InterruptedException ex) {
+                for (Thread w : workers) w.interrupt ();
+                Thread.currentThread ().interrupt ();
+                throw new IOException ("load interrupted");
+            } // try
+            synchronized (failure) {
+                if (failure [0] != null) throw failure [0];
+            } // synchronized
+            report ();
+            return n;
+        } // try
+    } // loadParallel
+
+    /*************************************************************************************
+     * Return the number of malformed lines skipped so far.
+     * @return  the number of malformed lines
+     */
+    public int malformed ()
+    {
+        return malformed.get ();
+    } // malformed
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Receives the batches of tuples parsed from a chunk.
+     */
+    private interface Sink
+    {
+        void accept (List <Comparable []> batch) throws InterruptedException;
+    } // Sink interface
+
+    /*************************************************************************************
+     * Parse the lines in bytes [from, to) of the file (from must start a line) and pass
+     * the tuples to the sink in batches.
+     */
+    private void parseChunk (FileChannel ch, long from, long to, boolean skipFirst, Sink sink)
+            throws IOException, InterruptedException
+    {
+        byte [] buf = new byte [(int) Math.min (BUFFER_SIZE, Math.max (16, to - from))];
+        int off = 0, len = 0;
+        long pos = from;                                       // file position of buf [len]
+        boolean eof = false;
+        List <Comparable []> batch = new ArrayList <> (BATCH_SIZE);
+        int [] end = new int [1];
+
+        for ( ; ; ) {
+            Comparable [] t = null;
+            boolean complete = false;
+            if (off < len) {
+                t = parseLine (buf, off, len, eof, end);
+                complete = end [0] >= 0;
+            } // if
+            if (! complete) {
+                if (eof) break;
+                if (off > 0) {                                 // keep the partial line
+                    System.arraycopy (buf, off, buf, 0, len - off);
+                    len -= off;
+                    off = 0;
+                } else if (len == buf.length) {                // a line longer than buf
+                    buf = Arrays.copyOf (buf, 2 * buf.length);
+                } // if
+                ByteBuffer bb = ByteBuffer.wrap (buf, len, (int) Math.min (buf.length - len, to - pos));
+                int n = (bb.remaining () == 0) ? -1 : ch.read (bb, pos);
+                if (n < 0) eof = true;
+                else {
+                    len += n;
+                    pos += n;
+                } // if
+                continue;
+            } // if
+
+            off = end [0];
+            if (skipFirst) {
+                skipFirst = false;
+                continue;
+            } // if
+            if (t == BLANK) continue;
+            if (t == null) {
+                malformed.incrementAndGet ();
+                continue;
+            } // if
+            batch.add (t);
+            if (batch.size () == BATCH_SIZE) {
+                sink.accept (batch);
+                batch = new ArrayList <> (BATCH_SIZE);
+            } // if
+        } // for
+        if (! batch.isEmpty ()) sink.accept (batch);
+    } // parseChunk
+
+    /** Returned by parseLine for a blank line
+     */
+    private static final Comparable [] BLANK = new Comparable [0];
+
+    /*************************************************************************************
+     * Parse the line starting at buf [off].  Sets end [0] to the position after the line,
+     * or to -1 if the line is not complete within buf [off, len) (and more may follow).
+     * @return  the tuple, BLANK for a blank line, or null if the line is malformed
+     */
+    private Comparable [] parseLine (byte [] buf, int off, int len, boolean eof, int [] end)
+    {
+        Comparable [] t = new Comparable [kind.length];
+        boolean ok = true;
+        int p = off, col = 0;
+        for ( ; ; ) {                                          // one field per iteration
+            int start = p, stop;
+            boolean quoted = p < len && buf [p] == '"';
+            if (quoted) {
+                p++;
+                for ( ; ; ) {
+                    if (p >= len) {                    // unterminated: malformed at end of file
+                        end [0] = eof ? len : -1;
+                        return null;
+                    } // if
+                    if (buf [p] == '"') {
+                        if (p + 1 < len && buf [p + 1] == '"') { p += 2; continue; }
+                        if (p + 1 >= len && ! eof) { end [0] = -1; return null; }
+                        break;
+                    } // if
+                    p++;
+                } // for
+                stop = ++p;                                    // just after the closing quote
+                if (p < len && buf [p] != delim && buf [p] != '\n' && buf [p] != '\r') ok = false;
+                while (p < len && buf [p] != delim && buf [p] != '\n') p++;
+            } else {
+                while (p < len && buf [p] != delim && buf [p] != '\n') p++;
+                stop = p;
+            } // if
+            if (p >= len && ! eof) {
+                end [0] = -1;
+                return null;
+            } // if
+            boolean lineEnd = p >= len || buf [p] == '\n';
+            if (lineEnd && ! quoted && stop > start && buf [stop - 1] == '\r') stop--;
+
+            if (lineEnd && col == 0 && stop == start && ! quoted) {          // blank line
+                end [0] = Math.min (p + 1, len);
+                return BLANK;
+            } // if
+            if (ok && col < kind.length) {
+                try {
+                    t [col] = quoted ? parseQuoted (buf, start + 1, stop - 1, col) : parse (buf, start, stop, col);
+                } catch (NumberFormatException ex) {
+                    ok = false;
+                } // try
+            } // if
+            col++;
+            if (lineEnd) {
+                end [0] = Math.min (p + 1, len);
+                return (ok && col == kind.length) ? t : null;
+            } // if
+            p++;                                               // skip the delimiter
+        } // for
+    } // parseLine
+
+    /*************************************************************************************
+     * Parse the unquoted field buf [from, to) of column col.
+     */
+    private Comparable parse (byte [] buf, int from, int to, int col)
+    {
+        switch (kind [col]) {
+        case INT: {
+            long v = parseLong (buf, from, to);
+            if (v != (int) v) throw new NumberFormatException ("out of range");
+            return (int) v;
+        }
+        case LONG:  return parseLong (buf, from, to);
+        case SHORT: {
+            long v = parseLong (buf, from, to);
+            if (v != (short) v) throw new NumberFormatException ("out of range");
+            return (short) v;
+        }
+        case BYTE: {
+            long v = parseLong (buf, from, to);
+            if (v != (byte) v) throw new NumberFormatException ("out of range");
+            return (byte) v;
+        }
+        case DOUBLE: return parseDouble (buf, from, to);
+        case FLOAT:  return Float.parseFloat (new String (buf, from, to - from, StandardCharsets.ISO_8859_1).trim ());
+        case CHAR:
+            if (to - from == 1 && buf [from] >= 0) return (char) buf [from];
+            String s = new String (buf, from, to - from, StandardCharsets.UTF_8);
+            if (s.length () != 1) throw new NumberFormatException ("not a character");
+            return s.charAt (0);
+        default:
+            return new String (buf, from, to - from, StandardCharsets.UTF_8);
+        } // switch
+    } // parse
+
+    /*************************************************************************************
+     * Parse the quoted field whose contents are buf [from, to) of column col, replacing
+     * each doubled quote by one.
+     */
+    private Comparable parseQuoted (byte [] buf, int from, int to, int col)
+    {
+        int n = 0;
+        byte [] b = null;
+        for (int i = from; i < to; i++) {
+            if (buf [i] == '"') {
+                if (b == null) {
+                    b = new byte [to - from];
+                    n = i - from;
+                    System.arraycopy (buf, from, b, 0, n);
+                } // if
+                b [n++] = '"';
+                i++;                                           // skip the second quote
+            } else if (b != null) {
+                b [n++] = buf [i];
+            } // if
+        } // for
+        return (b == null) ? parse (buf, from, to, col) : parse (b, 0, n, col);
+    } // parseQuoted
+
+    /*************************************************************************************
+     * Parse a decimal integer (surrounding spaces allowed) from bytes.
+     */
+    private static long parseLong (byte [] buf, int from, int to)
+    {
+        while (from < to && buf [from] == ' ') from++;
+        while (to > from && buf [to - 1] == ' ') to--;
+        if (from == to) throw new NumberFormatException ("empty");
+        boolean neg = buf [from] == '-';
+        if (neg || buf [from] == '+') from++;
+        if (from == to || to - from > 19) throw new NumberFormatException ("bad integer");
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf [i] - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException ("bad digit");
+            v = 10 * v + d;
+            if (v < 0) throw new NumberFormatException ("out of range");
+        } // for
+        return neg ? -v : v;
+    } // parseLong
+
+    /*************************************************************************************
+     * Parse a decimal real number from bytes.  Numbers with at most 15 significant digits
+     * and a decimal exponent of at most 22 are computed exactly with one multiplication or
+     * division; others (and NaN, Infinity, hex) fall back to Double.parseDouble.
+     */
+    private static double parseDouble (byte [] buf, int from, int to)
+    {
+        while (from < to && buf [from] == ' ') from++;
+        while (to > from && buf [to - 1] == ' ') to--;
+        int p = from;
+        boolean neg = p < to && buf [p] == '-';
+        if (p < to && (buf [p] == '-' || buf [p] == '+')) p++;
+        long mant = 0;
+        int digits = 0, exp = 0;
+        boolean any = false, fast = true;
+        for ( ; p < to && buf [p] >= '0' && buf [p] <= '9'; p++, any = true) {
+            if (mant != 0 || buf [p] != '0') digits++;
+            if (digits <= 18) mant = 10 * mant + (buf [p] - '0');
+            else exp++;
+        } // for
+        if (p < to && buf [p] == '.') {
+            for (p++; p < to && buf [p] >= '0' && buf [p] <= '9'; p++, any = true) {
+                if (mant != 0 || buf [p] != '0') digits++;
+                if (digits <= 18) {
+                    mant = 10 * mant + (buf [p] - '0');
+                    exp--;
+                } // if
+            } // for
+        } // if
+        if (any && p < to && (buf [p] == 'e' || buf [p] == 'E')) {
+            int q = p + 1;
+            boolean eneg = q < to && buf [q] == '-';
+            if (q < to && (buf [q] == '-' || buf [q] == '+')) q++;
+            int e = 0;
+            boolean edig = false;
+            for ( ; q < to && buf [q] >= '0' && buf [q] <= '9'; q++, edig = true) e = Math.min (10 * e + (buf [q] - '0'), 100000);
+            if (edig) {
+                exp += eneg ? -e : e;
+                p = q;
+            } // if
+        } // if
+        if (! any || p != to || digits > 15 || exp < -22 || exp > 22) fast = false;
+        if (fast) {
+            double d = (exp < 0) ? mant / POW10 [-exp] : mant * POW10 [exp];
+            return neg ? -d : d;
+        } // if
+        return Double.parseDouble (new String (buf, from, to - from, StandardCharsets.ISO_8859_1));
+    } // parseDouble
+
+    /*************************************************************************************
+     * Return the position just after the first line break at or after pos (or the end of
+     * the file), i.e., the start of the next line.
+     */
+    private static long nextLine (FileChannel ch, long pos) throws IOException
+    {
+        if (pos == 0) return 0;
+        ByteBuffer bb = ByteBuffer.allocate (8192);
+        for (long p = pos - 1; ; ) {                           // the line break may be at pos - 1
+            bb.clear ();
+            int n = ch.read (bb, p);
+            if (n <= 0) return ch.size ();
+            for (int i = 0; i < n; i++) {
+                if (bb.get (i) == '\n') return p + i + 1;
+            } // for
+            p += n;
+        } // for
+    } // nextLine
+
+    /*************************************************************************************
+     * Report the malformed lines skipped.
+     */
+    private void report ()
+    {
+        if (malformed.get () > 0) out.println ("load: skipped " + malformed.get () + " malformed lines");
+    } // report
+
+} // TableLoader class
+
@@ -0,0 +1,74 @@
+/****************************************************************************************
+ * @file  TableStressTest.java
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The TableStressTest class runs many threads that insert into and select from one
+ * CONCURRENT table at the same time, for increasing thread counts.  It reports the
+ * throughput for each thread count and checks that every inserted tuple can be found
+ * afterwards.
+ *
+ * #usage java TableStressTest [millisPerRun] [maxThreads]
+ */
+public class TableStressTest
+{
+    /*************************************************************************************
+     * Run the stress test.
+     * @param args  the command-line arguments: run time in ms and maximum thread count
+     */
+    public static void main (String [] args) throws InterruptedException
+    {
+        final long millis = (args.length > 0) ? Long.parseLong (args [0]) : 2000;
+        int maxThreads    = (args.length > 1) ? Integer.parseInt (args [1])
+                                              : 2 * Runtime.getRuntime ().availableProcessors ();
+
+        out.printf ("%8s %16s %12s %8s%n", "threads", "ops/sec", "rows", "check");
+        for (int nThreads = 1; nThreads <= maxThreads; nThreads *= 2) {
+            final Table t = new Table ("stress", "id val", "Integer String", "id", Table.StorageType.CONCURRENT);
+            final AtomicInteger nextId = new AtomicInteger ();
+            final AtomicLong ops = new AtomicLong ();
+            final long end = System.currentTimeMillis () + millis;
+
+            List <Thread> threads = new ArrayList <> ();
+            for (int i = 0; i < nThreads; i++) {
+                threads.add (new Thread () {
+                    public void run ()
+                    {
+                        ThreadLocalRandom rand = ThreadLocalRandom.current ();
+                        long n = 0;
+                        while (System.currentTimeMillis () < end) {
+                            for (int k = 0; k < 100; k++, n++) {
+                                if (rand.nextInt (4) == 0) {                  // 25% inserts
+                                    int id = nextId.getAndIncrement ();
+                                    t.insert (new Comparable [] { id, "v" + id });
+                                } else {                                      // 75% selects
+                                    int hi = Math.max (1, nextId.get ());
+                                    t.select (new KeyType (rand.nextInt (hi)));
+                                } // if
+                            } // for
+                        } // while
+                        ops.addAndGet (n);
+                    } // run
+                });
+            } // for
+            for (Thread th : threads) th.start ();
+            for (Thread th : threads) th.join ();
+
+            boolean ok = t.tuples.size () == nextId.get ();
+            for (int id = 0; ok && id < nextId.get (); id += 1 + id / 100) {
+                ok = t.select (new KeyType (id)).tuples.size () == 1;
+            } // for
+            out.printf ("%8d %16.0f %12d %8s%n", nThreads, ops.get () * 1000.0 / millis, t.tuples.size (), ok ? "ok" : "FAILED");
+        } // for
+    } // main
+
+} // TableStressTest class
+
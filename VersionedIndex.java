@@ -0,0 +1,343 @@
+/****************************************************************************************
+ * @file  VersionedIndex.java
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/****************************************************************************************
+ * The VersionedIndex class provides a multi-version primary index for concurrent tables.
+ * Each key maps to an immutable chain of versions, newest first, each stamped with the
+ * version (commit position) at which its tuple became visible.  As a Map it returns the
+ * newest tuple for each key; asOf (v) returns a read-only view as of version v, used by
+ * snapshots.  Versions no open snapshot can reach are pruned when their key is written
+ * again and when the oldest snapshot is closed.
+ */
+public class VersionedIndex
+       extends AbstractMap <KeyType, Comparable []>
+       implements RangeIndex
+{
+    /*************************************************************************************
+     * An immutable version of the tuple for a key, linked to the next older version.
+     */
+    private static class Version
+    {
+        final Comparable [] tuple;
+        final long begin;
+        final Version older;
+
+        Version (Comparable [] _tuple, long _begin, Version _older)
+        {
+            tuple = _tuple;
+            begin = _begin;
+            older = _older;
+        } // constructor
+    } // Version class
+
+    /** The list of tuples being indexed (its size is the current version)
+     */
+    private final AppendOnlyList tuples;
+
+    /** Map from key to its chain of versions (newest first)
+     */
+    private final ConcurrentSkipListMap <KeyType, Version> map = new ConcurrentSkipListMap <> ();
+
+    /** The versions of the open snapshots, with the number open at each version
+     */
+    private final ConcurrentSkipListMap <Long, AtomicInteger> active = new ConcurrentSkipListMap <> ();
+
+    /** The number of snapshots being opened (their version is not yet registered)
+     */
+    private final AtomicInteger pending = new AtomicInteger ();
+
+    /** Keys whose chains may hold more than one version
+     */
+    private final Queue <KeyType> chained = new ConcurrentLinkedQueue <> ();
+
+    /*************************************************************************************
+     * Construct an empty versioned index over the given list.  A tuple's version is its
+     * position in the list plus one, so the version of a snapshot is the list's size.
+     * @param _tuples  the list of tuples
+     */
+    public VersionedIndex (AppendOnlyList _tuples)
+    {
+        tuples = _tuples;
+    } // constructor
+
+    /*************************************************************************************
+     * Return the newest tuple with the given key.
+     * @param k  the key
+     * @return  the tuple or null
+     */
+    public Comparable [] get (Object k)
+    {
+        Version v = map.get (k);
+        return (v == null) ? null : v.tuple;
+    } // get
+
+    /*************************************************************************************
+     * Add a version of the tuple for key k that becomes visible at the given version.
+     * Safe to call from many threads at once; versions may arrive out of order.  Call
+     * this before publishing the tuple, so every tuple a snapshot can see is indexed.
+     * @param k        the key
+     * @param tuple    the tuple
+     * @param version  the version at which the tuple became visible
+     * @return  the tuple the key previously mapped to, or null
+     */
+    public Comparable [] put (final KeyType k, final Comparable [] tuple, final long version)
+    {
+        final Comparable [][] old = new Comparable [1][];
+        map.compute (k, new BiFunction <KeyType, Version, Version> () {
+            public Version apply (KeyType key, Version head)
+            {
+                old [0] = (head == null) ? null : head.tuple;
+                return prune (insert (head, tuple, version), safeVersion ());
+            } // apply
+        });
+        if (old [0] != null) chained.add (k);
+        return old [0];
+    } // put
+
+    /*************************************************************************************
+     * Register a snapshot, whose version is the number of tuples published so far.
+     * @return  the snapshot version
+     */
+    public long openSnapshot ()
+    {
+        pending.incrementAndGet ();
+        try {
+            long v = tuples.size ();
+            AtomicInteger n = active.get (v);
+            if (n == null) {
+                AtomicInteger fresh = new AtomicInteger ();
+                n = active.putIfAbsent (v, fresh);
+                if (n == null) n = fresh;
+            } // if
+            n.incrementAndGet ();
+            return v;
+        } finally {
+            pending.decrementAndGet ();
+        } // try
+    } // openSnapshot
+
+    /*************************************************************************************
+     * Unregister a snapshot, and reclaim the versions only it could still reach.
+     * @param v  the snapshot version
+     */
+    public void closeSnapshot (long v)
+    {
+        AtomicInteger n = active.get (v);
+        if (n != null && n.decrementAndGet () == 0) active.remove (v, n);
+        Map.Entry <Long, AtomicInteger> oldest = active.firstEntry ();
+        if (oldest == null || oldest.getKey () > v) vacuum ();      // it was the oldest
+    } // closeSnapshot
+
+    /*************************************************************************************
+     * Prune every chain down to the versions an open snapshot can still reach.
+     */
+    public void vacuum ()
+    {
+        for (int n = chained.size (); n > 0; n--) {
+            KeyType k = chained.poll ();
+            if (k == null) break;
+            Version v = map.computeIfPresent (k, new BiFunction <KeyType, Version, Version> () {
+                public Version apply (KeyType key, Version head)
+                {
+                    return prune (head, safeVersion ());
+                } // apply
+            });
+            if (v != null && v.older != null) chained.add (k);
+        } // for
+    } // vacuum
+
+    /*************************************************************************************
+     * Return the number of versions held for the given key (for testing).
+     * @param k  the key
+     * @return  the length of its version chain
+     */
+    int versions (KeyType k)
+    {
+        int n = 0;
+        for (Version v = map.get (k); v != null; v = v.older) n++;
+        return n;
+    } // versions
+
+    /*************************************************************************************
+     * Return the number of keys.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return map.size ();
+    } // size
+
+    /*************************************************************************************
+     * Return the newest entry for each key, in key order.
+     * @return  the entry set
+     */
+    public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+    {
+        return asOf (Long.MAX_VALUE).entrySet ();
+    } // entrySet
+
+    /*************************************************************************************
+     * Return the newest entries whose keys lie in the given range, in key order.
+     * @param from      the low end of the range (null for unbounded)
+     * @param fromIncl  whether from is included
+     * @param to        the high end of the range (null for unbounded)
+     * @param toIncl    whether to is included
+     * @return  the entries in the range
+     */
+    public SortedMap <KeyType, Comparable []> range (KeyType from, boolean fromIncl, KeyType to, boolean toIncl)
+    {
+        return range (from, fromIncl, to, toIncl, Long.MAX_VALUE);
+    } // range
+
+    /*************************************************************************************
+     * Return a read-only view of the index as of the given version: each key maps to its
+     * newest tuple that became visible at or before that version.
+     * @param version  the version
+     * @return  the view
+     */
+    public View asOf (long version)
+    {
+        return new View (version);
+    } // asOf
+
+    /*************************************************************************************
+     * A read-only view of the index as of a version.
+     */
+    public class View
+           extends AbstractMap <KeyType, Comparable []>
+           implements RangeIndex
+    {
+        private final long version;
+
+        View (long _version)
+        {
+            version = _version;
+        } // constructor
+
+        public Comparable [] get (Object k)
+        {
+            Version v = visible (map.get (k), version);
+            return (v == null) ? null : v.tuple;
+        } // get
+
+        public SortedMap <KeyType, Comparable []> range (KeyType from, boolean fromIncl, KeyType to, boolean toIncl)
+        {
+            return VersionedIndex.this.range (from, fromIncl, to, toIncl, version);
+        } // range
+
+        public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+                public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+                {
+                    final Iterator <Map.Entry <KeyType, Version>> it = map.entrySet ().iterator ();
+                    return new Iterator <Map.Entry <KeyType, Comparable []>> () {
+                        private Map.Entry <KeyType, Comparable []> next = advance ();
+
+                        private Map.Entry <KeyType, Comparable []> advance ()
+                        {
+                            while (it.hasNext ()) {
+                                Map.Entry <KeyType, Version> e = it.next ();
+                                Version v = visible (e.getValue (), version);
+                                if (v != null) return new AbstractMap.SimpleImmutableEntry <> (e.getKey (), v.tuple);
+                            } // while
+                            return null;
+                        } // advance
+
+                        public boolean hasNext () { return next != null; }
+
+                        public Map.Entry <KeyType, Comparable []> next ()
+                        {
+                            if (next == null) throw new NoSuchElementException ();
+                            Map.Entry <KeyType, Comparable []> e = next;
+                            next = advance ();
+                            return e;
+                        } // next
+                    };
+                } // iterator
+
+                public int size ()
+                {
+                    int n = 0;
+                    for (Iterator <?> it = iterator (); it.hasNext (); it.next ()) n++;
+                    return n;
+                } // size
+            };
+        } // entrySet
+    } // View class
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Return the entries visible as of version whose keys lie in the given range.
+     */
+    private SortedMap <KeyType, Comparable []> range (KeyType from, boolean fromIncl, KeyType to,
+                                                      boolean toIncl, long version)
+    {
+        NavigableMap <KeyType, Version> sub = map;
+        if (from != null && to != null && from.compareTo (to) > 0) return new TreeMap <> ();
+        if (from != null) sub = sub.tailMap (from, fromIncl);
+        if (to != null)   sub = sub.headMap (to, toIncl);
+        SortedMap <KeyType, Comparable []> result = new TreeMap <> ();
+        for (Map.Entry <KeyType, Version> e : sub.entrySet ()) {
+            Version v = visible (e.getValue (), version);
+            if (v != null) result.put (e.getKey (), v.tuple);
+        } // for
+        return result;
+    } // range
+
+    /*************************************************************************************
+     * Return the newest version in the chain that is visible as of the given version.
+     */
+    private static Version visible (Version v, long version)
+    {
+        while (v != null && v.begin > version) v = v.older;
+        return v;
+    } // visible
+
+    /*************************************************************************************
+     * Return a chain with a new version inserted in order of begin (newest first).
+     * Chains are immutable, so the versions ahead of the new one are copied.
+     */
+    private static Version insert (Version head, Comparable [] tuple, long begin)
+    {
+        if (head == null || head.begin < begin) return new Version (tuple, begin, head);
+        return new Version (head.tuple, head.begin, insert (head.older, tuple, begin));
+    } // insert
+
+    /*************************************************************************************
+     * Return the chain cut just after the newest version visible as of the given version,
+     * since no snapshot can reach the versions beyond it.
+     */
+    private static Version prune (Version head, long version)
+    {
+        Version keep = visible (head, version);
+        if (keep == null || keep.older == null) return head;
+        if (keep == head) return new Version (head.tuple, head.begin, null);
+        return new Version (head.tuple, head.begin, prune (head.older, version));
+    } // prune
+
+    /*************************************************************************************
+     * Return the oldest version an open snapshot may read.  A snapshot opened later sees
+     * at least the current size, so that bounds the result; while a snapshot is being
+     * opened its version is unknown, so no version may be pruned (returns -1).
+     */
+    private long safeVersion ()
+    {
+        long current = tuples.size ();
+        if (pending.get () > 0) return -1;
+        Map.Entry <Long, AtomicInteger> oldest = active.firstEntry ();
+        return (oldest == null) ? current : Math.min (oldest.getKey (), current);
+    } // safeVersion
+
+} // VersionedIndex class
+
@@ -0,0 +1,373 @@
+/****************************************************************************************
+ * @file  WriteAheadLog.java
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/****************************************************************************************
+ * The WriteAheadLog class provides an append-only log of inserted tuples, so a table can
+ * make inserts durable without rewriting its file.  The log starts with a header (magic
+ * number and the log sequence number (LSN) of its first byte) followed by records, each
+ * a length, a CRC-32 checksum and a tuple encoded by a RowCodec.  The LSN of a record is
+ * the LSN just past its end, and LSNs keep increasing across truncations.
+ *
+ * Appends go to an in-memory buffer.  commit (lsn) makes the log durable up to lsn with
+ * group commit: one committing thread (the leader) writes everything appended so far and
+ * forces it to disk with a single fsync, while the threads that commit meanwhile wait and
+ * are covered by the leader's fsync (or the next one).  The flush policy decides whether
+ * commit waits for the fsync (SYNC), only hands the records to the operating system and
+ * leaves the fsync to a background thread every flushMillis (INTERVAL), or leaves
+ * flushing entirely to the operating system (NONE).
+ */
+public class WriteAheadLog
+{
+    /** The flush policies: SYNC acknowledges an insert only once it is on disk; INTERVAL
+     *  acknowledges once the operating system has it and forces the log to disk
+     *  periodically (a power failure may lose the last interval); NONE never forces it
+     */
+    public enum FlushPolicy {
+        SYNC, INTERVAL, NONE
+    }
+
+    /** The magic number starting every log ("WAL1")
+     */
+    private static final int MAGIC = 0x57414C31;
+
+    /** The size of the header and of a record's length and checksum
+     */
+    private static final int HEADER_SIZE = 12, RECORD_HEAD = 8;
+
+    /** The number of buffered bytes at which an append writes the buffer out
+     */
+    private static final int BUFFER_LIMIT = 1 << 20;
+
+    /** The log file and its channel
+     */
+    private final Path path;
+    private final FileChannel ch;
+
+    /** The codec encoding the logged tuples
+     */
+    private final RowCodec codec;
+
+    /** The flush policy
+     */
+    private final FlushPolicy policy;
+
+    /** The LSN of the first byte after the header
+     */
+    private long base;
+
+    /** The records appended but not yet written (guarded by this)
+     */
+    private ByteBuffer pending = ByteBuffer.allocate (8192);
+
+    /** The buffer written by the leader, swapped with pending (guarded by this)
+     */
+    private ByteBuffer spare = ByteBuffer.allocate (8192);
+
+    /** The LSN appended, written to the channel, and forced to disk (guarded by this)
+     */
+    private long appended, written, durable;
+
+    /** Whether a leader is writing (guarded by this)
+     */
+    private boolean flushing = false;
+
+    /** The error that broke the log, after which every commit fails (guarded by this)
+     */
+    private IOException failure;
+
+    /** The background thread forcing the log under the INTERVAL policy
+     */
+    private final Thread flusher;
+
+    /*************************************************************************************
+     * Open (or create) the log at the given path.  Call replay before appending.
+     * @param _path         the path of the log file
+     * @param _codec        the codec for the logged tuples
+     * @param _policy       the flush policy
+     * @param flushMillis   the interval between forces under the INTERVAL policy
+     * @throws IOException if the log cannot be opened or is not a log
+     */
+    public WriteAheadLog (Path _path, RowCodec _codec, FlushPolicy _policy, long flushMillis) throws IOException
+    {
+        path   = _path;
+        codec  = _codec;
+        policy = _policy;
+        ch = FileChannel.open (path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (ch.size () < HEADER_SIZE) {
+            writeHeader (0);
+        } else {
+            ByteBuffer head = ByteBuffer.allocate (HEADER_SIZE);
+            while (head.hasRemaining ()) if (ch.read (head, head.position ()) < 0) throw new EOFException ();
+            head.flip ();
+            if (head.getInt () != MAGIC) {
+                ch.close ();
+                throw new IOException ("not a write-ahead log: " + path);
+            } // if
+            base = head.getLong ();
+        } // if
+        appended = written = durable = base;
+
+        if (policy == FlushPolicy.INTERVAL) {
+            final long millis = flushMillis;
+            flusher = new Thread ("wal-flusher " + path.getFileName ()) {
+                public void run ()
+                {
+                    try {
+                        while (! isInterrupted ()) {
+                            Thread.sleep (millis);
+                            force ();
+                        } // while
+                    } catch (InterruptedException | IOException ex) {
+                        // closed, or the log failed (reported by the next commit)
+                    } // try
+                } // run
+            };
+            flusher.setDaemon (true);
+            flusher.start ();
+        } else {
+            flusher = null;
+        } // if
+    } // constructor
+
+    /*************************************************************************************
+     * Return the tuples logged after the given LSN (those not yet in the table file), in
+     * log order.  A torn or corrupt record (from a crash during a write) ends the log; it
+     * and anything after it are discarded.
+     * @param after  the LSN the table file already covers
+     * @return  the tuples to re-insert
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized List <Comparable []> replay (long after) throws IOException
+    {
+        List <Comparable []> tuples = new ArrayList <> ();
+        long size = ch.size ();
+        long pos = HEADER_SIZE;
+        ByteBuffer head = ByteBuffer.allocate (RECORD_HEAD);
+        CRC32 crc = new CRC32 ();
+        while (pos + RECORD_HEAD <= size) {
+            head.clear ();
+            ch.read (head, pos);
+            int len = head.getInt (0), sum = head.getInt (4);
+            if (len <= 0 || pos + RECORD_HEAD + len > size) break;               // torn record
+            ByteBuffer rec = ByteBuffer.allocate (len);
+            while (rec.hasRemaining ()) ch.read (rec, pos + RECORD_HEAD + rec.position ());
+            crc.reset ();
+            crc.update (rec.array (), 0, len);
+            if ((int) crc.getValue () != sum) break;                            // corrupt record
+            pos += RECORD_HEAD + len;
+            if (base + pos - HEADER_SIZE > after) tuples.add (codec.decode (rec, 0));
+        } // while
+        if (pos < size) ch.truncate (pos);
+        ch.position (pos);
+        appended = written = durable = base + pos - HEADER_SIZE;
+        if (appended < after) {                      // all covered (or lost its header in a
+            writeHeader (after);                     // checkpoint): continue after the file
+            appended = written = durable = after;
+        } // if
+        return tuples;
+    } // replay
+
+    /*************************************************************************************
+     * Append a tuple to the log.  It is durable once commit returns for the returned LSN.
+     * A tuple that cannot be encoded leaves the log unchanged.
+     * @param t  the tuple
+     * @return  the LSN of the record
+     * @throws IOException if buffered records had to be written and could not be
+     * @throws ClassCastException if a value is not of its column's domain
+     */
+    public long append (Comparable [] t) throws IOException
+    {
+        boolean full;
+        long lsn;
+        synchronized (this) {
+            if (failure != null) throw failure;
+            int start = pending.position ();
+            for ( ; ; ) {
+                try {
+                    pending.position (start + RECORD_HEAD);
+                    codec.encode (t, pending);
+                    break;
+                } catch (BufferOverflowException ex) {
+                    ByteBuffer bigger = ByteBuffer.allocate (2 * pending.capacity ());
+                    pending.flip ();
+                    pending.limit (start);
+                    pending = bigger.put (pending);
+                } catch (RuntimeException ex) {                     // a value outside its domain
+                    pending.position (start);                       // leave no partial record
+                    throw ex;
+                } // try
+            } // for
+            int len = pending.position () - start - RECORD_HEAD;
+            CRC32 crc = new CRC32 ();
+            crc.update (pending.array (), start + RECORD_HEAD, len);
+            pending.putInt (start, len).putInt (start + 4, (int) crc.getValue ());
+            appended += RECORD_HEAD + len;
+            lsn = appended;
+            full = pending.position () >= BUFFER_LIMIT;
+        } // synchronized
+        if (full) flush (lsn, false);
+        return lsn;
+    } // append
+
+    /*************************************************************************************
+     * Make the log durable up to the given LSN, as the flush policy prescribes.
+     * @param lsn  the LSN returned by append
+     * @throws IOException if the log could not be written
+     */
+    public void commit (long lsn) throws IOException
+    {
+        flush (lsn, policy == FlushPolicy.SYNC);
+    } // commit
+
+    /*************************************************************************************
+     * Write and force everything appended so far.
+     * @throws IOException if the log could not be written
+     */
+    public void force () throws IOException
+    {
+        long lsn;
+        synchronized (this) {
+            lsn = appended;
+        } // synchronized
+        flush (lsn, true);
+    } // force
+
+    /*************************************************************************************
+     * Return the LSN appended so far.
+     * @return  the current LSN
+     */
+    public synchronized long lsn ()
+    {
+        return appended;
+    } // lsn
+
+    /*************************************************************************************
+     * Return the number of bytes in the log (written or buffered).
+     * @return  the size of the log
+     */
+    public synchronized long size ()
+    {
+        return appended - base;
+    } // size
+
+    /*************************************************************************************
+     * Discard every record, after a checkpoint has saved them in the table file.  The log
+     * keeps its LSNs, so records appended later follow the checkpoint's LSN.
+     * @throws IOException if the log cannot be truncated
+     */
+    public synchronized void truncate () throws IOException
+    {
+        while (flushing) {
+            try {
+                wait ();
+            } catch (InterruptedException ex) {
+                Thread.currentThread ().interrupt ();
+                throw new IOException ("interrupted");
+            } // try
+        } // while
+        if (failure != null) throw failure;
+        if (pending.position () > 0) throw new IllegalStateException ("truncate with unwritten records");
+        writeHeader (appended);
+        written = durable = appended;
+    } // truncate
+
+    /*************************************************************************************
+     * Force the log and close it.
+     * @throws IOException if the log could not be written
+     */
+    public void close () throws IOException
+    {
+        if (flusher != null) flusher.interrupt ();
+        try {
+            force ();
+        } finally {
+            ch.close ();
+        } // try
+    } // close
+
+    //------------------------------------------------------------------------------------
+    // Private Methods
+    //------------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * Write (and, if sync, force) the log up to at least lsn.  The first thread to arrive
+     * becomes the leader and writes everything appended so far; the others wait for it and
+     * return if it covered them, or lead the next round.
+     */
+    private void flush (long lsn, boolean sync) throws IOException
+    {
+        for ( ; ; ) {
+            ByteBuffer batch;
+            long target;
+            boolean force;
+            synchronized (this) {
+                while (flushing && (sync ? durable : written) < lsn) {
+                    try {
+                        wait ();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread ().interrupt ();
+                        throw new IOException ("interrupted while committing");
+                    } // try
+                } // while
+                if (failure != null) throw failure;
+                if ((sync ? durable : written) >= lsn) return;
+                flushing = true;
+                batch   = pending;
+                pending = spare;
+                spare   = batch;
+                target  = appended;
+                force   = sync;
+            } // synchronized
+
+            IOException error = null;
+            try {
+                batch.flip ();
+                while (batch.hasRemaining ()) ch.write (batch);
+                if (force) ch.force (false);
+            } catch (IOException ex) {
+                error = ex;
+            } // try
+
+            synchronized (this) {
+                batch.clear ();
+                flushing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    written = target;
+                    if (force) durable = target;
+                } // if
+                notifyAll ();
+                if (error != null) throw error;
+            } // synchronized
+        } // for
+    } // flush
+
+    /*************************************************************************************
+     * Reset the log to an empty log whose first record will have the given base LSN.
+     */
+    private void writeHeader (long _base) throws IOException
+    {
+        ByteBuffer head = ByteBuffer.allocate (HEADER_SIZE);
+        head.putInt (MAGIC).putLong (_base).flip ();
+        ch.truncate (0);
+        while (head.hasRemaining ()) ch.write (head, head.position ());
+        ch.position (HEADER_SIZE);
+        ch.force (true);
+        base = _base;
+    } // writeHeader
+
+} // WriteAheadLog class
+